@@ -0,0 +1,134 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.NextMiddleware;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.*;
+
+// Contexts for driving middleware outside a server. They're Mockito mocks, so any method the
+// benchmarks don't use still has an answer, but the calls on the request path are final methods of
+// the hand-written stubs below, which Mockito can't intercept: they run as plain Java, rather than
+// costing a mock dispatch (a few microseconds each) that would swamp what's being measured.
+final class BenchContexts {
+
+    static final NextMiddleware NOOP = () -> {};
+
+    private BenchContexts() {}
+
+    static BenchContext context(String method, String path, Map<String, String> query) {
+        return context(method, path, query, body -> {});
+    }
+
+    static BenchContext context(String method, String path, Map<String, String> query, Consumer<Object> bodySink) {
+        BenchRequest request = mock(BenchRequest.class, withSettings().stubOnly().useConstructor(method, path, query));
+        BenchResponse response = mock(BenchResponse.class, withSettings().stubOnly().useConstructor(bodySink));
+        return context(request, response, new HashMap<>());
+    }
+
+    private static BenchContext context(Request request, Response response,
+                                        Map<String, Map<String, Object>> attributes) {
+        return mock(BenchContext.class, withSettings().stubOnly().useConstructor(request, response, attributes));
+    }
+
+    abstract static class BenchContext implements Context {
+        private final Response response;
+        private final Map<String, Map<String, Object>> attributes;
+        private Request request;
+        private BenchContext child;
+
+        BenchContext(Request request, Response response, Map<String, Map<String, Object>> attributes) {
+            this.request = request;
+            this.response = response;
+            this.attributes = attributes;
+        }
+
+        // Call before each invocation, so it starts out like a new request
+        final void reset() {
+            attributes.clear();
+        }
+
+        @Override
+        public final Request request() {
+            return request;
+        }
+
+        @Override
+        public final Response response() {
+            return response;
+        }
+
+        @Override
+        public final <T> Optional<T> get(String namespace, String key, Class<T> type) {
+            Map<String, Object> values = attributes.get(namespace);
+            return values == null ? Optional.empty() : Optional.ofNullable(type.cast(values.get(key)));
+        }
+
+        @Override
+        public final void put(String namespace, String key, Object value) {
+            attributes.computeIfAbsent(namespace, ns -> new HashMap<>()).put(key, value);
+        }
+
+        // Each nesting level's child Context is made on first use and reused after, so that
+        // creating mocks doesn't dominate the sub-resource routing numbers
+        @Override
+        public final Context withAlternateRequest(Request alternate) {
+            if(child == null) {
+                child = context(alternate, response, attributes);
+            }
+            child.request = alternate;
+            return child;
+        }
+    }
+
+    abstract static class BenchRequest implements Request {
+        private final String method;
+        private final String path;
+        private final Map<String, String> query;
+
+        BenchRequest(String method, String path, Map<String, String> query) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+        }
+
+        @Override
+        public final String method() {
+            return method;
+        }
+
+        @Override
+        public final String path() {
+            return path;
+        }
+
+        @Override
+        public final Map<String, String> queryParams() {
+            return query;
+        }
+
+        @Override
+        public final String header(String name) {
+            return null;
+        }
+    }
+
+    abstract static class BenchResponse implements Response {
+        private final Consumer<Object> bodySink;
+
+        BenchResponse(Consumer<Object> bodySink) {
+            this.bodySink = bodySink;
+        }
+
+        @Override
+        public final void body(Object body) {
+            bodySink.accept(body);
+        }
+    }
+}
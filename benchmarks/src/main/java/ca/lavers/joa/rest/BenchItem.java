@@ -0,0 +1,51 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BenchItem {
+
+    private final String id;
+    private final String name;
+    private final int age;
+    private final double score;
+
+    public BenchItem(String id, String name, int age, double score) {
+        this.id = id;
+        this.name = name;
+        this.age = age;
+        this.score = score;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    // Deterministic, so every run sorts the same data
+    static List<BenchItem> generate(int count) {
+        Random random = new Random(count);
+        List<BenchItem> items = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            items.add(new BenchItem(
+                    Integer.toString(i),
+                    "name" + random.nextInt(count / 10 + 1),
+                    random.nextInt(100),
+                    random.nextDouble()
+            ));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,96 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class ListHandlerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    @Param({"collect", "streaming"})
+    public String mode;
+
+    @Param({"none", "filterAndSort"})
+    public String query;
+
+    private ListHandler<BenchItem> handler;
+    private BenchContexts.BenchContext ctx;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        this.blackhole = bh;
+        List<BenchItem> items = BenchItem.generate(10_000);
+
+        Listable<BenchItem> listable = new Listable<>() {
+            @Override
+            public ListResult<BenchItem> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+                int from = page.getPage() * page.getPageSize();
+                int to = Math.min(items.size(), from + page.getPageSize());
+                return new ListResult<>(items.subList(from, to).stream(), items.size());
+            }
+
+            @Override
+            public boolean supportsPaging() {
+                return true;
+            }
+
+            @Override
+            public boolean supportsFiltering() {
+                return true;
+            }
+
+            @Override
+            public boolean supportsSorting() {
+                return true;
+            }
+        };
+
+        handler = new ListHandler<>(listable);
+        if("streaming".equals(mode)) {
+            handler.streaming();
+        }
+
+        Map<String, String> params = "filterAndSort".equals(query)
+                ? Map.of("page", "2", "pageSize", Integer.toString(pageSize),
+                        "filter", "hasRole(\"staff\")", "sortBy", "name ASC, age DESC")
+                : Map.of("page", "2", "pageSize", Integer.toString(pageSize));
+
+        // Stands in for serialization: walks every item of the response body
+        ctx = BenchContexts.context("GET", "/", params, this::consumeBody);
+    }
+
+    private void consumeBody(Object body) {
+        if(body instanceof CollectionPage) {
+            for(Object item : ((CollectionPage<?>) body).getItems()) {
+                blackhole.consume(item);
+            }
+        }
+        else if(body instanceof StreamingCollectionPage) {
+            Iterator<?> items = ((StreamingCollectionPage<?>) body).getItems();
+            while(items.hasNext()) {
+                blackhole.consume(items.next());
+            }
+            blackhole.consume(((StreamingCollectionPage<?>) body).getTotalItems());
+        }
+    }
+
+    @Benchmark
+    public void call() {
+        ctx.reset();
+        handler.call(ctx, BenchContexts.NOOP);
+    }
+}
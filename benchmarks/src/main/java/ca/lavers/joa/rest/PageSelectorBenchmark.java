@@ -0,0 +1,48 @@
+package ca.lavers.joa.rest;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class PageSelectorBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"0", "10", "1000"})
+    public int page;
+
+    private List<BenchItem> items;
+    private Comparator<BenchItem> comparator;
+    private Paging paging;
+
+    @Setup
+    public void setup() {
+        items = BenchItem.generate(size);
+        comparator = Comparator.comparing(BenchItem::getName);
+        paging = new Paging(page, 10);
+    }
+
+    @Benchmark
+    public List<BenchItem> sortSkipLimit() {
+        return items.stream()
+                .sorted(comparator)
+                .skip((long) paging.getPage() * paging.getPageSize())
+                .limit(paging.getPageSize())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BenchItem> pageSelector() {
+        return PageSelector.select(items, paging, comparator).getItems().collect(Collectors.toList());
+    }
+}
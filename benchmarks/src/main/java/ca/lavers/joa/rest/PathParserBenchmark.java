@@ -0,0 +1,31 @@
+package ca.lavers.joa.rest;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class PathParserBenchmark {
+
+    @Param({"/", "/a1", "/a1/", "/a1/projects", "/a1/projects/p2/tasks/t3/comments/c4"})
+    public String path;
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        PathParser parser = new PathParser(path);
+        if(parser.isItemRequest()) {
+            bh.consume(parser.getItemID());
+        }
+        else if(parser.isSubResourceRequest()) {
+            bh.consume(parser.getItemID());
+            bh.consume(parser.getSubResourceName());
+            bh.consume(parser.getRemainingPath());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Middleware;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class RoutingBenchmark {
+
+    @Param({"collection", "item", "sub1", "sub2", "sub3"})
+    public String route;
+
+    @Param({"router", "compiled"})
+    public String dispatch;
+
+    private Middleware router;
+    private BenchContexts.BenchContext ctx;
+    private String lastId;
+
+    @Setup
+    public void setup() {
+        // Handlers read the deepest ID, as a real handler would
+        Middleware handler = (c, next) -> lastId = RestRouter.getItemId(c);
+
+        RestRouter tree = new RestRouter().list(handler).get(handler)
+                .subResource("projects", "accountID", new RestRouter().list(handler).get(handler)
+                    .subResource("tasks", "projectID", new RestRouter().list(handler).get(handler)
+                        .subResource("comments", "taskID", new RestRouter().list(handler).get(handler))));
+        router = "compiled".equals(dispatch) ? tree.compile() : tree;
+
+        String path = switch(route) {
+            case "collection" -> "/";
+            case "item" -> "/a1";
+            case "sub1" -> "/a1/projects/p2";
+            case "sub2" -> "/a1/projects/p2/tasks/t3";
+            case "sub3" -> "/a1/projects/p2/tasks/t3/comments/c4";
+            default -> throw new IllegalArgumentException(route);
+        };
+        ctx = BenchContexts.context("GET", path, Map.of());
+    }
+
+    @Benchmark
+    public String call() {
+        ctx.reset();
+        router.call(ctx, BenchContexts.NOOP);
+        return lastId;
+    }
+}
@@ -0,0 +1,59 @@
+package ca.lavers.joa.rest;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class SortingBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"name ASC", "age DESC, name ASC", "score DESC, age ASC, id ASC"})
+    public String sortBy;
+
+    @Param({"lookup", "sortKeys"})
+    public String keys;
+
+    private List<BenchItem> items;
+    private Comparator<BenchItem> comparator;
+
+    @Setup
+    public void setup() {
+        items = BenchItem.generate(size);
+        Sorting sorting = SortParser.parse(sortBy);
+        if("sortKeys".equals(keys)) {
+            comparator = sorting.toComparator(new SortKeys<BenchItem>()
+                    .key("id", BenchItem::getId)
+                    .key("name", BenchItem::getName)
+                    .intKey("age", BenchItem::getAge)
+                    .doubleKey("score", BenchItem::getScore));
+        }
+        else {
+            comparator = sorting.toComparator(field -> switch(field) {
+                case "id" -> Comparator.comparing(BenchItem::getId);
+                case "name" -> Comparator.comparing(BenchItem::getName);
+                case "age" -> Comparator.comparing(BenchItem::getAge);
+                case "score" -> Comparator.comparing(BenchItem::getScore);
+                default -> null;
+            });
+        }
+    }
+
+    // Includes copying the list, so the input is unsorted every time
+    @Benchmark
+    public List<BenchItem> sort() {
+        List<BenchItem> copy = new ArrayList<>(items);
+        copy.sort(comparator);
+        return copy;
+    }
+}
@@ -0,0 +1,75 @@
+package ca.lavers.joa.rest;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Each operation parses the whole corpus once
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class SpecParserBenchmark {
+
+    static final List<String> FILTERS = List.of(
+            "isActive",
+            "hasRole(\"staff\")",
+            "hasRole(\"staff\", \"admin\")",
+            "loggedInBetween(2022-01-01, 2022-02-28)",
+            "olderThan(42)",
+            "nameLike(\"O\\\"Brien\")",
+            "inRegion(\"north-east\", 3, 2023-12-31)"
+    );
+
+    static final List<String> SORTS = List.of(
+            "username",
+            "username ASC",
+            "createdAt DESC",
+            "lastName ASC, firstName ASC",
+            "priority desc, dueDate asc, id"
+    );
+
+    @Param({"scanner", "stateMachine", "cached"})
+    public String parser;
+
+    private Function<String, Filtering> filterParser;
+    private Function<String, Sorting> sortParser;
+
+    @Setup
+    public void setup() {
+        switch(parser) {
+            case "scanner" -> {
+                filterParser = FilterScanner::parse;
+                sortParser = SortScanner::parse;
+            }
+            case "stateMachine" -> {
+                filterParser = FilterParser::parseWithStateMachine;
+                sortParser = SortParser::parseWithStateMachine;
+            }
+            case "cached" -> {
+                filterParser = new SpecCache<>(FilterScanner::parse)::get;
+                sortParser = new SpecCache<>(SortScanner::parse)::get;
+            }
+            default -> throw new IllegalArgumentException(parser);
+        }
+    }
+
+    @Benchmark
+    public void filter(Blackhole bh) {
+        for(String spec : FILTERS) {
+            bh.consume(filterParser.apply(spec));
+        }
+    }
+
+    @Benchmark
+    public void sort(Blackhole bh) {
+        for(String spec : SORTS) {
+            bh.consume(sortParser.apply(spec));
+        }
+    }
+}
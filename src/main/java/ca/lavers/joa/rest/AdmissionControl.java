@@ -0,0 +1,208 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load shedding for a RestRouter tree, attached with RestRouter.admissionControl(). Each route
+// (action and sub-resource, e.g. "list /posts") gets a concurrency limit adapted from its own
+// latencies, and the tree as a whole gets one adapted from all of them. Requests over either limit
+// are answered straight away with 503 and Retry-After, rather than queueing behind the rest.
+//
+// As the tree's limit fills up, lists and bulk writes are shed first, then other writes; single-item
+// and batch gets are only shed once it's full.
+public class AdmissionControl {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+
+    public static final String LIST = "list";
+    public static final String GET = "get";
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+    public static final String BATCH_GET = "batchGet";
+    public static final String BULK = "bulk";
+
+    // Share of the tree's limit each kind of request may use
+    private static final double READ_SHARE = 1.0;
+    private static final double WRITE_SHARE = 0.9;
+    private static final double LIST_SHARE = 0.75;
+    // The tree's limit starts (and is capped) at this many routes' worth
+    private static final int TOTAL_ROUTES = 5;
+
+    private int initialLimit = DEFAULT_INITIAL_LIMIT;
+    private int minLimit = 1;
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+    private long retryAfterSeconds = 1;
+
+    private volatile GradientLimit total;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+
+    public AdmissionControl initialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+        return this;
+    }
+
+    public AdmissionControl minLimit(int minLimit) {
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    public AdmissionControl maxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    public AdmissionControl retryAfter(Duration retryAfter) {
+        this.retryAfterSeconds = retryAfter.getSeconds();
+        return this;
+    }
+
+    // Limit for the whole tree
+    public int getLimit() {
+        return total().get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public List<RouteStats> getRoutes() {
+        List<RouteStats> stats = new ArrayList<>(routes.size());
+        for (Route route : routes.values()) {
+            stats.add(new RouteStats(route.key, route.limit.get(), route.inFlight.get(),
+                    route.admitted.sum(), route.rejected.sum()));
+        }
+        return stats;
+    }
+
+    // Resource is the path of sub-resource names, e.g. "/" or "/posts/comments"
+    Route route(String action, String resource) {
+        String key = action + " " + resource;
+        Route route = routes.get(key);
+        if(route == null) {
+            route = routes.computeIfAbsent(key, k -> new Route(k, shareOf(action)));
+        }
+        return route;
+    }
+
+    private GradientLimit total() {
+        GradientLimit limit = total;
+        if(limit == null) {
+            synchronized (this) {
+                limit = total;
+                if(limit == null) {
+                    limit = new GradientLimit(initialLimit * TOTAL_ROUTES, minLimit, maxLimit * TOTAL_ROUTES);
+                    total = limit;
+                }
+            }
+        }
+        return limit;
+    }
+
+    private static double shareOf(String action) {
+        switch(action) {
+            case GET:
+            case BATCH_GET:
+                return READ_SHARE;
+            case LIST:
+            case BULK:
+                return LIST_SHARE;
+            default:
+                return WRITE_SHARE;
+        }
+    }
+
+    final class Route {
+        final String key;
+        final double share;
+        final GradientLimit limit = new GradientLimit(initialLimit, minLimit, maxLimit);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+
+        Route(String key, double share) {
+            this.key = key;
+            this.share = share;
+        }
+
+        // Runs the request if there's room for it, or responds 503 and returns false
+        boolean run(Context ctx, Runnable request) {
+            GradientLimit totalLimit = total();
+            int totalInFlight = AdmissionControl.this.inFlight.incrementAndGet();
+            int routeInFlight = inFlight.incrementAndGet();
+            if(totalInFlight > totalLimit.get() * share || routeInFlight > limit.get()) {
+                AdmissionControl.this.inFlight.decrementAndGet();
+                inFlight.decrementAndGet();
+                rejected.increment();
+                AdmissionControl.this.rejected.increment();
+                Unavailable.respond(ctx, retryAfterSeconds);
+                return false;
+            }
+
+            admitted.increment();
+            long start = System.nanoTime();
+            try {
+                request.run();
+            } finally {
+                long rtt = System.nanoTime() - start;
+                inFlight.decrementAndGet();
+                AdmissionControl.this.inFlight.decrementAndGet();
+                double ratio = limit.sample(rtt, routeInFlight);
+                if(!Double.isNaN(ratio)) {
+                    totalLimit.update(ratio, totalInFlight);
+                }
+            }
+            return true;
+        }
+    }
+
+    public static class RouteStats {
+        private final String route;
+        private final int limit;
+        private final int inFlight;
+        private final long admitted;
+        private final long rejected;
+
+        RouteStats(String route, int limit, int inFlight, long admitted, long rejected) {
+            this.route = route;
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.admitted = admitted;
+            this.rejected = rejected;
+        }
+
+        // e.g. "list /posts"
+        public String getRoute() {
+            return route;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Adapts the Async* interfaces to the synchronous ones the handlers use. joa-core middleware
+// completes the response when call() returns, so the request waits for the future here; an
+// exceptional completion is rethrown as the exception it completed with, so a future failed with
+// NotFoundException or BadRequestException responds just like the synchronous interfaces would.
+// The wait is bounded by the request's Deadline, after which the future is cancelled. Cancelling
+// doesn't stop work that's already running, so whatever completes the future must not write the
+// response; Bulkhead, which offloads the chain itself, abandons its ResponseGuard for this.
+final class Async {
+
+    private Async() {
+    }
+
+    static <V> V await(Context ctx, Future<V> future) {
+        Deadline deadline = Deadline.of(ctx);
+        try {
+            if(deadline == Deadline.NONE) {
+                return future.get();
+            }
+            return future.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException(e);
+        } catch (ExecutionException | CompletionException e) {
+            throw rethrow(e.getCause() != null ? e.getCause() : e);
+        } catch (CancellationException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        // Unwrap futures composed from other futures
+        while(cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if(cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if(cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new InternalServerErrorException(cause);
+    }
+
+    static <T> Gettable<T> gettable(AsyncGettable<T> async) {
+        return new Gettable<>() {
+            @Override
+            public T get(Context ctx, String id) {
+                return await(ctx, async.get(ctx, id));
+            }
+
+            @Override
+            public Versioned version(Context ctx, String id) {
+                return await(ctx, async.version(ctx, id));
+            }
+        };
+    }
+
+    static <T> Listable<T> listable(AsyncListable<T> async) {
+        return new Listable<>() {
+            @Override
+            public ListResult<T> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+                return await(ctx, async.list(ctx, page, filter, sort));
+            }
+
+            @Override
+            public boolean supportsPaging() {
+                return async.supportsPaging();
+            }
+
+            @Override
+            public boolean supportsFiltering() {
+                return async.supportsFiltering();
+            }
+
+            @Override
+            public boolean supportsSorting() {
+                return async.supportsSorting();
+            }
+
+            @Override
+            public boolean supportsCursors() {
+                return async.supportsCursors();
+            }
+
+            @Override
+            public boolean supportsFilterExpressions() {
+                return async.supportsFilterExpressions();
+            }
+
+            @Override
+            public Versioned version(Context ctx) {
+                return await(ctx, async.version(ctx));
+            }
+        };
+    }
+
+    static <T> Creatable<T> creatable(AsyncCreatable<T> async) {
+        return (ctx, item) -> await(ctx, async.create(ctx, item));
+    }
+
+    static <T> Updatable<T> updatable(AsyncUpdatable<T> async) {
+        return (ctx, id, item) -> await(ctx, async.update(ctx, id, item));
+    }
+
+    static <T> Deletable<T> deletable(AsyncDeletable<T> async) {
+        return (ctx, id) -> Boolean.TRUE.equals(await(ctx, async.delete(ctx, id)));
+    }
+}
@@ -0,0 +1,10 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.concurrent.CompletableFuture;
+
+// Creatable for a non-blocking backend; see CreateHandler.async()
+public interface AsyncCreatable<T> {
+    CompletableFuture<T> create(Context ctx, T item);
+}
@@ -0,0 +1,11 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.concurrent.CompletableFuture;
+
+// Deletable for a non-blocking backend; see DeleteHandler.async()
+public interface AsyncDeletable<T> {
+    // Completes with false if the item wasn't found
+    CompletableFuture<Boolean> delete(Context ctx, String id);
+}
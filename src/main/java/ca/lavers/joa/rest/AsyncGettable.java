@@ -0,0 +1,15 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.concurrent.CompletableFuture;
+
+// Gettable for a non-blocking backend; see GetHandler.async()
+public interface AsyncGettable<T> {
+    // Completes with null if the item wasn't found
+    CompletableFuture<T> get(Context ctx, String id);
+
+    default CompletableFuture<Versioned> version(Context ctx, String id) {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,28 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.concurrent.CompletableFuture;
+
+// Listable for a non-blocking backend; see ListHandler.async()
+public interface AsyncListable<T> {
+    CompletableFuture<ListResult<T>> list(Context ctx, Paging page, Filtering filter, Sorting sort);
+    default boolean supportsPaging() {
+        return false;
+    }
+    default boolean supportsFiltering() {
+        return false;
+    }
+    default boolean supportsSorting() {
+        return false;
+    }
+    default boolean supportsCursors() {
+        return false;
+    }
+    default boolean supportsFilterExpressions() {
+        return false;
+    }
+    default CompletableFuture<Versioned> version(Context ctx) {
+        return CompletableFuture.completedFuture(null);
+    }
+}
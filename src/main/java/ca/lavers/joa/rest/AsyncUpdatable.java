@@ -0,0 +1,11 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.concurrent.CompletableFuture;
+
+// Updatable for a non-blocking backend; see UpdateHandler.async()
+public interface AsyncUpdatable<T> {
+    // Completes with null if the item wasn't found
+    CompletableFuture<T> update(Context ctx, String id, T item);
+}
@@ -22,8 +22,11 @@ public abstract class BaseHandler<T> implements Middleware {
     private String requestBodyCtxAttribute;
 
     protected String getItemId(Context ctx) {
-        return ctx.get(RestRouter.NS, RestRouter.ITEM_ID, String.class)
-                .orElseThrow(() -> new IllegalStateException("RestRouter itemID value not found in Context attributes"));
+        String id = RestRouter.getItemId(ctx);
+        if(id == null) {
+            throw new IllegalStateException("RestRouter itemID value not found in Context attributes");
+        }
+        return id;
     }
 
     protected void setRequestBodyLocation(String ns, String attribute) {
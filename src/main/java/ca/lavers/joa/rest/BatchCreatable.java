@@ -0,0 +1,36 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public interface BatchCreatable<T> {
+    // Items created, in the order given; null for any that couldn't be created
+    List<T> createAll(Context ctx, List<T> items);
+
+    // Most items passed to createAll() in one call; BulkHandler splits larger groups
+    default int maxCreateBatchSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    // Fallback for collections without batch writes: creates each item separately. Takes one item
+    // per call, so an exception fails only the operation that threw it.
+    static <T> BatchCreatable<T> each(Creatable<T> creatable) {
+        return new BatchCreatable<>() {
+            @Override
+            public List<T> createAll(Context ctx, List<T> items) {
+                List<T> created = new ArrayList<>(items.size());
+                for (T item : items) {
+                    created.add(creatable.create(ctx, item));
+                }
+                return created;
+            }
+
+            @Override
+            public int maxCreateBatchSize() {
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+public interface BatchDeletable<T> {
+    // IDs deleted; those that weren't found (or couldn't be deleted) are left out
+    Set<String> deleteAll(Context ctx, Collection<String> ids);
+
+    // Most IDs passed to deleteAll() in one call; BulkHandler splits larger groups
+    default int maxDeleteBatchSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    // Fallback for collections without batch writes: deletes each item separately. Takes one ID
+    // per call, so an exception fails only the operation that threw it.
+    static <T> BatchDeletable<T> each(Deletable<T> deletable) {
+        return new BatchDeletable<>() {
+            @Override
+            public Set<String> deleteAll(Context ctx, Collection<String> ids) {
+                Set<String> deleted = new HashSet<>();
+                for (String id : ids) {
+                    if(deletable.delete(ctx, id)) {
+                        deleted.add(id);
+                    }
+                }
+                return deleted;
+            }
+
+            @Override
+            public int maxDeleteBatchSize() {
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.NextMiddleware;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Handles multi-get requests, GET /?ids=a,b,c or POST /_batchGet with a JSON array of IDs, routed
+// by RestRouter.batchGet(). Responds with the items found (in the order requested, without
+// duplicates) and the IDs that weren't.
+public class BatchGetHandler<T> implements Middleware {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchGetHandler.class);
+
+    public static final int DEFAULT_MAX_IDS = 100;
+
+    private final BatchGettable<T> batchGettable;
+    private int maxIds = DEFAULT_MAX_IDS;
+
+    // For a collection that can only get items one at a time, use BatchGettable.parallel()
+    public BatchGetHandler(BatchGettable<T> batchGettable) {
+        this.batchGettable = batchGettable;
+    }
+
+    public BatchGetHandler<T> maxIds(int maxIds) {
+        this.maxIds = maxIds;
+        return this;
+    }
+
+    @Override
+    public void call(Context ctx, NextMiddleware next) {
+        Set<String> ids = getRequestedIds(ctx);
+        if(ids.size() > maxIds) {
+            throw new BadRequestException("Too many IDs; at most " + maxIds + " can be requested at once");
+        }
+
+        Map<String, T> found = ids.isEmpty() ? Map.of() : batchGettable.getAll(ctx, ids);
+
+        List<T> items = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            T item = found.get(id);
+            if(item != null) {
+                items.add(item);
+            }
+            else {
+                missing.add(id);
+            }
+        }
+
+        try {
+            ResponseGuard.write(ctx, () -> ctx.response().body(new BatchGetResponse<>(items, missing)));
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+
+    private Set<String> getRequestedIds(Context ctx) {
+        Set<String> ids = new LinkedHashSet<>();
+        String param = ctx.request().queryParams().get(RestRouter.BATCH_GET_PARAM);
+        if(param != null) {
+            for (String id : param.split(",")) {
+                if(!id.isBlank()) {
+                    ids.add(id.trim());
+                }
+            }
+            return ids;
+        }
+
+        String[] body;
+        try {
+            body = ctx.request().parseBody(String[].class);
+        } catch (IOException e) {
+            log.debug("Error deserializing batch get request body", e);
+            throw new BadRequestException("Expected an array of IDs");
+        }
+        if(body != null) {
+            ids.addAll(Arrays.asList(body));
+            ids.remove(null);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,22 @@
+package ca.lavers.joa.rest;
+
+import java.util.List;
+
+public class BatchGetResponse<T> {
+
+    private final List<T> items;
+    private final List<String> missing;
+
+    public BatchGetResponse(List<T> items, List<String> missing) {
+        this.items = items;
+        this.missing = missing;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+}
@@ -0,0 +1,42 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public interface BatchGettable<T> {
+    // Items found, by ID; IDs that weren't found are left out
+    Map<String, T> getAll(Context ctx, Collection<String> ids);
+
+    // Fallback for collections without batch lookups: gets each item separately, in parallel on the executor
+    static <T> BatchGettable<T> parallel(Gettable<T> gettable, Executor executor) {
+        return (ctx, ids) -> {
+            List<String> order = new ArrayList<>(ids);
+            List<CompletableFuture<T>> gets = new ArrayList<>(order.size());
+            for (String id : order) {
+                gets.add(CompletableFuture.supplyAsync(() -> gettable.get(ctx, id), executor));
+            }
+
+            Map<String, T> found = new HashMap<>();
+            try {
+                for(int i = 0; i < order.size(); i++) {
+                    T item = Async.await(ctx, gets.get(i));
+                    if(item != null) {
+                        found.put(order.get(i), item);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Gets that haven't started yet are skipped
+                gets.forEach(f -> f.cancel(false));
+                throw e;
+            }
+            return found;
+        };
+    }
+}
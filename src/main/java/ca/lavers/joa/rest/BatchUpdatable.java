@@ -0,0 +1,39 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public interface BatchUpdatable<T> {
+    // Items updated, by ID; IDs that weren't found (or couldn't be updated) are left out
+    Map<String, T> updateAll(Context ctx, Map<String, T> items);
+
+    // Most items passed to updateAll() in one call; BulkHandler splits larger groups
+    default int maxUpdateBatchSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    // Fallback for collections without batch writes: updates each item separately. Takes one item
+    // per call, so an exception fails only the operation that threw it.
+    static <T> BatchUpdatable<T> each(Updatable<T> updatable) {
+        return new BatchUpdatable<>() {
+            @Override
+            public Map<String, T> updateAll(Context ctx, Map<String, T> items) {
+                Map<String, T> updated = new HashMap<>();
+                items.forEach((id, item) -> {
+                    T result = updatable.update(ctx, id, item);
+                    if(result != null) {
+                        updated.put(id, result);
+                    }
+                });
+                return updated;
+            }
+
+            @Override
+            public int maxUpdateBatchSize() {
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,266 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.NextMiddleware;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+import ca.lavers.joa.core.errors.MethodNotAllowedException;
+import ca.lavers.joa.core.errors.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Handles POST /_bulk with a JSON array of create, update and delete operations, routed by RestRouter.bulk().
+// Consecutive operations of the same kind are committed together through the Batch* interfaces, in groups of
+// at most batchSize (or the interface's own max batch size), so a store can write each group in one transaction.
+// Responds with a result per operation, in the order sent; an operation that fails doesn't stop the ones after it.
+//
+// A ResponseCache in the bulk chain drops the cached lists and each updated or deleted item. A CachingGettable
+// only sees writes made through its batchUpdating() and batchDeleting() wrappers.
+public class BulkHandler<T> implements Middleware {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkHandler.class);
+
+    public static final int DEFAULT_MAX_OPERATIONS = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final Class<?> bodyClass;
+
+    private BatchCreatable<T> creatable;
+    private BatchUpdatable<T> updatable;
+    private BatchDeletable<T> deletable;
+    private int maxOperations = DEFAULT_MAX_OPERATIONS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public BulkHandler(Class<? extends BulkOperation<T>> operationClass) {
+        this.bodyClass = Array.newInstance(operationClass, 0).getClass();
+    }
+
+    // Kinds of operation without a handler are rejected with 405
+    public BulkHandler<T> creating(BatchCreatable<T> creatable) {
+        this.creatable = creatable;
+        return this;
+    }
+
+    public BulkHandler<T> updating(BatchUpdatable<T> updatable) {
+        this.updatable = updatable;
+        return this;
+    }
+
+    public BulkHandler<T> deleting(BatchDeletable<T> deletable) {
+        this.deletable = deletable;
+        return this;
+    }
+
+    // Requests with more operations than this are rejected with 400, before anything is written
+    public BulkHandler<T> maxOperations(int maxOperations) {
+        this.maxOperations = maxOperations;
+        return this;
+    }
+
+    // Most operations passed to a Batch* interface in one call
+    public BulkHandler<T> batchSize(int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    @Override
+    public void call(Context ctx, NextMiddleware next) {
+        BulkOperation<T>[] operations = getOperations(ctx);
+        if(operations.length > maxOperations) {
+            throw new BadRequestException("Too many operations; at most " + maxOperations + " can be sent at once");
+        }
+
+        @SuppressWarnings("unchecked")
+        BulkResult<T>[] results = new BulkResult[operations.length];
+        for(int i = 0; i < operations.length; i++) {
+            results[i] = validate(operations[i]);
+        }
+
+        // Invalid operations have no effect, so they're skipped over rather than ending a group
+        int[] group = new int[Math.min(batchSize, operations.length)];
+        int pos = 0;
+        while(pos < operations.length) {
+            if(results[pos] != null) {
+                pos++;
+                continue;
+            }
+            String op = operations[pos].getOp();
+            int size = 0;
+            int limit = Math.min(batchSize, Math.max(1, maxBatchSize(op)));
+            Set<String> ids = op.equals(BulkOperation.CREATE) ? null : new HashSet<>();
+            for(; pos < operations.length && size < limit; pos++) {
+                if(results[pos] != null) continue;
+                BulkOperation<T> operation = operations[pos];
+                // A repeated ID starts a new group, so the second write to an item follows the first
+                if(!operation.getOp().equals(op) || (ids != null && !ids.add(operation.getId()))) break;
+                group[size++] = pos;
+            }
+            commit(ctx, op, operations, group, size, results);
+        }
+
+        int failed = 0;
+        for (BulkResult<T> result : results) {
+            if(result.getStatus() >= 400) {
+                failed++;
+            }
+        }
+
+        BulkResponse<T> response = new BulkResponse<>(Arrays.asList(results), failed);
+        try {
+            ResponseGuard.write(ctx, () -> ctx.response().body(response));
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BulkOperation<T>[] getOperations(Context ctx) {
+        Object body;
+        try {
+            body = ctx.request().parseBody(bodyClass);
+        } catch (IOException e) {
+            log.debug("Error deserializing bulk request body", e);
+            throw new BadRequestException("Expected an array of operations");
+        }
+        if(body == null) {
+            throw new BadRequestException("Expected an array of operations");
+        }
+        return (BulkOperation<T>[]) body;
+    }
+
+    // Result for an operation that can't be attempted, or null if it's fine
+    private BulkResult<T> validate(BulkOperation<T> operation) {
+        if(operation == null || operation.getOp() == null) {
+            return failure(null, null, 400, "Missing op");
+        }
+        String op = operation.getOp();
+        String id = operation.getId();
+        switch(op) {
+            case BulkOperation.CREATE:
+                if(creatable == null) return failure(op, id, 405, "Create not supported");
+                if(operation.getItem() == null) return failure(op, id, 400, "Missing item");
+                return null;
+            case BulkOperation.UPDATE:
+                if(updatable == null) return failure(op, id, 405, "Update not supported");
+                if(id == null) return failure(op, null, 400, "Missing id");
+                if(operation.getItem() == null) return failure(op, id, 400, "Missing item");
+                return null;
+            case BulkOperation.DELETE:
+                if(deletable == null) return failure(op, id, 405, "Delete not supported");
+                if(id == null) return failure(op, null, 400, "Missing id");
+                return null;
+            default:
+                return failure(op, id, 400, "Unknown op");
+        }
+    }
+
+    private int maxBatchSize(String op) {
+        switch(op) {
+            case BulkOperation.CREATE: return creatable.maxCreateBatchSize();
+            case BulkOperation.UPDATE: return updatable.maxUpdateBatchSize();
+            default: return deletable.maxDeleteBatchSize();
+        }
+    }
+
+    private void commit(Context ctx, String op, BulkOperation<T>[] operations, int[] group, int size,
+                        BulkResult<T>[] results) {
+        try {
+            switch(op) {
+                case BulkOperation.CREATE:
+                    List<T> items = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++) {
+                        items.add(operations[group[i]].getItem());
+                    }
+                    List<T> created = creatable.createAll(ctx, items);
+                    for(int i = 0; i < size; i++) {
+                        T item = i < created.size() ? created.get(i) : null;
+                        String id = operations[group[i]].getId();
+                        results[group[i]] = item != null
+                                ? new BulkResult<>(op, id, 201, item, null)
+                                : failure(op, id, 400, "Not created");
+                    }
+                    break;
+                case BulkOperation.UPDATE:
+                    Map<String, T> changes = new LinkedHashMap<>();
+                    for(int i = 0; i < size; i++) {
+                        changes.put(operations[group[i]].getId(), operations[group[i]].getItem());
+                    }
+                    Map<String, T> updated = updatable.updateAll(ctx, changes);
+                    for(int i = 0; i < size; i++) {
+                        String id = operations[group[i]].getId();
+                        T item = updated.get(id);
+                        results[group[i]] = item != null
+                                ? new BulkResult<>(op, id, 200, item, null)
+                                : failure(op, id, 404, "Not found");
+                    }
+                    break;
+                case BulkOperation.DELETE:
+                    List<String> ids = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++) {
+                        ids.add(operations[group[i]].getId());
+                    }
+                    Set<String> deleted = deletable.deleteAll(ctx, ids);
+                    for(int i = 0; i < size; i++) {
+                        String id = operations[group[i]].getId();
+                        results[group[i]] = deleted.contains(id)
+                                ? new BulkResult<>(op, id, 200, null, null)
+                                : failure(op, id, 404, "Not found");
+                    }
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // The whole group failed, so each of its operations gets the error
+            int status = statusOf(e);
+            if(status == 500) {
+                log.error("Error committing bulk " + op + " of " + size + " items", e);
+            }
+            String message = status == 500 || e.getMessage() == null ? errorName(status) : e.getMessage();
+            for(int i = 0; i < size; i++) {
+                results[group[i]] = failure(op, operations[group[i]].getId(), status, message);
+            }
+        } finally {
+            // Even a failed group may have written some of its items
+            if(!op.equals(BulkOperation.CREATE)) {
+                List<String> ids = new ArrayList<>(size);
+                for(int i = 0; i < size; i++) {
+                    ids.add(operations[group[i]].getId());
+                }
+                ResponseCache.captureWritten(ctx, ids);
+            }
+        }
+    }
+
+    private static int statusOf(RuntimeException e) {
+        if(e instanceof BadRequestException) return 400;
+        if(e instanceof NotFoundException) return 404;
+        if(e instanceof MethodNotAllowedException) return 405;
+        return 500;
+    }
+
+    private static String errorName(int status) {
+        switch(status) {
+            case 400: return "Bad request";
+            case 404: return "Not found";
+            case 405: return "Method not allowed";
+            default: return "Internal server error";
+        }
+    }
+
+    private BulkResult<T> failure(String op, String id, int status, String error) {
+        return new BulkResult<>(op, id, status, null, error);
+    }
+}
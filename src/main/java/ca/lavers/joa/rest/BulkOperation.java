@@ -0,0 +1,48 @@
+package ca.lavers.joa.rest;
+
+// One operation in a bulk request: {"op": "create", "item": {...}}, {"op": "update", "id": "1", "item": {...}}
+// or {"op": "delete", "id": "1"}. Subclass with a concrete item type so the request body can be deserialized,
+// e.g. class UserOperation extends BulkOperation<User> {}
+public class BulkOperation<T> {
+
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    private String op;
+    private String id;
+    private T item;
+
+    public BulkOperation() {
+    }
+
+    public BulkOperation(String op, String id, T item) {
+        this.op = op;
+        this.id = id;
+        this.item = item;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public T getItem() {
+        return item;
+    }
+
+    public void setItem(T item) {
+        this.item = item;
+    }
+}
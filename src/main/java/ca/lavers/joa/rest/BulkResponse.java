@@ -0,0 +1,22 @@
+package ca.lavers.joa.rest;
+
+import java.util.List;
+
+public class BulkResponse<T> {
+
+    private final List<BulkResult<T>> results;
+    private final int failed;
+
+    public BulkResponse(List<BulkResult<T>> results, int failed) {
+        this.results = results;
+        this.failed = failed;
+    }
+
+    public List<BulkResult<T>> getResults() {
+        return results;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+}
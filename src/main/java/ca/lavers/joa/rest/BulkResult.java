@@ -0,0 +1,39 @@
+package ca.lavers.joa.rest;
+
+// Outcome of one operation in a bulk request, with the status it would have had as a request of its own
+public class BulkResult<T> {
+
+    private final String op;
+    private final String id;
+    private final int status;
+    private final T item;
+    private final String error;
+
+    public BulkResult(String op, String id, int status, T item, String error) {
+        this.op = op;
+        this.id = id;
+        this.status = status;
+        this.item = item;
+        this.error = error;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public T getItem() {
+        return item;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
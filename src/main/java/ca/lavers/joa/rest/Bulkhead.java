@@ -0,0 +1,199 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.NextMiddleware;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caps how many requests can be in the rest of the chain at once, so one slow collection can't tie
+// up every server thread. Use one per collection, first in each of its chains:
+//
+//   Bulkhead bulkhead = new Bulkhead("users", 20).maxWait(Duration.ofMillis(100));
+//   router.list(bulkhead, new ListHandler<>(users)).get(bulkhead, new GetHandler<>(User.class, users));
+//
+// A request that can't get in within maxWait gets a 503 with Retry-After.
+//
+// offload() is experimental. The rest of the chain runs on a virtual thread where the JDK has them
+// (found by reflection, as this builds for Java 14), or else on a pool of up to maxConcurrent
+// platform threads belonging to this bulkhead. Middleware in joa-core finishes when call() returns,
+// so the request thread still waits, and the permits already give all the isolation there is;
+// offloading only adds a thread hop. What it does allow is for the request to stop waiting at its
+// deadline: the chain is interrupted, holds its place until it returns, and its handlers can no
+// longer write the response.
+public class Bulkhead implements Middleware {
+
+    private static final Logger log = LoggerFactory.getLogger(Bulkhead.class);
+
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ZERO;
+
+    private static volatile ExecutorService virtualThreads;
+    private static volatile boolean virtualThreadsChecked = false;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+
+    private long maxWaitNanos = DEFAULT_MAX_WAIT.toNanos();
+    private long retryAfterSeconds = 1;
+    private volatile ExecutorService offloadExecutor;
+    private boolean offload = false;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent) {
+        if(maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    // How long a request waits for a place before it's rejected
+    public Bulkhead maxWait(Duration maxWait) {
+        this.maxWaitNanos = maxWait.toNanos();
+        return this;
+    }
+
+    public Bulkhead retryAfter(Duration retryAfter) {
+        this.retryAfterSeconds = retryAfter.getSeconds();
+        return this;
+    }
+
+    // Experimental; see above
+    public Bulkhead offload() {
+        this.offload = true;
+        return this;
+    }
+
+    @Override
+    public void call(Context ctx, NextMiddleware next) {
+        boolean acquired;
+        try {
+            acquired = maxWaitNanos <= 0
+                    ? permits.tryAcquire()
+                    : permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException(e);
+        }
+        if(!acquired) {
+            rejected.increment();
+            Unavailable.respond(ctx, retryAfterSeconds);
+            return;
+        }
+
+        if(!offload) {
+            try {
+                next.run();
+            } finally {
+                permits.release();
+            }
+            return;
+        }
+
+        ResponseGuard guard = ResponseGuard.of(ctx);
+        Future<?> task;
+        try {
+            // The chain keeps its permit until it has actually finished, even once the request has
+            // stopped waiting for it
+            task = executor().submit(() -> {
+                try {
+                    next.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.increment();
+            Unavailable.respond(ctx, retryAfterSeconds);
+            return;
+        }
+        try {
+            Async.await(ctx, task);
+        } catch (RuntimeException e) {
+            // Cancelled at the deadline (or on interrupt), which interrupts the chain, but it may run
+            // on for a while; from here on the request thread owns the response
+            if(task.isCancelled()) {
+                guard.abandon();
+            }
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private ExecutorService executor() {
+        ExecutorService executor = offloadExecutor;
+        if(executor == null) {
+            synchronized (this) {
+                executor = offloadExecutor;
+                if(executor == null) {
+                    executor = virtualThreads();
+                    if(executor == null) {
+                        executor = platformThreads();
+                    }
+                    offloadExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    // Each task holds a permit until it's done, so there are never more than maxConcurrent of them
+    // besides the ones that have just released theirs and are about to finish; the queue only ever
+    // holds tasks waiting for those threads
+    private ExecutorService platformThreads() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxConcurrent), r -> {
+                    Thread t = new Thread(r, "joa-bulkhead-" + name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    static ExecutorService virtualThreads() {
+        if(!virtualThreadsChecked) {
+            synchronized (Bulkhead.class) {
+                if(!virtualThreadsChecked) {
+                    try {
+                        virtualThreads = (ExecutorService) Executors.class
+                                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                    } catch (ReflectiveOperationException | RuntimeException e) {
+                        log.debug("Virtual threads unavailable, offloading to platform threads");
+                    }
+                    virtualThreadsChecked = true;
+                }
+            }
+        }
+        return virtualThreads;
+    }
+}
@@ -0,0 +1,386 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Bounded in-process cache in front of a Gettable. When full, a newly loaded item only displaces
+// the entry picked for eviction if it has been requested more often recently (TinyLFU admission,
+// with a CLOCK sweep picking the victim), so a crawler reading every item once can't flush the
+// hot ones.
+//
+// Entries expire after the TTL. With refreshAfter set, a read of an entry older than that returns
+// it straight away and reloads it in the background. Refreshes call the Gettable with the context
+// of the request that triggered them, after that request may have finished.
+//
+// To keep the cache current, pass writes through it:
+//
+//   CachingGettable<User> cached = new CachingGettable<>(users, 10000).ttl(Duration.ofMinutes(5));
+//   router.get(new GetHandler<>(User.class, cached))
+//         .update(new UpdateHandler<>(User.class, cached.updating(users)))
+//         .delete(new DeleteHandler<>(User.class, cached.deleting(users)))
+//         .bulk(new BulkHandler<>(UserOperation.class).updating(cached.batchUpdating(batchUsers))
+//                                                     .deleting(cached.batchDeleting(batchUsers)));
+public class CachingGettable<T> implements Gettable<T> {
+
+    private static final int STRIPES = 1024;
+
+    private final Gettable<T> gettable;
+    private final int maxSize;
+    private final LongSupplier clock;
+
+    private long ttlNanos = Long.MAX_VALUE;
+    private long refreshNanos = Long.MAX_VALUE;
+    private Executor refreshExecutor = ForkJoinPool.commonPool();
+
+    private final ConcurrentHashMap<Object, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    // Bumped by writes and invalidations, so a load that overlaps one isn't cached
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<Object, Entry<T>>> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    public CachingGettable(Gettable<T> gettable, int maxSize) {
+        this(gettable, maxSize, System::nanoTime);
+    }
+
+    CachingGettable(Gettable<T> gettable, int maxSize, LongSupplier clock) {
+        if(maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.gettable = gettable;
+        this.maxSize = maxSize;
+        this.clock = clock;
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    public CachingGettable<T> ttl(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+        return this;
+    }
+
+    public CachingGettable<T> refreshAfter(Duration refreshAfter) {
+        this.refreshNanos = refreshAfter.toNanos();
+        return this;
+    }
+
+    public CachingGettable<T> refreshExecutor(Executor executor) {
+        this.refreshExecutor = executor;
+        return this;
+    }
+
+    @Override
+    public T get(Context ctx, String id) {
+        Object itemKey = itemKey(ctx, id);
+        Object key = key(ctx, itemKey);
+        int stripe = stripe(itemKey);
+        sketch.increment(key);
+
+        Entry<T> entry = entries.get(key);
+        long now = clock.getAsLong();
+        // Writes remove or replace the full item's entry, but only make its projections stale
+        if(entry != null && now - entry.loadedAt <= ttlNanos
+                && (key == itemKey || entry.generation == generations.get(stripe))) {
+            hits.increment();
+            entry.referenced = true;
+            if(now - entry.loadedAt > refreshNanos && entry.refreshing.compareAndSet(false, true)) {
+                refresh(ctx, id, key, stripe);
+            }
+            return entry.value;
+        }
+
+        misses.increment();
+        return load(ctx, id, key, stripe);
+    }
+
+    @Override
+    public Versioned version(Context ctx, String id) {
+        return gettable.version(ctx, id);
+    }
+
+    private T load(Context ctx, String id, Object key, int stripe) {
+        long generation = generations.get(stripe);
+
+        long start = clock.getAsLong();
+        T value = gettable.get(ctx, id);
+        long end = clock.getAsLong();
+        loads.increment();
+        loadNanos.add(end - start);
+
+        if(value != null && generations.get(stripe) == generation) {
+            admit(key, new Entry<>(value, end, generation));
+        }
+        return value;
+    }
+
+    private void refresh(Context ctx, String id, Object key, int stripe) {
+        refreshes.increment();
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    T value = load(ctx, id, key, stripe);
+                    if(value == null) {
+                        entries.remove(key);
+                    }
+                } catch (RuntimeException e) {
+                    // Keep serving the old value until it expires
+                    Entry<T> entry = entries.get(key);
+                    if(entry != null) {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            Entry<T> entry = entries.get(key);
+            if(entry != null) {
+                entry.refreshing.set(false);
+            }
+        }
+    }
+
+    // Replaces an existing entry outright; otherwise admits the new entry only if it's requested
+    // more often than the entry the CLOCK hand picks for eviction
+    private void admit(Object key, Entry<T> entry) {
+        if(entries.size() < maxSize || entries.containsKey(key)) {
+            entries.put(key, entry);
+            return;
+        }
+        // Under contention, skip caching rather than wait
+        if(!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Map.Entry<Object, Entry<T>> victim = nextVictim();
+            if(victim == null) {
+                entries.put(key, entry);
+            }
+            else if(sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+                if(entries.remove(victim.getKey(), victim.getValue())) {
+                    evictions.increment();
+                }
+                entries.put(key, entry);
+            }
+            else {
+                rejections.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Removes expired entries as it passes; null if that made room
+    private Map.Entry<Object, Entry<T>> nextVictim() {
+        long now = clock.getAsLong();
+        int budget = entries.size() * 2;
+        while(budget-- > 0) {
+            if(hand == null || !hand.hasNext()) {
+                hand = entries.entrySet().iterator();
+                if(!hand.hasNext()) {
+                    return null;
+                }
+            }
+            Map.Entry<Object, Entry<T>> candidate = hand.next();
+            Entry<T> e = candidate.getValue();
+            if(now - e.loadedAt > ttlNanos) {
+                if(entries.remove(candidate.getKey(), e)) {
+                    evictions.increment();
+                }
+                if(entries.size() < maxSize) {
+                    return null;
+                }
+            }
+            else if(e.referenced) {
+                e.referenced = false;
+            }
+            else {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // Write-through: a successful update replaces the cached item with the updated one
+    public Updatable<T> updating(Updatable<T> updatable) {
+        return (ctx, id, item) -> {
+            T updated = updatable.update(ctx, id, item);
+            Object key = itemKey(ctx, id);
+            long generation = generations.incrementAndGet(stripe(key));
+            if(updated != null) {
+                entries.put(key, new Entry<>(updated, clock.getAsLong(), generation));
+            }
+            else {
+                entries.remove(key);
+            }
+            return updated;
+        };
+    }
+
+    public Deletable<T> deleting(Deletable<T> deletable) {
+        return (ctx, id) -> {
+            boolean deleted = deletable.delete(ctx, id);
+            invalidate(ctx, id);
+            return deleted;
+        };
+    }
+
+    // For BulkHandler: updated items replace their entries, and IDs that weren't updated (or all of
+    // them, if updateAll() throws partway) are dropped
+    public BatchUpdatable<T> batchUpdating(BatchUpdatable<T> updatable) {
+        return new BatchUpdatable<>() {
+            @Override
+            public Map<String, T> updateAll(Context ctx, Map<String, T> items) {
+                Map<String, T> updated = Map.of();
+                try {
+                    updated = updatable.updateAll(ctx, items);
+                    return updated;
+                } finally {
+                    for(String id : items.keySet()) {
+                        T item = updated.get(id);
+                        Object key = itemKey(ctx, id);
+                        long generation = generations.incrementAndGet(stripe(key));
+                        if(item != null) {
+                            entries.put(key, new Entry<>(item, clock.getAsLong(), generation));
+                        }
+                        else {
+                            entries.remove(key);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public int maxUpdateBatchSize() {
+                return updatable.maxUpdateBatchSize();
+            }
+        };
+    }
+
+    public BatchDeletable<T> batchDeleting(BatchDeletable<T> deletable) {
+        return new BatchDeletable<>() {
+            @Override
+            public Set<String> deleteAll(Context ctx, Collection<String> ids) {
+                try {
+                    return deletable.deleteAll(ctx, ids);
+                } finally {
+                    for(String id : ids) {
+                        invalidate(ctx, id);
+                    }
+                }
+            }
+
+            @Override
+            public int maxDeleteBatchSize() {
+                return deletable.maxDeleteBatchSize();
+            }
+        };
+    }
+
+    // Projections of the item are left to be dropped as stale when next read
+    public void invalidate(Context ctx, String id) {
+        Object key = itemKey(ctx, id);
+        generations.incrementAndGet(stripe(key));
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        for(int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        entries.clear();
+    }
+
+    // Items in a sub-resource collection are keyed by their parent IDs too
+    private static Object itemKey(Context ctx, String id) {
+        Map<String, String> parentIds = ctx == null ? Map.of() : RestRouter.getParentIds(ctx);
+        return parentIds.isEmpty() ? id : Arrays.asList(parentIds, id);
+    }
+
+    // A Gettable may fetch only the requested fields, so a projected item is cached apart from the
+    // full one, and checked against the generation of the item key's stripe
+    private static Object key(Context ctx, Object itemKey) {
+        Projection projection = ctx == null ? null : Projection.of(ctx);
+        return projection == null ? itemKey : Arrays.asList(itemKey, projection);
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Loaded items not cached because they were requested less often than the eviction candidate
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public Duration getAverageLoadTime() {
+        long n = loads.sum();
+        return n == 0 ? Duration.ZERO : Duration.ofNanos(loadNanos.sum() / n);
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final long loadedAt;
+        // Of the item key's stripe when loaded
+        final long generation;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        volatile boolean referenced = false;
+
+        Entry(T value, long loadedAt, long generation) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -8,6 +8,8 @@ public class CollectionPage<T> {
     private Integer pageSize;
     private final List<T> items;
     private Integer totalItems = null;
+    private Boolean totalItemsEstimated = null;
+    private String nextCursor = null;
 
     public CollectionPage(List<T> items) {
         this.items = items;
@@ -26,6 +28,31 @@ public class CollectionPage<T> {
         this.totalItems = totalItems;
     }
 
+    public CollectionPage(Integer page, int pageSize, List<T> items, Integer totalItems, String nextCursor) {
+        this(page, pageSize, items, totalItems, null, nextCursor);
+    }
+
+    public CollectionPage(Integer page, int pageSize, List<T> items, Integer totalItems, Boolean totalItemsEstimated,
+                          String nextCursor) {
+        this.page = page;
+        this.pageSize = pageSize;
+        this.items = items;
+        this.totalItems = totalItems;
+        this.totalItemsEstimated = totalItemsEstimated;
+        this.nextCursor = nextCursor;
+    }
+
+    // The same page with other items, e.g. projected ones
+    <U> CollectionPage<U> withItems(List<U> items) {
+        CollectionPage<U> copy = new CollectionPage<>(items);
+        copy.page = page;
+        copy.pageSize = pageSize;
+        copy.totalItems = totalItems;
+        copy.totalItemsEstimated = totalItemsEstimated;
+        copy.nextCursor = nextCursor;
+        return copy;
+    }
+
     public Integer getPage() {
         return page;
     }
@@ -41,4 +68,12 @@ public class CollectionPage<T> {
     public Integer getTotalItems() {
         return totalItems;
     }
+
+    public Boolean getTotalItemsEstimated() {
+        return totalItemsEstimated;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
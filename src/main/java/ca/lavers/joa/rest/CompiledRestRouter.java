@@ -0,0 +1,323 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.*;
+import ca.lavers.joa.core.errors.MethodNotAllowedException;
+import ca.lavers.joa.core.errors.NotFoundException;
+import ca.lavers.joa.core.util.WrappedRequest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+
+// Immutable dispatch table built from a RestRouter tree by RestRouter.compile(). Routes are
+// resolved in a single scan over the request path; the item and parent IDs are exposed through
+// one RouteMatch stored in the Context rather than separate attributes per nesting level.
+//
+// Dispatch is low-allocation, not allocation-free: each request gets its RouteMatch (an object and
+// one int array, whatever the depth), and a nested level that has middleware of its own, or that the
+// route ends at, sees the request through a MatchedRequest in the Context withAlternateRequest()
+// makes.
+public final class CompiledRestRouter implements Middleware {
+
+    static final int OK = 0;
+    static final int NOT_FOUND = 1;
+    static final int METHOD_NOT_ALLOWED = 2;
+
+    private final Level root;
+    private final int maxDepth;
+
+    CompiledRestRouter(RestRouter router) {
+        this.root = new Level(router, 0, null, null, null, null, "/");
+        this.maxDepth = root.maxDepth();
+    }
+
+    @Override
+    public void call(Context ctx, NextMiddleware next) {
+        RouteMatch match = resolve(ctx.request().path(), ctx.request().method());
+        // GET /?ids= depends on the query, so isn't part of resolve()
+        Level level = match.level;
+        if(level != null && level.batchGet != null && match.itemStart < 0 && match.failure != NOT_FOUND
+                && "GET".equals(ctx.request().method())
+                && ctx.request().queryParams().containsKey(RestRouter.BATCH_GET_PARAM)) {
+            match.terminal = level.batchGet;
+            match.failure = OK;
+        }
+        ctx.put(RestRouter.NS, RestRouter.ROUTE_MATCH, match);
+        Deadline.start(ctx, level != null ? level.timeout : root.timeout);
+        try {
+            proceed(ctx, match, 1);
+        } catch (DeadlineExceededException e) {
+            Deadline.respond(ctx);
+        }
+    }
+
+    RouteMatch resolve(String path, String method) {
+        RouteMatch match = new RouteMatch(path, root, maxDepth);
+
+        int len = path.length();
+        int end = (len > 0 && path.charAt(len - 1) == '/') ? len - 1 : len;
+        int pos = (len > 0 && path.charAt(0) == '/') ? 1 : 0;
+
+        Level level = root;
+        int depth = 0;
+        while(true) {
+            match.level = level;
+            match.levelOffset(depth, pos);
+            match.depth = depth;
+
+            if(pos >= end) {
+                match.terminal = level.collectionChain(method);
+                break;
+            }
+
+            int slash = path.indexOf('/', pos);
+            if(slash < 0 || slash >= end) {
+                if(level.batchGet != null && method.equals("POST") && end - pos == RestRouter.BATCH_GET_PATH.length()
+                        && path.startsWith(RestRouter.BATCH_GET_PATH, pos)) {
+                    match.terminal = level.batchGet;
+                    break;
+                }
+                if(level.bulk != null && method.equals("POST") && end - pos == RestRouter.BULK_PATH.length()
+                        && path.startsWith(RestRouter.BULK_PATH, pos)) {
+                    match.terminal = level.bulk;
+                    break;
+                }
+                match.itemStart = pos;
+                match.itemEnd = end;
+                match.terminal = level.itemChain(method);
+                break;
+            }
+
+            int nameStart = slash + 1;
+            int nameEnd = path.indexOf('/', nameStart);
+            if(nameEnd < 0 || nameEnd > end) {
+                nameEnd = end;
+            }
+
+            int sub = level.findSubResource(path, nameStart, nameEnd);
+            if(sub < 0) {
+                match.failure = NOT_FOUND;
+                return match;
+            }
+
+            match.parent(depth, sub, pos, slash);
+
+            pos = nameEnd + 1;
+            depth++;
+
+            if(level.children[sub] == null) {
+                // Plain middleware sub-resource; it gets whatever path remains
+                match.levelOffset(depth, pos);
+                match.level = null;
+                match.depth = depth;
+                match.terminal = level.opaque[sub];
+                return match;
+            }
+            level = level.children[sub];
+        }
+
+        if(match.terminal == null) {
+            match.failure = METHOD_NOT_ALLOWED;
+        }
+        return match;
+    }
+
+    // Runs any intermediate sub-resource middleware between fromDepth and the matched
+    // level, then the matched chain itself.
+    private static void proceed(Context ctx, RouteMatch match, int fromDepth) {
+        for(int d = fromDepth; d <= match.depth; d++) {
+            Level level = d == match.depth ? match.level : match.level(d);
+            if(level != null && level.entry != null) {
+                level.entry.call(atDepth(ctx, match, d));
+                return;
+            }
+        }
+
+        switch(match.failure) {
+            case NOT_FOUND: throw new NotFoundException();
+            case METHOD_NOT_ALLOWED: throw new MethodNotAllowedException();
+        }
+        Context terminalCtx = atDepth(ctx, match, match.depth);
+        Level level = match.level;
+        int action = level == null ? -1 : level.actionOf(match.terminal);
+        if(action < 0 || (level.routes == null && level.metrics == null)) {
+            match.terminal.call(terminalCtx);
+            return;
+        }
+
+        AdmissionControl.Route admission = level.routes != null ? level.routes[action] : null;
+        if(level.metrics != null) {
+            PhaseTimer.time(terminalCtx, level.metrics, level.routeNames[action], admission,
+                    () -> match.terminal.call(terminalCtx));
+        }
+        else {
+            admission.run(terminalCtx, () -> match.terminal.call(terminalCtx));
+        }
+    }
+
+    private static Context atDepth(Context ctx, RouteMatch match, int depth) {
+        if(depth == 0) {
+            return ctx;
+        }
+        return ctx.withAlternateRequest(new MatchedRequest(ctx.request(), match, depth));
+    }
+
+    private static final String[] ACTIONS = {AdmissionControl.LIST, AdmissionControl.CREATE, AdmissionControl.GET,
+            AdmissionControl.UPDATE, AdmissionControl.DELETE, AdmissionControl.BATCH_GET, AdmissionControl.BULK};
+
+    static final class Level {
+        final int depth;
+        final MiddlewareChain list, create, get, update, delete, batchGet, bulk;
+
+        final String[] subNames;
+        final String[] parentIdNames;
+        final Level[] children;          // non-null where the sub-resource chain ends in a RestRouter
+        final MiddlewareChain[] opaque;  // otherwise, the sub-resource chain as given
+
+        // Middleware preceding the nested RestRouter in its sub-resource chain, if any,
+        // followed by a continuation back into the dispatch
+        final MiddlewareChain entry;
+
+        // The chains by action, in the order of ACTIONS, with the route names and admission control
+        // routes for each if this level or one above it has metrics or admission control
+        final MiddlewareChain[] chains;
+        final String[] routeNames;
+        final AdmissionControl.Route[] routes;
+        final RequestMetrics metrics;
+        // The shortest of this level's and its ancestors' timeouts
+        final Duration timeout;
+
+        Level(RestRouter router, int depth, Middleware[] prefix, AdmissionControl inheritedControl,
+              RequestMetrics inheritedMetrics, Duration inheritedTimeout, String resource) {
+            router.freeze();
+            this.depth = depth;
+            this.list = router.listChain();
+            this.create = router.createChain();
+            this.get = router.getChain();
+            this.update = router.updateChain();
+            this.delete = router.deleteChain();
+            this.batchGet = router.batchGetChain();
+            this.bulk = router.bulkChain();
+
+            this.chains = new MiddlewareChain[] {list, create, get, update, delete, batchGet, bulk};
+
+            AdmissionControl control = router.admissionControl() != null ? router.admissionControl() : inheritedControl;
+            this.metrics = router.metrics() != null ? router.metrics() : inheritedMetrics;
+            Duration own = router.timeout();
+            this.timeout = own == null || (inheritedTimeout != null && inheritedTimeout.compareTo(own) < 0)
+                    ? inheritedTimeout : own;
+            this.routeNames = new String[ACTIONS.length];
+            this.routes = control == null ? null : new AdmissionControl.Route[ACTIONS.length];
+            for(int a = 0; a < ACTIONS.length; a++) {
+                routeNames[a] = ACTIONS[a] + " " + resource;
+                if(routes != null && chains[a] != null) {
+                    routes[a] = control.route(ACTIONS[a], resource);
+                }
+            }
+
+            Map<String, SubResourceChain> subs = router.subResources();
+            int n = subs.size();
+            this.subNames = new String[n];
+            this.parentIdNames = new String[n];
+            this.children = new Level[n];
+            this.opaque = new MiddlewareChain[n];
+
+            int i = 0;
+            for(Map.Entry<String, SubResourceChain> e : subs.entrySet()) {
+                SubResourceChain sub = e.getValue();
+                Middleware[] mw = sub.middlewares;
+                subNames[i] = e.getKey();
+                parentIdNames[i] = sub.parentName;
+                if(mw.length > 0 && mw[mw.length - 1] instanceof RestRouter) {
+                    children[i] = new Level((RestRouter) mw[mw.length - 1], depth + 1,
+                            Arrays.copyOf(mw, mw.length - 1), control, metrics, timeout,
+                            (depth == 0 ? "" : resource) + "/" + e.getKey());
+                }
+                else {
+                    opaque[i] = sub.chain;
+                }
+                i++;
+            }
+
+            if(prefix != null && prefix.length > 0) {
+                Middleware[] mw = Arrays.copyOf(prefix, prefix.length + 1);
+                mw[prefix.length] = (ctx, next) -> {
+                    RouteMatch match = ctx.get(RestRouter.NS, RestRouter.ROUTE_MATCH, RouteMatch.class)
+                            .orElseThrow(() -> new IllegalStateException("RouteMatch not found in Context attributes"));
+                    proceed(ctx, match, depth + 1);
+                };
+                this.entry = new MiddlewareChain(mw);
+            }
+            else {
+                this.entry = null;
+            }
+        }
+
+        // Index into ACTIONS of the action whose chain this is, or -1
+        int actionOf(MiddlewareChain terminal) {
+            for(int a = 0; a < chains.length; a++) {
+                if(chains[a] == terminal) {
+                    return a;
+                }
+            }
+            return -1;
+        }
+
+        int maxDepth() {
+            int max = depth;
+            for(int i = 0; i < children.length; i++) {
+                max = Math.max(max, children[i] != null ? children[i].maxDepth() : depth + 1);
+            }
+            return max;
+        }
+
+        MiddlewareChain collectionChain(String method) {
+            switch(method) {
+                case "GET": return list;
+                case "POST": return create;
+                default: return null;
+            }
+        }
+
+        MiddlewareChain itemChain(String method) {
+            switch(method) {
+                case "GET": return get;
+                case "PUT": return update;
+                case "DELETE": return delete;
+                default: return null;
+            }
+        }
+
+        int findSubResource(String path, int start, int end) {
+            int len = end - start;
+            for(int i = 0; i < subNames.length; i++) {
+                String name = subNames[i];
+                if(name.length() == len && path.regionMatches(start, name, 0, len)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
+
+// Request as seen by a nested level; the relative path is only built if something asks for it
+class MatchedRequest extends WrappedRequest {
+    private final RouteMatch match;
+    private final int depth;
+    private String path;
+
+    public MatchedRequest(Request wrapped, RouteMatch match, int depth) {
+        super(wrapped);
+        this.match = match;
+        this.depth = depth;
+    }
+
+    @Override
+    public String path() {
+        if(path == null) {
+            path = match.relativePath(depth);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,128 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// ETag/Last-Modified validators and conditional GET evaluation (RFC 7232) for the handlers
+final class Conditional {
+
+    static final int NOT_MODIFIED = 304;
+
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Conditional() { }
+
+    // Strong tag for a single item's version
+    static String strongTag(String version) {
+        return '"' + tagValue(version) + '"';
+    }
+
+    // Weak tag for a list page: the collection's version plus a hash of the query, which decides
+    // what's on the page
+    static String weakTag(String version, Map<String, String> queryParams) {
+        long hash = FNV_OFFSET;
+        for (Map.Entry<String, String> e : new TreeMap<>(queryParams).entrySet()) {
+            hash = fnv(hash, e.getKey());
+            hash = fnv(hash, "=");
+            hash = fnv(hash, e.getValue());
+            hash = fnv(hash, "&");
+        }
+        return "W/\"" + tagValue(version) + '-' + Long.toHexString(hash) + '"';
+    }
+
+    // Sets the validators on the response, and answers 304 if the client's copy is still current.
+    // Either validator may be null.
+    static boolean notModified(Context ctx, String etag, Instant lastModified) {
+        ResponseCache.captureValidators(ctx, etag, lastModified);
+
+        boolean notModified;
+        String ifNoneMatch = ctx.request().header("If-None-Match");
+        if(ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is present
+            notModified = etag != null && matchesAny(ifNoneMatch, etag);
+        }
+        else {
+            notModified = lastModified != null && notModifiedSince(ctx.request().header("If-Modified-Since"), lastModified);
+        }
+
+        try {
+            ResponseGuard.write(ctx, () -> {
+                if(etag != null) {
+                    ctx.response().header("ETag", etag);
+                }
+                if(lastModified != null) {
+                    ctx.response().header("Last-Modified", HTTP_DATE.format(lastModified));
+                }
+                if(notModified) {
+                    ctx.response().status(NOT_MODIFIED);
+                }
+            });
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
+        return notModified;
+    }
+
+    // Weak comparison, as If-None-Match uses
+    private static boolean matchesAny(String header, String etag) {
+        String opaque = opaque(etag);
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if(candidate.equals("*") || opaque(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static boolean notModifiedSince(String header, Instant lastModified) {
+        if(header == null) {
+            return false;
+        }
+        try {
+            Instant since = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // Versions are used verbatim if they're valid tag characters, and hashed otherwise
+    private static String tagValue(String version) {
+        for(int i = 0; i < version.length(); i++) {
+            char c = version.charAt(i);
+            if(c < 0x21 || c == '"' || c > 0x7E) {
+                return Long.toHexString(fnv(FNV_OFFSET, version));
+            }
+        }
+        return version;
+    }
+
+    private static long fnv(long hash, String s) {
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,101 @@
+package ca.lavers.joa.rest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// Recently computed collection totals, keyed by the request's parent IDs and Filtering, so
+// equivalent filter specs share an entry. Counts older than the staleness window are recomputed.
+// Only suitable for collections whose totals don't otherwise depend on the request (e.g. on who
+// is asking).
+public class CountCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final long stalenessNanos;
+    private final int maxSize;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public CountCache(Duration staleness) {
+        this(staleness, DEFAULT_MAX_SIZE);
+    }
+
+    public CountCache(Duration staleness, int maxSize) {
+        this(staleness, maxSize, System::nanoTime);
+    }
+
+    CountCache(Duration staleness, int maxSize, LongSupplier clock) {
+        if(maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.stalenessNanos = staleness.toNanos();
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    // The cached count, or null if there's none within the staleness window
+    public Integer get(Map<String, String> parentIds, Filtering filter) {
+        Entry entry = entries.get(new Key(parentIds, filter));
+        if(entry == null || clock.getAsLong() - entry.computedAt > stalenessNanos) {
+            return null;
+        }
+        return entry.count;
+    }
+
+    public void put(Map<String, String> parentIds, Filtering filter, int count) {
+        long now = clock.getAsLong();
+        if(entries.size() >= maxSize) {
+            entries.values().removeIf(e -> now - e.computedAt > stalenessNanos);
+            if(entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(new Key(parentIds, filter), new Entry(count, now));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Key {
+        final Map<String, String> parentIds;
+        final Filtering filter;
+
+        Key(Map<String, String> parentIds, Filtering filter) {
+            this.parentIds = parentIds;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return parentIds.equals(other.parentIds) && Objects.equals(filter, other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * parentIds.hashCode() + Objects.hashCode(filter);
+        }
+    }
+
+    private static final class Entry {
+        final int count;
+        final long computedAt;
+
+        Entry(int count, long computedAt) {
+            this.count = count;
+            this.computedAt = computedAt;
+        }
+    }
+}
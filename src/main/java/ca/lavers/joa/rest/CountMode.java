@@ -0,0 +1,6 @@
+package ca.lavers.joa.rest;
+
+// How a list response's totalItems is computed, as requested with e.g. ?count=estimate
+public enum CountMode {
+    NONE, EXACT, ESTIMATE
+}
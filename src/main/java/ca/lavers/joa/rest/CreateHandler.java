@@ -10,32 +10,65 @@ public class CreateHandler<T> extends BaseHandler<T> {
 
     private final Creatable<T> creatable;
     private boolean defer = false;
+    private WriteBehindQueue<T> queue;
 
     public CreateHandler(Class<T> itemClass, Creatable<T> creatable) {
         super(itemClass);
         this.creatable = creatable;
     }
 
+    // For a non-blocking backend; see GetHandler.async()
+    public static <T> CreateHandler<T> async(Class<T> itemClass, AsyncCreatable<T> creatable) {
+        return new CreateHandler<>(itemClass, Async.creatable(creatable));
+    }
+
     public CreateHandler<T> respondAccepted() {
         this.defer = true;
         return this;
     }
 
+    // Queues items to be written in the background, responding 202 with the item's WriteStatus,
+    // or 503 if the queue is full
+    public CreateHandler<T> respondAccepted(WriteBehindQueue<T> queue) {
+        this.defer = true;
+        this.queue = queue;
+        return this;
+    }
+
     @Override
     public void call(Context ctx, NextMiddleware next) {
         try {
             T item = getRequestBody(ctx);
-            T created = creatable.create(ctx, item);
-            if(defer) {
-                ctx.response().body(created == null ? "Accepted" : created);    // TODO
-                ctx.response().status(202);
-            }
-            else {
-                ctx.response().body(created);
-                ctx.response().status(201);
+            if(queue != null) {
+                enqueue(ctx, item);
+                return;
             }
+            T created = creatable.create(ctx, item);
+            ResponseGuard.write(ctx, () -> {
+                if(defer) {
+                    ctx.response().body(created == null ? "Accepted" : created);    // TODO
+                    ctx.response().status(202);
+                }
+                else {
+                    ctx.response().body(created);
+                    ctx.response().status(201);
+                }
+            });
         } catch (IOException e) {
             throw new InternalServerErrorException(e);
         }
     }
+
+    private void enqueue(Context ctx, T item) throws IOException {
+        String id = queue.offer(ctx, item);
+        if(id == null) {
+            Unavailable.respond(ctx, queue.getRetryAfterSeconds());
+            return;
+        }
+        WriteStatus<T> status = queue.status(id);
+        ResponseGuard.write(ctx, () -> {
+            ctx.response().body(status);
+            ctx.response().status(202);
+        });
+    }
 }
@@ -0,0 +1,40 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Position in a collection for keyset paging: the sort key values of the last item on a page
+// (in the order of the request's sort fields) and its ID, which breaks ties between equal keys.
+// Values may be null, String, Integer, Long, Double or Boolean.
+public final class Cursor {
+
+    private final List<Object> values;
+    private final String id;
+
+    public Cursor(List<Object> values, String id) {
+        for (Object value : values) {
+            if(value != null && !CursorCodec.isSupported(value)) {
+                throw new IllegalArgumentException("Unsupported cursor value type: " + value.getClass().getName());
+            }
+        }
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        this.id = id;
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public Object getValue(int index) {
+        return values.get(index);
+    }
+
+    public int getValueCount() {
+        return values.size();
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,262 @@
+package ca.lavers.joa.rest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+// Encodes Cursors as compact URL-safe strings: a tagged binary encoding of the values and ID,
+// followed by a truncated HMAC-SHA256 over the encoding and a context string (the request's sort
+// and filter specs), so a cursor that's been altered or reused with another query is rejected.
+final class CursorCodec {
+
+    static final int MAX_CURSOR_LENGTH = 2048;
+    static final int MIN_KEY_LENGTH = 16;
+
+    private static final int VERSION = 1;
+    private static final int TAG_LENGTH = 12;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INT = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int TRUE = 5;
+    private static final int FALSE = 6;
+
+    // Cursors from a random key are only valid until restart, and only on this instance
+    static CursorCodec withRandomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new CursorCodec(key);
+    }
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    CursorCodec(byte[] key) {
+        if(key.length < MIN_KEY_LENGTH) {
+            throw new IllegalArgumentException("Cursor keys must be at least " + MIN_KEY_LENGTH + " bytes");
+        }
+        this.key = new SecretKeySpec(key.clone(), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    static boolean isSupported(Object value) {
+        return value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean;
+    }
+
+    String encode(Cursor cursor, String context) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+        writeVarint(out, cursor.getValueCount());
+        for (Object value : cursor.getValues()) {
+            writeValue(out, value);
+        }
+        writeValue(out, cursor.getId());
+
+        byte[] payload = out.toByteArray();
+        byte[] tag = tag(payload, payload.length, context);
+        byte[] encoded = new byte[payload.length + TAG_LENGTH];
+        System.arraycopy(payload, 0, encoded, 0, payload.length);
+        System.arraycopy(tag, 0, encoded, payload.length, TAG_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(encoded);
+    }
+
+    Cursor decode(String encoded, String context) {
+        if(encoded.length() > MAX_CURSOR_LENGTH) {
+            throw new SpecParseException("Cursor too long");
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new SpecParseException("Malformed cursor");
+        }
+        int payloadLength = bytes.length - TAG_LENGTH;
+        if(payloadLength < 1) {
+            throw new SpecParseException("Malformed cursor");
+        }
+
+        byte[] expected = tag(bytes, payloadLength, context);
+        if(!MessageDigest.isEqual(Arrays.copyOf(expected, TAG_LENGTH), Arrays.copyOfRange(bytes, payloadLength, bytes.length))) {
+            throw new SpecParseException("Cursor is not valid for this request");
+        }
+
+        Reader in = new Reader(bytes, payloadLength);
+        if(in.readByte() != VERSION) {
+            throw new SpecParseException("Unsupported cursor version");
+        }
+        int count = in.readVarint();
+        if(count > payloadLength) {
+            throw new SpecParseException("Malformed cursor");
+        }
+        List<Object> values = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            values.add(in.readValue());
+        }
+        Object id = in.readValue();
+        if(in.pos != payloadLength || (id != null && !(id instanceof String))) {
+            throw new SpecParseException("Malformed cursor");
+        }
+        return new Cursor(values, (String) id);
+    }
+
+    private byte[] tag(byte[] payload, int length, String context) {
+        Mac mac = macs.get();
+        mac.update(payload, 0, length);
+        mac.update((byte) 0);
+        if(context != null) {
+            mac.update(context.getBytes(StandardCharsets.UTF_8));
+        }
+        return mac.doFinal();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, Object value) {
+        if(value == null) {
+            out.write(NULL);
+        }
+        else if(value instanceof String) {
+            byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.write(STRING);
+            writeVarint(out, utf8.length);
+            out.write(utf8, 0, utf8.length);
+        }
+        else if(value instanceof Integer) {
+            out.write(INT);
+            writeVarlong(out, zigzag((Integer) value));
+        }
+        else if(value instanceof Long) {
+            out.write(LONG);
+            writeVarlong(out, zigzag((Long) value));
+        }
+        else if(value instanceof Double) {
+            out.write(DOUBLE);
+            long bits = Double.doubleToLongBits((Double) value);
+            for(int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        }
+        else if(value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported cursor value type: " + value.getClass().getName());
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarlong(ByteArrayOutputStream out, long value) {
+        while((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Reader {
+        final byte[] bytes;
+        final int end;
+        int pos = 0;
+
+        Reader(byte[] bytes, int end) {
+            this.bytes = bytes;
+            this.end = end;
+        }
+
+        int readByte() {
+            if(pos >= end) {
+                throw new SpecParseException("Malformed cursor");
+            }
+            return bytes[pos++] & 0xFF;
+        }
+
+        long readVarlong() {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SpecParseException("Malformed cursor");
+        }
+
+        int readVarint() {
+            long value = readVarlong();
+            if(value < 0 || value > Integer.MAX_VALUE) {
+                throw new SpecParseException("Malformed cursor");
+            }
+            return (int) value;
+        }
+
+        Object readValue() {
+            switch(readByte()) {
+                case NULL:
+                    return null;
+                case STRING: {
+                    int length = readVarint();
+                    if(length > end - pos) {
+                        throw new SpecParseException("Malformed cursor");
+                    }
+                    String s = new String(bytes, pos, length, StandardCharsets.UTF_8);
+                    pos += length;
+                    return s;
+                }
+                case INT: {
+                    long value = unzigzag(readVarlong());
+                    if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                        throw new SpecParseException("Malformed cursor");
+                    }
+                    return (int) value;
+                }
+                case LONG:
+                    return unzigzag(readVarlong());
+                case DOUBLE: {
+                    long bits = 0;
+                    for(int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                }
+                case TRUE:
+                    return true;
+                case FALSE:
+                    return false;
+                default:
+                    throw new SpecParseException("Malformed cursor");
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+
+import java.io.IOException;
+import java.time.Duration;
+
+// When a request's result stops being useful, set by RestRouter.timeout() or the client's
+// X-Request-Timeout header (in milliseconds), whichever is sooner. Collections can get it with
+// Deadline.of(ctx) to bound their own queries; the handlers check it before calling them, and
+// ListHandler while draining a ListResult, so an abandoned query isn't read to the end.
+//
+// A request past its deadline fails with DeadlineExceededException, which the router answers with
+// 504 Gateway Timeout.
+public final class Deadline {
+
+    public static final String HEADER = "X-Request-Timeout";
+
+    // Never expires
+    public static final Deadline NONE = new Deadline(0);
+
+    // Longer timeouts are cut to this (about 73 years), so nanoTime arithmetic can't overflow
+    static final Duration MAX_TIMEOUT = Duration.ofNanos(Long.MAX_VALUE / 4);
+
+    // How many items are read from a stream between checks
+    static final int CHECK_INTERVAL = 64;
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        long nanos = timeout.compareTo(MAX_TIMEOUT) > 0 ? MAX_TIMEOUT.toNanos() : timeout.toNanos();
+        return new Deadline(System.nanoTime() + Math.max(1, nanos));
+    }
+
+    // The request's deadline, or NONE
+    public static Deadline of(Context ctx) {
+        return ctx.get(RestRouter.NS, RestRouter.DEADLINE, Deadline.class).orElse(NONE);
+    }
+
+    public boolean isExpired() {
+        return this != NONE && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    // Time left, or null for NONE
+    public Duration remaining() {
+        return this == NONE ? null : Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public void check() {
+        if(isExpired()) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    private boolean isBefore(Deadline other) {
+        return other == NONE || (this != NONE && expiresAtNanos - other.expiresAtNanos < 0);
+    }
+
+    // Sets the request's deadline from the header and the router's timeout (which may be null),
+    // unless an outer router already set a sooner one
+    static void start(Context ctx, Duration timeout) {
+        Deadline current = of(ctx);
+        Deadline deadline = current;
+        if(current == NONE) {
+            String header = ctx.request().header(HEADER);
+            if(header != null) {
+                deadline = after(Duration.ofMillis(parseTimeout(header)));
+            }
+        }
+        if(timeout != null) {
+            Deadline routerDeadline = after(timeout);
+            if(routerDeadline.isBefore(deadline)) {
+                deadline = routerDeadline;
+            }
+        }
+        if(deadline != current) {
+            ctx.put(RestRouter.NS, RestRouter.DEADLINE, deadline);
+        }
+    }
+
+    private static long parseTimeout(String header) {
+        String value = header.trim();
+        try {
+            long millis = Long.parseLong(value);
+            if(millis > 0) {
+                return millis;
+            }
+        } catch (NumberFormatException e) {
+            // Too many digits for a long is still a (very long) timeout
+            if(value.matches("\\+?[0-9]+")) {
+                return Long.MAX_VALUE;
+            }
+        }
+        throw new BadRequestException("Invalid " + HEADER + ": expected a number of milliseconds");
+    }
+
+    // joa-core has no exception for 504, so the response is written directly
+    static void respond(Context ctx) {
+        try {
+            ctx.response().body("Gateway Timeout");
+            ctx.response().status(504);
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ca.lavers.joa.rest;
+
+// Thrown once a request is past its Deadline; RestRouter responds 504 Gateway Timeout
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException() {
+        super("Deadline exceeded");
+    }
+}
@@ -2,8 +2,11 @@ package ca.lavers.joa.rest;
 
 import ca.lavers.joa.core.Context;
 import ca.lavers.joa.core.NextMiddleware;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
 import ca.lavers.joa.core.errors.NotFoundException;
 
+import java.io.IOException;
+
 public class DeleteHandler<T> extends BaseHandler<T> {
 
     private final Deletable<T> deletable;
@@ -13,15 +16,22 @@ public class DeleteHandler<T> extends BaseHandler<T> {
         this.deletable = deletable;
     }
 
+    // For a non-blocking backend; see GetHandler.async()
+    public static <T> DeleteHandler<T> async(Class<T> itemClass, AsyncDeletable<T> deletable) {
+        return new DeleteHandler<>(itemClass, Async.deletable(deletable));
+    }
+
     @Override
     public void call(Context ctx, NextMiddleware next) {
         String id = getItemId(ctx);
         boolean result = deletable.delete(ctx, id);
-        if(result) {
-            ctx.response().status(200);
-        }
-        else {
+        if(!result) {
             throw new NotFoundException();
         }
+        try {
+            ResponseGuard.write(ctx, () -> ctx.response().status(200));
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
     }
 }
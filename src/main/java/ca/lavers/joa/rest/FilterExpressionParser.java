@@ -0,0 +1,180 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parses filters combined with and, or and not, with parentheses for grouping:
+//
+//   isActive and (age(18, 30) or hasRole("staff")) and not inGroup("banned")
+//
+// not binds tightest, then and, then or. Each single filter is parsed by FilterParser, so its
+// arguments follow the same rules as a lone filter's. A spec is only read as an expression if
+// FilterParser rejects it, so anything that was a valid filter before expressions were supported
+// (filter=not, or not(5)) still parses to the same Filtering, and a malformed spec that isn't an
+// expression gets the same error. Within an expression, and, or and not are only operators when an
+// operand follows them. not also needs a space after it, so not(5) is always the filter named not,
+// and in "not and x" it's the operand of and.
+final class FilterExpressionParser {
+
+    private final String spec;
+    private int pos = 0;
+    private boolean combined = false;
+
+    private FilterExpressionParser(String spec) {
+        this.spec = spec;
+    }
+
+    static Filtering parse(String spec) {
+        SpecParseException single;
+        try {
+            return FilterParser.parse(spec);
+        } catch (SpecParseException e) {
+            single = e;
+        }
+
+        FilterExpressionParser parser = new FilterExpressionParser(spec);
+        Filtering expression;
+        try {
+            expression = parser.parseOr();
+            parser.skipSpaces();
+            if(parser.pos < spec.length()) {
+                throw error("Expected and, or, or end of input");
+            }
+        } catch (SpecParseException e) {
+            throw parser.combined ? e : single;
+        }
+        if(!expression.isCompound()) {
+            throw single;
+        }
+        return expression;
+    }
+
+    private Filtering parseOr() {
+        Filtering first = parseAnd();
+        List<Object> operands = null;
+        while(keyword(Filtering.OR)) {
+            if(operands == null) {
+                operands = new ArrayList<>();
+                operands.add(first);
+            }
+            operands.add(parseAnd());
+        }
+        return operands == null ? first : new Filtering(Filtering.OR, operands);
+    }
+
+    private Filtering parseAnd() {
+        Filtering first = parseUnary();
+        List<Object> operands = null;
+        while(keyword(Filtering.AND)) {
+            if(operands == null) {
+                operands = new ArrayList<>();
+                operands.add(first);
+            }
+            operands.add(parseUnary());
+        }
+        return operands == null ? first : new Filtering(Filtering.AND, operands);
+    }
+
+    private Filtering parseUnary() {
+        skipSpaces();
+        if(pos >= spec.length()) {
+            throw error("Expected filter");
+        }
+        // In "not and x", not is the operand
+        if(spec.startsWith(Filtering.NOT + " ", pos) && isOperator(pos, Filtering.NOT)) {
+            int next = skipSpaces(pos + Filtering.NOT.length());
+            if(!isOperator(next, Filtering.AND) && !isOperator(next, Filtering.OR)) {
+                pos = next;
+                combined = true;
+                return new Filtering(Filtering.NOT, List.of(parseUnary()));
+            }
+        }
+        if(spec.charAt(pos) == '(') {
+            combined = true;
+            pos++;
+            Filtering group = parseOr();
+            skipSpaces();
+            if(pos >= spec.length() || spec.charAt(pos) != ')') {
+                throw error("Expected closing parenthesis");
+            }
+            pos++;
+            return group;
+        }
+        return parseFilter();
+    }
+
+    // A single filter: a name, optionally followed by arguments in parentheses
+    private Filtering parseFilter() {
+        int start = pos;
+        while(pos < spec.length() && isNameChar(spec.charAt(pos))) {
+            pos++;
+        }
+        if(pos == start) {
+            throw error("Expected filter");
+        }
+        int nameEnd = pos;
+        skipSpaces();
+        if(pos < spec.length() && spec.charAt(pos) == '(') {
+            pos = closingParenthesis(pos + 1) + 1;
+        }
+        else {
+            pos = nameEnd;
+        }
+        return FilterParser.parse(spec.substring(start, pos));
+    }
+
+    // Index of the parenthesis closing a filter's arguments: the first one that isn't escaped, as
+    // FilterParser also ends a string argument at one
+    private int closingParenthesis(int from) {
+        for(int i = from; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if(c == '\\') {
+                i++;
+            }
+            else if(c == ')') {
+                return i;
+            }
+        }
+        throw error("Expected closing parenthesis");
+    }
+
+    // Consumes the keyword if it's next as an operator
+    private boolean keyword(String word) {
+        skipSpaces();
+        if(!isOperator(pos, word)) {
+            return false;
+        }
+        pos += word.length();
+        combined = true;
+        return true;
+    }
+
+    // Whether the keyword is at the index as a whole word, followed by an operand
+    private boolean isOperator(int at, String word) {
+        int end = at + word.length();
+        if(!spec.startsWith(word, at) || (end < spec.length() && isNameChar(spec.charAt(end)))) {
+            return false;
+        }
+        int operand = skipSpaces(end);
+        return operand < spec.length() && (spec.charAt(operand) == '(' || isNameChar(spec.charAt(operand)));
+    }
+
+    private void skipSpaces() {
+        pos = skipSpaces(pos);
+    }
+
+    private int skipSpaces(int from) {
+        while(from < spec.length() && spec.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c != ' ' && c != '(' && c != ')' && c != ',' && c != '"';
+    }
+
+    private static SpecParseException error(String message) {
+        return new SpecParseException(message);
+    }
+}
@@ -10,7 +10,21 @@ import static ca.lavers.jstatemachine.Actions.*;
 
 public class FilterParser {
 
+    // Throws SpecParseException if the spec is malformed
     public static Filtering parse(String spec) {
+        return FilterScanner.parse(spec);
+    }
+
+    // Also accepts filters combined with and, or and not, which parse to a compound Filtering; a
+    // single filter parses exactly as with parse()
+    public static Filtering parseExpression(String spec) {
+        return FilterExpressionParser.parse(spec);
+    }
+
+    // The original state machine parser, which gives the same results and error messages as parse()
+    // but throws StateMachineException. A handler can opt into it with
+    // specCaches(new SpecCache<>(FilterParser::parseWithStateMachine), ...)
+    public static Filtering parseWithStateMachine(String spec) {
         return filterMaker.process(tokenizer.process(TokenStream.of(spec))).next().orElse(null);
     }
 
@@ -0,0 +1,266 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.errors.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// A collection's filters, declared once by name, from which a Filtering (single or combined with
+// and/or/not) compiles to one Predicate for an in-memory scan:
+//
+//   new FilterRegistry<User>()
+//       .flag("isActive", User::isActive)
+//       .field("age", User::getAge, Integer::valueOf)       // age(30), or age(18, 30) for a range
+//       .filter("hasRole", f -> user -> user.hasRole(f.getStringArg(0)))
+//
+// Compiling folds constants (an empty range never matches, so an and containing one doesn't either),
+// drops repeated clauses, and orders each and/or so the clauses most likely to decide it cheaply run
+// first, going by each filter's cost() and how selective its kind usually is. Compiled predicates
+// are cached per Filtering, which is usually a shared instance from ListHandler's spec cache.
+public class FilterRegistry<T> {
+
+    // Past this many, further filters are compiled on every use rather than cached
+    public static final int MAX_COMPILED = 1024;
+
+    // Relative costs, and the expected share of items each kind of filter passes
+    private static final double FIELD_COST = 1;
+    private static final double CUSTOM_COST = 4;
+    private static final double EQUALS_SELECTIVITY = 0.1;
+    private static final double RANGE_SELECTIVITY = 0.3;
+    private static final double DEFAULT_SELECTIVITY = 0.5;
+
+    // Only changed while configuring the registry
+    private final Map<String, Declared<T>> filters = new HashMap<>();
+    private final ConcurrentHashMap<Filtering, Predicate<T>> compiled = new ConcurrentHashMap<>();
+
+    // A filter without arguments, e.g. filter=isActive
+    public FilterRegistry<T> flag(String name, Predicate<T> test) {
+        return declare(name, new Declared<>(FIELD_COST, filter -> {
+            if(filter.getArgCount() != 0) {
+                throw new BadRequestException("Filter " + name + " takes no arguments");
+            }
+            return new Node<>(test, FIELD_COST, DEFAULT_SELECTIVITY);
+        }));
+    }
+
+    public FilterRegistry<T> field(String name, Function<T, String> key) {
+        return field(name, key, arg -> arg);
+    }
+
+    // Matches items whose key equals the one argument, or is within the inclusive range of two;
+    // parseArg converts an argument (as a String) into a key, as for IndexedCollection.index()
+    public <K extends Comparable<? super K>> FilterRegistry<T> field(String name, Function<T, K> key,
+                                                                     Function<String, K> parseArg) {
+        return declare(name, new Declared<>(FIELD_COST, filter -> {
+            K from, to;
+            try {
+                switch(filter.getArgCount()) {
+                    case 1:
+                        from = to = parseArg.apply(String.valueOf(filter.getArgs().get(0)));
+                        break;
+                    case 2:
+                        from = parseArg.apply(String.valueOf(filter.getArgs().get(0)));
+                        to = parseArg.apply(String.valueOf(filter.getArgs().get(1)));
+                        break;
+                    default:
+                        throw new BadRequestException("Filter " + name + " takes a value or a range");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid argument for filter " + name);
+            }
+            if(from == null || to == null) {
+                throw new BadRequestException("Invalid argument for filter " + name);
+            }
+
+            if(filter.getArgCount() == 1) {
+                final K value = from;
+                return new Node<>(item -> {
+                    K k = key.apply(item);
+                    return k != null && k.compareTo(value) == 0;
+                }, FIELD_COST, EQUALS_SELECTIVITY);
+            }
+            if(from.compareTo(to) > 0) {
+                return Node.constant(false);
+            }
+            final K low = from, high = to;
+            return new Node<>(item -> {
+                K k = key.apply(item);
+                return k != null && k.compareTo(low) >= 0 && k.compareTo(high) <= 0;
+            }, FIELD_COST, RANGE_SELECTIVITY);
+        }));
+    }
+
+    // A filter whose predicate is built from the request's arguments, as for IndexedCollection.filter()
+    public FilterRegistry<T> filter(String name, Function<Filtering, Predicate<T>> predicateFactory) {
+        return declare(name, new Declared<>(CUSTOM_COST,
+                filter -> new Node<>(predicateFactory.apply(filter), CUSTOM_COST, DEFAULT_SELECTIVITY)));
+    }
+
+    // Relative cost of evaluating a declared filter, where a field comparison is 1 and a filter()
+    // is 4 by default; cheaper clauses are tried first
+    public FilterRegistry<T> cost(String name, double cost) {
+        Declared<T> declared = filters.get(name);
+        if(declared == null) {
+            throw new IllegalArgumentException("No filter named " + name);
+        }
+        filters.put(name, new Declared<>(cost, declared.compiler));
+        return this;
+    }
+
+    public boolean has(String name) {
+        return filters.containsKey(name);
+    }
+
+    // Throws BadRequestException for an unknown filter or invalid arguments
+    public Predicate<T> compile(Filtering filter) {
+        Predicate<T> predicate = compiled.get(filter);
+        if(predicate == null) {
+            Node<T> node = compileNode(filter);
+            predicate = node.constant != null ? constant(node.constant) : node.predicate;
+            if(compiled.size() < MAX_COMPILED) {
+                compiled.putIfAbsent(filter, predicate);
+            }
+        }
+        return predicate;
+    }
+
+    private FilterRegistry<T> declare(String name, Declared<T> declared) {
+        filters.put(name, declared);
+        return this;
+    }
+
+    private Node<T> compileNode(Filtering filter) {
+        if(!filter.isCompound()) {
+            Declared<T> declared = filters.get(filter.getFilterName());
+            if(declared == null) {
+                throw new BadRequestException("Unrecognized filter: " + filter.getFilterName());
+            }
+            Node<T> node = declared.compiler.apply(filter);
+            return node.constant != null ? node : new Node<>(node.predicate, declared.cost, node.selectivity);
+        }
+
+        if(Filtering.NOT.equals(filter.getFilterName())) {
+            Node<T> operand = compileNode(filter.getOperands().get(0));
+            if(operand.constant != null) {
+                return Node.constant(!operand.constant);
+            }
+            return new Node<>(operand.predicate.negate(), operand.cost, 1 - operand.selectivity);
+        }
+
+        boolean and = Filtering.AND.equals(filter.getFilterName());
+        List<Node<T>> operands = new ArrayList<>();
+        for (Filtering operand : new LinkedHashSet<>(filter.getOperands())) {
+            Node<T> node = compileNode(operand);
+            if(node.constant != null) {
+                // false decides an and, and true an or; the other is a no-op
+                if(node.constant != and) {
+                    return node;
+                }
+                continue;
+            }
+            operands.add(node);
+        }
+        if(operands.isEmpty()) {
+            return Node.constant(and);
+        }
+        if(operands.size() == 1) {
+            return operands.get(0);
+        }
+        return and ? allOf(operands) : anyOf(operands);
+    }
+
+    // Clauses that are cheap and likely to fail go first
+    private static <T> Node<T> allOf(List<Node<T>> operands) {
+        operands.sort(Comparator.comparingDouble(n -> n.cost / Math.max(1e-9, 1 - n.selectivity)));
+        double cost = 0, pass = 1;
+        for (Node<T> n : operands) {
+            cost += pass * n.cost;
+            pass *= n.selectivity;
+        }
+        Predicate<T>[] clauses = predicates(operands);
+        return new Node<>(item -> {
+            for (Predicate<T> clause : clauses) {
+                if(!clause.test(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }, cost, pass);
+    }
+
+    // Clauses that are cheap and likely to pass go first
+    private static <T> Node<T> anyOf(List<Node<T>> operands) {
+        operands.sort(Comparator.comparingDouble(n -> n.cost / Math.max(1e-9, n.selectivity)));
+        double cost = 0, fail = 1;
+        for (Node<T> n : operands) {
+            cost += fail * n.cost;
+            fail *= 1 - n.selectivity;
+        }
+        Predicate<T>[] clauses = predicates(operands);
+        return new Node<>(item -> {
+            for (Predicate<T> clause : clauses) {
+                if(clause.test(item)) {
+                    return true;
+                }
+            }
+            return false;
+        }, cost, 1 - fail);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Predicate<T>[] predicates(List<Node<T>> nodes) {
+        Predicate<T>[] predicates = new Predicate[nodes.size()];
+        for(int i = 0; i < predicates.length; i++) {
+            predicates[i] = nodes.get(i).predicate;
+        }
+        return predicates;
+    }
+
+    private static <T> Predicate<T> constant(boolean value) {
+        return value ? item -> true : item -> false;
+    }
+
+    private static final class Declared<T> {
+        final double cost;
+        final Function<Filtering, Node<T>> compiler;
+
+        Declared(double cost, Function<Filtering, Node<T>> compiler) {
+            this.cost = cost;
+            this.compiler = compiler;
+        }
+    }
+
+    // A compiled (sub)expression: either a predicate with its estimated cost and share of items
+    // passed, or a constant
+    private static final class Node<T> {
+        final Predicate<T> predicate;
+        final double cost;
+        final double selectivity;
+        final Boolean constant;
+
+        Node(Predicate<T> predicate, double cost, double selectivity) {
+            this.predicate = predicate;
+            this.cost = cost;
+            this.selectivity = selectivity;
+            this.constant = null;
+        }
+
+        private Node(boolean constant) {
+            this.predicate = null;
+            this.cost = 0;
+            this.selectivity = constant ? 1 : 0;
+            this.constant = constant;
+        }
+
+        static <T> Node<T> constant(boolean value) {
+            return new Node<>(value);
+        }
+    }
+}
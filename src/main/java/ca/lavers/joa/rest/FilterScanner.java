@@ -0,0 +1,240 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Single-pass, index-based equivalent of FilterParser's state machines. The states and error
+// messages mirror the tokenizer one-for-one, and each token is handed to the filter-building
+// stage as soon as it's complete, so errors surface in the same order as with the state machines.
+final class FilterScanner {
+
+    private static final int PRE_NAME = 0;
+    private static final int NAME = 1;
+    private static final int PRE_PARENTHESIS = 2;
+    private static final int PRE_ARG = 3;
+    private static final int STRING = 4;
+    private static final int ESCAPED = 5;
+    private static final int NUMERIC = 6;
+    private static final int PRE_COMMA = 7;
+    private static final int DONE = 8;
+
+    static Filtering parse(String spec) {
+        return new FilterScanner(spec).scan();
+    }
+
+    private final String spec;
+
+    // Only needed for string arguments, which may contain escapes
+    private StringBuilder buffer;
+
+    private String name;
+    private List<Object> args;
+
+    private FilterScanner(String spec) {
+        this.spec = spec;
+    }
+
+    private Filtering scan() {
+        final int len = spec.length();
+        int state = PRE_NAME;
+        int start = 0;      // start of the current name or numeric token
+        int nameEnd = 0;
+
+        for(int i = 0; i < len; i++) {
+            final char c = spec.charAt(i);
+            switch(state) {
+                case PRE_NAME:
+                    if(c == ' ') break;
+                    if(c == '(') throw error("Missing filter name before opening parenthesis");
+                    start = i;
+                    state = NAME;
+                    break;
+                case NAME:
+                    if(c == '(') {
+                        acceptName(spec.substring(start, i));
+                        state = PRE_ARG;
+                    }
+                    else if(c == ' ') {
+                        nameEnd = i;
+                        state = PRE_PARENTHESIS;
+                    }
+                    break;
+                case PRE_PARENTHESIS:
+                    if(c == ' ') break;
+                    // Note the tokenizer doesn't emit the name here, only at end of input
+                    if(c == '(') {
+                        state = PRE_ARG;
+                        break;
+                    }
+                    throw error("Expected opening parenthesis");
+                case PRE_ARG:
+                    if(c == ' ') break;
+                    if(c == ')') {
+                        state = DONE;
+                        break;
+                    }
+                    if(c == '"') {
+                        startString();
+                        state = STRING;
+                        break;
+                    }
+                    if(isDigit(c)) {
+                        start = i;
+                        state = NUMERIC;
+                        break;
+                    }
+                    throw error("Expected argument");
+                case STRING:
+                    if(c == '"') {
+                        acceptStringArg();
+                        state = PRE_COMMA;
+                    }
+                    else if(c == '\\') {
+                        state = ESCAPED;
+                    }
+                    else if(c == ',') {
+                        acceptStringArg();
+                        state = PRE_ARG;
+                    }
+                    else if(c == ')') {
+                        acceptStringArg();
+                        state = DONE;
+                    }
+                    else {
+                        buffer.append(c);
+                    }
+                    break;
+                case ESCAPED:
+                    buffer.append(c);
+                    state = STRING;
+                    break;
+                case NUMERIC:
+                    if(isDigit(c) || c == '-') break;
+                    if(c == ',') {
+                        acceptNumericArg(start, i);
+                        state = PRE_ARG;
+                        break;
+                    }
+                    if(c == ')') {
+                        acceptNumericArg(start, i);
+                        state = DONE;
+                        break;
+                    }
+                    throw error("Unexpected character");
+                case PRE_COMMA:
+                    if(c == ' ') break;
+                    if(c == ',') {
+                        state = PRE_ARG;
+                        break;
+                    }
+                    if(c == ')') {
+                        state = DONE;
+                        break;
+                    }
+                    throw error("Expected comma or closing parenthesis");
+                case DONE:
+                    if(c == ' ') break;
+                    throw error("Expected end of input");
+            }
+        }
+
+        switch(state) {
+            case PRE_NAME:
+            case PRE_ARG:
+            case STRING:
+            case NUMERIC:
+                throw error("Expected end of input");
+            case NAME:
+                acceptName(spec.substring(start));
+                break;
+            case PRE_PARENTHESIS:
+                acceptName(spec.substring(start, nameEnd));
+                break;
+            case ESCAPED:
+                throw error("Expected escaped character");
+            case PRE_COMMA:
+                throw error("Expected closing parenthesis");
+        }
+
+        if(name == null) {
+            throw error("Missing filter name");
+        }
+        return new Filtering(name, args);
+    }
+
+    private void acceptName(String value) {
+        if(name != null) {
+            throw error("Expected argument*");
+        }
+        name = value;
+    }
+
+    private void startString() {
+        if(buffer == null) {
+            buffer = new StringBuilder();
+        }
+        buffer.setLength(0);
+    }
+
+    private void acceptStringArg() {
+        addArg(buffer.toString());
+    }
+
+    private void acceptNumericArg(int start, int end) {
+        if(name == null) {
+            throw error("Missing filter name");
+        }
+        if(isDate(start, end)) {
+            addArg(spec.substring(start, end));
+            return;
+        }
+        // Must be a number
+        try {
+            addArg(Integer.parseInt(spec, start, end, 10));
+        } catch (NumberFormatException e) {
+            throw error("Error parsing numeric argument: " + spec.substring(start, end));
+        }
+    }
+
+    private void addArg(Object arg) {
+        if(name == null) {
+            throw error("Missing filter name");
+        }
+        if(args == null) {
+            args = new ArrayList<>();
+        }
+        args.add(arg);
+    }
+
+    // Equivalent to ^\d{4}-\d{1,2}-\d{1,2}$, given the token is already known to be digits and dashes
+    private boolean isDate(int start, int end) {
+        int firstDash = start + 4;
+        if(end - start < 8 || spec.charAt(firstDash) != '-') {
+            return false;
+        }
+        for(int i = start; i < firstDash; i++) {
+            if(!isDigit(spec.charAt(i))) return false;
+        }
+        int secondDash = -1;
+        for(int i = firstDash + 1; i < end; i++) {
+            if(spec.charAt(i) == '-') {
+                if(secondDash >= 0) return false;
+                secondDash = i;
+            }
+        }
+        if(secondDash < 0) {
+            return false;
+        }
+        int month = secondDash - firstDash - 1;
+        int day = end - secondDash - 1;
+        return month >= 1 && month <= 2 && day >= 1 && day <= 2;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static SpecParseException error(String message) {
+        return new SpecParseException(message);
+    }
+}
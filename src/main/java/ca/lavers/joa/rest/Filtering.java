@@ -1,15 +1,28 @@
 package ca.lavers.joa.rest;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
-public class Filtering {
+// Immutable, so parsed instances can be cached and shared between requests
+//
+// Filters combined with and/or/not (see FilterParser.parseExpression) form a tree of these: the
+// combinator is the name and the combined filters are the args, e.g. and(age(18, 30), isActive).
+// Collections that understand the tree say so with Listable.supportsFilterExpressions(), and can
+// either walk it (to push it down to a backend) or compile it with a FilterRegistry.
+public final class Filtering {
+
+    public static final String AND = "and";
+    public static final String OR = "or";
+    public static final String NOT = "not";
 
     private final String name;
     private final List<Object> args;
 
     public Filtering(String name, List<Object> args) {
         this.name = name;
-        this.args = args;
+        this.args = args == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(args));
     }
 
     public String getFilterName() {
@@ -37,4 +50,99 @@ public class Filtering {
         return Integer.parseInt((String) arg);
     }
 
+    // Whether this combines other filters, rather than being a filter of its own
+    public boolean isCompound() {
+        if(!AND.equals(name) && !OR.equals(name) && !NOT.equals(name)) {
+            return false;
+        }
+        for (Object arg : args) {
+            if(!(arg instanceof Filtering)) {
+                return false;
+            }
+        }
+        return !args.isEmpty();
+    }
+
+    // The combined filters, for a compound filter
+    public List<Filtering> getOperands() {
+        List<Filtering> operands = new ArrayList<>(args.size());
+        for (Object arg : args) {
+            operands.add((Filtering) arg);
+        }
+        return operands;
+    }
+
+    // Equal for specs that parse the same, e.g. "age(30)" and "age( 30)"
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof Filtering)) {
+            return false;
+        }
+        Filtering other = (Filtering) o;
+        return Objects.equals(name, other.name) && args.equals(other.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, args);
+    }
+
+    // In filter spec syntax, e.g. "age(18, 30) and not isActive"
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        append(s, false);
+        return s.toString();
+    }
+
+    private void append(StringBuilder s, boolean nested) {
+        if(isCompound()) {
+            if(NOT.equals(name)) {
+                s.append("not ");
+                ((Filtering) args.get(0)).append(s, true);
+                return;
+            }
+            if(nested) {
+                s.append('(');
+            }
+            for(int i = 0; i < args.size(); i++) {
+                if(i > 0) {
+                    s.append(' ').append(name).append(' ');
+                }
+                ((Filtering) args.get(i)).append(s, true);
+            }
+            if(nested) {
+                s.append(')');
+            }
+            return;
+        }
+
+        s.append(name);
+        if(args.isEmpty()) {
+            return;
+        }
+        s.append('(');
+        for(int i = 0; i < args.size(); i++) {
+            if(i > 0) {
+                s.append(", ");
+            }
+            Object arg = args.get(i);
+            if(arg instanceof String && !isDate((String) arg)) {
+                s.append('"').append(((String) arg).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            else {
+                s.append(arg);
+            }
+        }
+        s.append(')');
+    }
+
+    // Dates are written unquoted, and parsed back as strings
+    private static boolean isDate(String arg) {
+        return arg.matches("\\d{4}-\\d{1,2}-\\d{1,2}");
+    }
+
 }
@@ -0,0 +1,68 @@
+package ca.lavers.joa.rest;
+
+// Approximate access counts for cache admission (as in TinyLFU): a count-min sketch of 4-bit
+// counters, halved periodically so old popularity fades. Updates aren't synchronized; an
+// occasional lost increment doesn't matter for an estimate.
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb4ad2b3b, 0x6a09e667, 0xbb67ae85};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    FrequencySketch(int maxEntries) {
+        int width = Integer.highestOneBit(Math.max(16, maxEntries * 4) - 1) << 1;
+        this.counters = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * Math.max(1, maxEntries);
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for(int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            if(counters[i][index] < MAX_COUNT) {
+                counters[i][index]++;
+                added = true;
+            }
+        }
+        if(added && ++additions >= sampleSize) {
+            age();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for(int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, counters[i][index(hash, i)]);
+        }
+        return min;
+    }
+
+    private void age() {
+        additions = 0;
+        for (byte[] row : counters) {
+            for(int j = 0; j < row.length; j++) {
+                row[j] >>= 1;
+            }
+        }
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+}
@@ -6,28 +6,98 @@ import ca.lavers.joa.core.errors.InternalServerErrorException;
 import ca.lavers.joa.core.errors.NotFoundException;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
 
 public class GetHandler<T> extends BaseHandler<T> {
 
     private final Gettable<T> gettable;
+    private Function<T, Versioned> versioner;
+    private Function<Object, ? extends Map<String, ?>> properties;
+    private SingleFlight<T> flights;
 
     public GetHandler(Class<T> itemClass, Gettable<T> gettable) {
         super(itemClass);
         this.gettable = gettable;
     }
 
+    // For a non-blocking backend: the request waits for the future, and a future failed with one of
+    // joa-core's exceptions responds the same as if get() had thrown it
+    public static <T> GetHandler<T> async(Class<T> itemClass, AsyncGettable<T> gettable) {
+        return new GetHandler<>(itemClass, Async.gettable(gettable));
+    }
+
+    // Versions items that don't implement Versioned themselves
+    public GetHandler<T> versionedBy(Function<T, Versioned> versioner) {
+        this.versioner = versioner;
+        return this;
+    }
+
+    // What fields= picks from: the properties the server's serializer writes for an item, e.g.
+    // item -> mapper.convertValue(item, Map.class) with the server's ObjectMapper. Without it, an
+    // item's public getters and fields are used, which may not be what the serializer writes.
+    public GetHandler<T> serializedProperties(Function<Object, ? extends Map<String, ?>> properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    // Concurrent requests for the same item share one call to the Gettable; requests that have
+    // waited longer than the timeout for one already in flight call the Gettable themselves. Only
+    // suitable when items don't depend on who's asking.
+    public GetHandler<T> coalesce(Duration timeout) {
+        this.flights = new SingleFlight<>(timeout);
+        return this;
+    }
+
     @Override
     public void call(Context ctx, NextMiddleware next) {
         String id = getItemId(ctx);
-        T item = gettable.get(ctx, id);
+        Deadline.of(ctx).check();
+        Projection projection = Projection.fromRequest(ctx);
+
+        Versioned version = gettable.version(ctx, id);
+        if(version != null && notModified(ctx, version)) {
+            return;
+        }
+
+        T item = flights == null
+                ? gettable.get(ctx, id)
+                : flights.run(Arrays.asList(RestRouter.getParentIds(ctx), id, projection), () -> gettable.get(ctx, id));
 
         if(item == null) {
             throw new NotFoundException();
         }
+
+        Versioned itemVersion = versionOf(item);
+        if(itemVersion != null && notModified(ctx, itemVersion)) {
+            return;
+        }
+
+        Object body = projection == null ? item : Projector.projecting(projection, properties).apply(item);
+        ResponseCache.captureBody(ctx, body);
         try {
-            ctx.response().body(item);
+            ResponseGuard.write(ctx, () -> ctx.response().body(body));
         } catch (IOException e) {
             throw new InternalServerErrorException(e);
         }
     }
+
+    private Versioned versionOf(T item) {
+        if(item instanceof Versioned) {
+            return (Versioned) item;
+        }
+        return versioner != null ? versioner.apply(item) : null;
+    }
+
+    // A projection is a different representation of the item, so gets a tag of its own
+    private static boolean notModified(Context ctx, Versioned version) {
+        String v = version.getVersion();
+        Projection projection = Projection.of(ctx);
+        if(v != null && projection != null) {
+            v = v + ";fields=" + projection;
+        }
+        return Conditional.notModified(ctx, v == null ? null : Conditional.strongTag(v), version.getLastModified());
+    }
 }
@@ -4,4 +4,10 @@ import ca.lavers.joa.core.Context;
 
 public interface Gettable<T> {
     T get(Context ctx, String id);
+
+    // The item's version, if it can be found more cheaply than the item itself; a conditional
+    // request for an unchanged item is then answered without calling get()
+    default Versioned version(Context ctx, String id) {
+        return null;
+    }
 }
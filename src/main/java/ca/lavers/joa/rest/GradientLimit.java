@@ -0,0 +1,94 @@
+package ca.lavers.joa.rest;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Concurrency limit adjusted from latency samples, after the gradient algorithm in Netflix's
+// concurrency-limits: each sample's ratio of baseline latency to recent latency scales the limit
+// down when requests start queueing, and a headroom of sqrt(limit) lets it grow while they don't.
+//
+// Samples that arrive while another thread is updating are dropped rather than waited on; the
+// limit only needs a steady trickle of them.
+final class GradientLimit {
+
+    // Recent latency may be this much above the baseline before the limit comes down
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+    // Weights of a new sample in the recent and baseline latency averages
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 1.0 / 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double estimate;
+    private double shortRtt;
+    private double longRtt;
+    private volatile int limit;
+
+    GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimate = clamp(initialLimit);
+        this.limit = (int) estimate;
+    }
+
+    int get() {
+        return limit;
+    }
+
+    // Adjusts the limit for a request's latency, returning the ratio of baseline to recent latency
+    // it was based on (or NaN if the sample was dropped). inFlight is how many requests were running
+    // when the sampled one started.
+    double sample(long rttNanos, int inFlight) {
+        if(!lock.tryLock()) {
+            return Double.NaN;
+        }
+        try {
+            if(longRtt == 0) {
+                shortRtt = longRtt = Math.max(1, rttNanos);
+            }
+            else {
+                shortRtt += (rttNanos - shortRtt) * SHORT_WEIGHT;
+                longRtt += (rttNanos - longRtt) * LONG_WEIGHT;
+                // A long overload drags the baseline up with it; let it come back down afterwards
+                if(longRtt > shortRtt * 2) {
+                    longRtt *= 0.95;
+                }
+            }
+            double ratio = longRtt / shortRtt;
+            adjust(ratio, inFlight);
+            return ratio;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adjusts the limit for a ratio measured elsewhere, e.g. by a per-route limit
+    void update(double ratio, int inFlight) {
+        if(!lock.tryLock()) {
+            return;
+        }
+        try {
+            adjust(ratio, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(double ratio, int inFlight) {
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * ratio));
+        // With little traffic, fast responses say nothing about whether the limit could be higher
+        if(gradient >= 1.0 && inFlight < estimate / 2) {
+            return;
+        }
+        double target = estimate * gradient + Math.sqrt(estimate);
+        estimate = clamp(estimate * (1 - SMOOTHING) + target * SMOOTHING);
+        limit = (int) estimate;
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
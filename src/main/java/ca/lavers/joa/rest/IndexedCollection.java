@@ -0,0 +1,519 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.BadRequestException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Ready-made in-memory collection implementing all five handler interfaces. Items live in a
+// concurrent primary map by ID, with declared secondary indexes kept in concurrent skip lists.
+//
+// A list request sorted by a single indexed field is answered by walking that index, and a filter
+// named after an indexed field selects a range of it: one argument for equality, or two for an
+// inclusive range, e.g. filter=age(18, 30). Other filters can be registered as predicates. Filters
+// combined with and/or/not are compiled by a FilterRegistry into a single predicate; when the top
+// level is an and with an indexed field among its operands (e.g. age(18, 30) and isActive), only
+// that field's range is scanned, otherwise the whole collection is. Sorting on other (or several)
+// fields falls back to PageSelector. Cursors are supported when
+// the index is walked, and resume the walk just after the last item returned.
+//
+// Writes are serialized per ID through the primary map rather than by a global lock. Index entries
+// only hold the key and ID; readers check each entry against the item currently in the primary
+// map, so while an update is in flight an item is seen exactly once, in either its old or new form.
+//
+// The collection's version (for conditional list requests) counts completed writes, prefixed with a
+// random ID so versions from before a restart never match.
+public class IndexedCollection<T> implements Listable<T>, Gettable<T>, BatchGettable<T>, Creatable<T>, Updatable<T>,
+        Deletable<T>, BatchCreatable<T>, BatchUpdatable<T>, BatchDeletable<T> {
+
+    public static final String ID_INDEX = "id";
+
+    private final Function<T, String> idOf;
+    private final BiFunction<T, String, T> withId;
+    private Supplier<String> idGenerator = () -> UUID.randomUUID().toString();
+
+    private final ConcurrentHashMap<String, T> items = new ConcurrentHashMap<>();
+
+    private final String instanceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicLong writes = new AtomicLong();
+    private volatile Instant lastModified = Instant.now();
+
+    // Only changed while configuring the collection
+    private final Map<String, Index<T>> indexes = new HashMap<>();
+    private final Map<String, Function<Filtering, Predicate<T>>> filters = new HashMap<>();
+    private final FilterRegistry<T> filterRegistry = new FilterRegistry<>();
+    private final SortKeys<T> sortKeys = new SortKeys<>();
+    private final Index<T> idIndex;
+
+    // idOf reads an item's ID (null if it hasn't been assigned one); withId returns the item
+    // with the given ID assigned, either by setting it or by returning a copy
+    public IndexedCollection(Function<T, String> idOf, BiFunction<T, String, T> withId) {
+        this.idOf = idOf;
+        this.withId = withId;
+        index(ID_INDEX, idOf);
+        this.idIndex = indexes.get(ID_INDEX);
+    }
+
+    public IndexedCollection<T> idGenerator(Supplier<String> idGenerator) {
+        this.idGenerator = idGenerator;
+        return this;
+    }
+
+    public IndexedCollection<T> index(String field, Function<T, String> key) {
+        return index(field, key, arg -> arg);
+    }
+
+    // parseArg converts a filter argument (as a String) into a key
+    public <K extends Comparable<? super K>> IndexedCollection<T> index(String field, Function<T, K> key,
+                                                                         Function<String, K> parseArg) {
+        Index<T> index = new Index<>(key, parseArg);
+        for (Map.Entry<String, T> e : items.entrySet()) {
+            index.entries.add(new Entry(index.keyOf(e.getValue()), e.getKey()));
+        }
+        indexes.put(field, index);
+        sortKeys.key(field, key);
+        filterRegistry.field(field, key, parseArg);
+        return this;
+    }
+
+    // A sortable field without an index; sorting on it scans the collection
+    public <U extends Comparable<? super U>> IndexedCollection<T> sortKey(String field, Function<T, U> key) {
+        sortKeys.key(field, key);
+        return this;
+    }
+
+    // A filter evaluated by scanning; the factory builds a predicate from the request's arguments
+    public IndexedCollection<T> filter(String name, Function<Filtering, Predicate<T>> predicateFactory) {
+        filters.put(name, predicateFactory);
+        filterRegistry.filter(name, predicateFactory);
+        return this;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public boolean supportsPaging() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsFiltering() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsSorting() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsCursors() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsFilterExpressions() {
+        return true;
+    }
+
+    // Read before listing, and bumped after each write completes, so a page is never tagged with a
+    // version newer than its contents
+    @Override
+    public Versioned version(Context ctx) {
+        return Versioned.of(instanceId + "." + writes.get(), lastModified);
+    }
+
+    private void modified() {
+        lastModified = Instant.now();
+        writes.incrementAndGet();
+    }
+
+    @Override
+    public T get(Context ctx, String id) {
+        return items.get(id);
+    }
+
+    @Override
+    public Map<String, T> getAll(Context ctx, Collection<String> ids) {
+        Map<String, T> found = new HashMap<>();
+        for (String id : ids) {
+            T item = items.get(id);
+            if(item != null) {
+                found.put(id, item);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public T create(Context ctx, T item) {
+        String id = idOf.apply(item);
+        if(id == null) {
+            id = idGenerator.get();
+        }
+        final T created = withId.apply(item, id);
+        final boolean[] existed = {false};
+        items.compute(id, (i, previous) -> {
+            if(previous != null) {
+                existed[0] = true;
+                return previous;
+            }
+            addEntries(i, created);
+            return created;
+        });
+        if(existed[0]) {
+            throw new BadRequestException("An item with ID " + id + " already exists");
+        }
+        modified();
+        return created;
+    }
+
+    @Override
+    public T update(Context ctx, String id, T item) {
+        final T updated = withId.apply(item, id);
+        final List<T> replaced = new ArrayList<>(1);
+        items.computeIfPresent(id, (i, previous) -> {
+            replaced.add(previous);
+            addEntries(i, updated);
+            return updated;
+        });
+        if(replaced.isEmpty()) {
+            return null;
+        }
+        removeStaleEntries(id, replaced.get(0));
+        modified();
+        return updated;
+    }
+
+    @Override
+    public boolean delete(Context ctx, String id) {
+        T removed = items.remove(id);
+        if(removed == null) {
+            return false;
+        }
+        removeStaleEntries(id, removed);
+        modified();
+        return true;
+    }
+
+    // Batch writes aren't atomic: each item is written as it would be on its own
+
+    @Override
+    public List<T> createAll(Context ctx, List<T> items) {
+        List<T> created = new ArrayList<>(items.size());
+        for (T item : items) {
+            try {
+                created.add(create(ctx, item));
+            } catch (BadRequestException e) {
+                created.add(null);
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public Map<String, T> updateAll(Context ctx, Map<String, T> items) {
+        Map<String, T> updated = new HashMap<>();
+        items.forEach((id, item) -> {
+            T result = update(ctx, id, item);
+            if(result != null) {
+                updated.put(id, result);
+            }
+        });
+        return updated;
+    }
+
+    @Override
+    public Set<String> deleteAll(Context ctx, Collection<String> ids) {
+        Set<String> deleted = new HashSet<>();
+        for (String id : ids) {
+            if(delete(ctx, id)) {
+                deleted.add(id);
+            }
+        }
+        return deleted;
+    }
+
+    private void addEntries(String id, T item) {
+        for (Index<T> index : indexes.values()) {
+            index.entries.add(new Entry(index.keyOf(item), id));
+        }
+    }
+
+    // Drops the index entries for a replaced or deleted version, unless the item now stored under
+    // the ID still has that key. Done under the ID's lock so it can't race a later write to it.
+    private void removeStaleEntries(String id, T old) {
+        items.compute(id, (i, current) -> {
+            for (Index<T> index : indexes.values()) {
+                Comparable<?> oldKey = index.keyOf(old);
+                if(current == null || compareKeys(oldKey, index.keyOf(current)) != 0) {
+                    index.entries.remove(new Entry(oldKey, i));
+                }
+            }
+            return current;
+        });
+    }
+
+    @Override
+    public ListResult<T> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+        Index<T> filterIndex = null;
+        NavigableSet<Entry> filterRange = null;
+        Predicate<T> predicate = null;
+        // What items in filterRange must still pass
+        Predicate<T> residual = null;
+
+        if(filter != null && filter.isCompound()) {
+            predicate = filterRegistry.compile(filter);
+            Filtering indexed = indexedOperand(filter);
+            if(indexed != null) {
+                filterIndex = indexes.get(indexed.getFilterName());
+                filterRange = filterIndex.range(indexed);
+                residual = predicate;
+            }
+        }
+        else if(filter != null) {
+            filterIndex = indexes.get(filter.getFilterName());
+            if(filterIndex != null) {
+                filterRange = filterIndex.range(filter);
+                final Index<T> index = filterIndex;
+                final NavigableSet<Entry> range = filterRange;
+                predicate = item -> range.contains(new Entry(index.keyOf(item), idOf.apply(item)));
+            }
+            else {
+                Function<Filtering, Predicate<T>> factory = filters.get(filter.getFilterName());
+                if(factory == null) {
+                    throw new BadRequestException("Unrecognized filter: " + filter.getFilterName());
+                }
+                predicate = factory.apply(filter);
+            }
+        }
+
+        Index<T> sortIndex = null;
+        boolean descending = false;
+        if(sort == null || sort.getSortFields().isEmpty()) {
+            sortIndex = filterIndex != null ? filterIndex : idIndex;
+        }
+        else if(sort.getSortFields().size() == 1) {
+            SortField field = sort.getSortFields().get(0);
+            sortIndex = indexes.get(field.getField());
+            descending = field.getDirection() == SortDirection.DESCENDING;
+        }
+
+        Cursor cursor = page == null ? null : page.getCursor();
+        if(sortIndex != null) {
+            NavigableSet<Entry> walk = sortIndex == filterIndex ? filterRange : sortIndex.entries;
+            if(cursor != null) {
+                Entry after = sortIndex.entryAt(cursor);
+                walk = descending ? walk.headSet(after, false) : walk.tailSet(after, false);
+            }
+            return walk(descending ? walk.descendingSet() : walk, sortIndex,
+                    sortIndex == filterIndex ? residual : predicate, filter != null, page);
+        }
+        if(cursor != null) {
+            throw new BadRequestException("Cursors require sorting on a single indexed field");
+        }
+
+        // Sorting on fields that aren't indexed (or on several); select the page from the candidates
+        Iterable<T> candidates = filterIndex != null ? current(filterIndex, filterRange) : items.values();
+        return PageSelector.select(candidates, filterIndex != null ? residual : predicate, page, sort.toComparator(sortKeys));
+    }
+
+    // The first operand of a top-level and (or of an and nested directly in it) that selects a range
+    // of an index, or null
+    private Filtering indexedOperand(Filtering filter) {
+        if(!Filtering.AND.equals(filter.getFilterName()) || !filter.isCompound()) {
+            return null;
+        }
+        for (Filtering operand : filter.getOperands()) {
+            if(operand.isCompound()) {
+                Filtering nested = indexedOperand(operand);
+                if(nested != null) {
+                    return nested;
+                }
+            }
+            else if(indexes.containsKey(operand.getFilterName())
+                    && (operand.getArgCount() == 1 || operand.getArgCount() == 2)) {
+                return operand;
+            }
+        }
+        return null;
+    }
+
+    // Walks the index in order, collecting the requested page. The total comes from the primary
+    // map when unfiltered; otherwise the rest of the walk is needed to count matches, which is
+    // skipped after a cursor (the count would only be of the items remaining).
+    private ListResult<T> walk(NavigableSet<Entry> entries, Index<T> index, Predicate<T> predicate,
+                               boolean filtered, Paging page) {
+        long offset = page == null ? 0 : (long) page.getPage() * page.getPageSize();
+        long end = page == null ? Long.MAX_VALUE : offset + page.getPageSize();
+        boolean afterCursor = page != null && page.getCursor() != null;
+        boolean countAll = filtered && !afterCursor;
+
+        List<T> results = new ArrayList<>();
+        int matched = 0;
+        T last = null;
+        boolean more = false;
+        for (Entry entry : entries) {
+            T item = index.current(items, entry);
+            if(item == null || (predicate != null && !predicate.test(item))) {
+                continue;
+            }
+            if(matched >= end) {
+                more = true;
+                if(!countAll) {
+                    break;
+                }
+            }
+            else if(matched >= offset) {
+                results.add(item);
+                last = item;
+            }
+            matched++;
+        }
+
+        Integer total = null;
+        if(!filtered) {
+            total = items.size();
+        }
+        else if(!afterCursor) {
+            total = matched;
+        }
+        Cursor next = more && last != null ? index.cursorAt(last, idOf.apply(last)) : null;
+        return new ListResult<>(results.stream(), total, next);
+    }
+
+    private Iterable<T> current(Index<T> index, NavigableSet<Entry> entries) {
+        return () -> entries.stream().map(e -> index.current(items, e)).filter(Objects::nonNull).iterator();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Comparable a, Comparable b) {
+        if(a == null) {
+            return b == null ? 0 : -1;
+        }
+        if(b == null) {
+            return 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static final class Index<T> {
+        final Function<T, ? extends Comparable<?>> key;
+        final Function<String, ? extends Comparable<?>> parseArg;
+        final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(Entry.ORDER);
+
+        Index(Function<T, ? extends Comparable<?>> key, Function<String, ? extends Comparable<?>> parseArg) {
+            this.key = key;
+            this.parseArg = parseArg;
+        }
+
+        Comparable<?> keyOf(T item) {
+            return key.apply(item);
+        }
+
+        // The item an entry refers to, if it's still stored with the entry's key
+        T current(Map<String, T> items, Entry entry) {
+            T item = items.get(entry.id);
+            if(item == null || compareKeys(keyOf(item), entry.key) != 0) {
+                return null;
+            }
+            return item;
+        }
+
+        // Cursor keys are stored as strings and converted back with parseArg, like filter arguments
+        Cursor cursorAt(T item, String id) {
+            Comparable<?> key = keyOf(item);
+            return new Cursor(Collections.singletonList(key == null ? null : key.toString()), id);
+        }
+
+        Entry entryAt(Cursor cursor) {
+            if(cursor.getValueCount() != 1 || cursor.getId() == null) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            Object value = cursor.getValue(0);
+            try {
+                return new Entry(value == null ? null : parseArg.apply(value.toString()), cursor.getId());
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+
+        NavigableSet<Entry> range(Filtering filter) {
+            Comparable<?> from, to;
+            try {
+                switch(filter.getArgCount()) {
+                    case 1:
+                        from = to = parseArg.apply(String.valueOf(filter.getArgs().get(0)));
+                        break;
+                    case 2:
+                        from = parseArg.apply(String.valueOf(filter.getArgs().get(0)));
+                        to = parseArg.apply(String.valueOf(filter.getArgs().get(1)));
+                        break;
+                    default:
+                        throw new BadRequestException("Filter " + filter.getFilterName() + " takes a value or a range");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid argument for filter " + filter.getFilterName());
+            }
+            if(compareKeys(from, to) > 0) {
+                return new ConcurrentSkipListSet<>(Entry.ORDER);
+            }
+            return entries.subSet(new Entry(from, Entry.LOWEST), true, new Entry(to, Entry.HIGHEST), true);
+        }
+    }
+
+    private static final class Entry {
+        static final int LOWEST = -1;
+        static final int HIGHEST = 1;
+
+        static final Comparator<Entry> ORDER = (a, b) -> {
+            int result = compareKeys(a.key, b.key);
+            if(result != 0) {
+                return result;
+            }
+            if(a.bound != b.bound) {
+                return Integer.compare(a.bound, b.bound);
+            }
+            return a.id == null ? 0 : a.id.compareTo(b.id);
+        };
+
+        final Comparable<?> key;
+        final String id;
+        // Non-zero for the bounds of a range query, which sort before/after every ID with the same key
+        final int bound;
+
+        Entry(Comparable<?> key, String id) {
+            this.key = key;
+            this.id = id;
+            this.bound = 0;
+        }
+
+        Entry(Comparable<?> key, int bound) {
+            this.key = key;
+            this.id = null;
+            this.bound = bound;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ca.lavers.joa.rest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// RequestMetrics kept in memory: a LatencyHistogram per route and per phase of each route, with
+// counts of items listed and of errors by exception type. Snapshots are keyed by route, e.g.
+// "list /posts", sorted for display.
+public class LatencyRecorder implements RequestMetrics {
+
+    private final ConcurrentHashMap<String, RouteRecord> routes = new ConcurrentHashMap<>();
+
+    @Override
+    public void request(String route, long nanos, Throwable error) {
+        RouteRecord record = record(route);
+        record.latency.record(nanos);
+        if(error != null) {
+            record.errors.computeIfAbsent(error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public void phase(String route, String phase, long nanos) {
+        record(route).phases.computeIfAbsent(phase, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void items(String route, int count) {
+        record(route).items.add(count);
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        routes.forEach((route, record) -> snapshots.put(route, record.latency.snapshot()));
+        return snapshots;
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getPhases(String route) {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        RouteRecord record = routes.get(route);
+        if(record != null) {
+            record.phases.forEach((phase, histogram) -> snapshots.put(phase, histogram.snapshot()));
+        }
+        return snapshots;
+    }
+
+    // Counts by exception class name, e.g. "BadRequestException"
+    public Map<String, Long> getErrors(String route) {
+        Map<String, Long> counts = new TreeMap<>();
+        RouteRecord record = routes.get(route);
+        if(record != null) {
+            record.errors.forEach((type, count) -> counts.put(type, count.sum()));
+        }
+        return counts;
+    }
+
+    public long getItems(String route) {
+        RouteRecord record = routes.get(route);
+        return record == null ? 0 : record.items.sum();
+    }
+
+    private RouteRecord record(String route) {
+        RouteRecord record = routes.get(route);
+        if(record == null) {
+            record = routes.computeIfAbsent(route, k -> new RouteRecord());
+        }
+        return record;
+    }
+
+    private static final class RouteRecord {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final ConcurrentHashMap<String, LatencyHistogram> phases = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final LongAdder items = new LongAdder();
+    }
+}
@@ -8,14 +8,41 @@ import ca.lavers.joa.core.errors.InternalServerErrorException;
 import ca.lavers.jstatemachine.StateMachineException;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ListHandler<T> implements Middleware {
 
     public static final int DEFAULT_PAGE_SIZE = 10;
+
+    // Shared by all ListHandlers unless overridden with specCaches()
+    public static final SpecCache<Filtering> FILTER_CACHE = new SpecCache<>(FilterParser::parseExpression);
+    public static final SpecCache<Sorting> SORT_CACHE = new SpecCache<>(SortParser::parse);
+    // Used by GetHandler too
+    public static final SpecCache<Projection> FIELDS_CACHE = new SpecCache<>(Projection::parse);
+
     private int pageSize = DEFAULT_PAGE_SIZE;
+    private boolean streaming = false;
+    private SpecCache<Filtering> filterCache = FILTER_CACHE;
+    private SpecCache<Sorting> sortCache = SORT_CACHE;
+    private CursorCodec cursorCodec = CursorCodec.withRandomKey();
+    private CountMode defaultCount = CountMode.EXACT;
+    private CountCache countCache = null;
+    private SingleFlight<SharedPage<T>> flights = null;
+    private QueryStats queryStats = null;
+    private Function<Object, ? extends Map<String, ?>> properties = null;
 
     private final Listable<T> listable;
 
@@ -23,31 +50,79 @@ public class ListHandler<T> implements Middleware {
         this.listable = listable;
     }
 
+    // For a non-blocking backend; see GetHandler.async()
+    public static <T> ListHandler<T> async(AsyncListable<T> listable) {
+        return new ListHandler<>(Async.listable(listable));
+    }
+
     public ListHandler<T> defaultPageSize(int size) {
         this.pageSize = size;
         return this;
     }
 
-    @Override
-    public void call(Context ctx, NextMiddleware next) {
+    // Use the given parse caches for filter and sortBy specs instead of the shared ones;
+    // pass null to parse every request's spec afresh
+    public ListHandler<T> specCaches(SpecCache<Filtering> filterCache, SpecCache<Sorting> sortCache) {
+        this.filterCache = filterCache;
+        this.sortCache = sortCache;
+        return this;
+    }
 
-        Paging requestedPaging = getRequestedPaging(ctx);
-        Paging paging;
+    // What fields= picks from; see GetHandler.serializedProperties()
+    public ListHandler<T> serializedProperties(Function<Object, ? extends Map<String, ?>> properties) {
+        this.properties = properties;
+        return this;
+    }
 
-        if(requestedPaging != null) {
-            if(!listable.supportsPaging()) {
-                throw new BadRequestException("This collection does not support paging");
-            }
-            paging = requestedPaging;
-        }
-        else {
-            paging = new Paging(0, pageSize);   // TODO -- set to null if paging not supported, to be consistent with sorting and filtering
-        }
+    // Key for signing cursors, which must be shared by every instance serving the collection
+    // for cursors to work across them. Without one, a random key is generated per ListHandler.
+    public ListHandler<T> cursorKey(byte[] key) {
+        this.cursorCodec = new CursorCodec(key);
+        return this;
+    }
+
+    // Count mode used when the request doesn't include ?count=
+    public ListHandler<T> defaultCount(CountMode mode) {
+        this.defaultCount = mode;
+        return this;
+    }
+
+    // Reuse totals computed by ListResult.countedBy() for a while, rather than recounting on every request
+    public ListHandler<T> countCache(CountCache cache) {
+        this.countCache = cache;
+        return this;
+    }
+
+    // Concurrent identical requests share one call to the Listable; requests that have waited longer
+    // than the timeout for one already in flight call the Listable themselves. Only suitable when
+    // results don't depend on who's asking. Doesn't apply to streaming responses.
+    public ListHandler<T> coalesce(Duration timeout) {
+        this.flights = new SingleFlight<>(timeout);
+        return this;
+    }
+
+    // Record each successful query's fingerprint, latency and item count, to find which filter and
+    // sort combinations are worth indexing
+    public ListHandler<T> queryStats(QueryStats stats) {
+        this.queryStats = stats;
+        return this;
+    }
+
+    // Serialize items straight from the ListResult stream instead of collecting them first
+    public ListHandler<T> streaming() {
+        this.streaming = true;
+        return this;
+    }
+
+    @Override
+    public void call(Context ctx, NextMiddleware next) {
+        PhaseTimer timer = PhaseTimer.of(ctx);
+        long start = queryStats != null ? System.nanoTime() : 0;
 
         Sorting sorting = null;
         try {
             sorting = getRequestedSorting(ctx);
-        } catch (StateMachineException e) {
+        } catch (StateMachineException | SpecParseException e) {
             throw new BadRequestException("Error parsing sorting request: " + e.getMessage());
         }
         if(sorting != null && !listable.supportsSorting()) {
@@ -57,32 +132,305 @@ public class ListHandler<T> implements Middleware {
         Filtering filtering = null;
         try {
             filtering = getRequestedFiltering(ctx);
-        } catch (StateMachineException e) {
+        } catch (StateMachineException | SpecParseException e) {
             throw new BadRequestException("Error parsing filter: " + e.getMessage());
         }
         if(filtering != null && !listable.supportsFiltering()) {
             throw new BadRequestException("This collection does not support filtering");
         }
+        if(filtering != null && filtering.isCompound() && !listable.supportsFilterExpressions()) {
+            throw new BadRequestException("This collection does not support combining filters");
+        }
+
+        Projection.fromRequest(ctx);
+
+        Paging requestedPaging = getRequestedPaging(ctx, sorting, filtering);
+        Paging paging;
+
+        if(requestedPaging != null) {
+            if(!listable.supportsPaging()) {
+                throw new BadRequestException("This collection does not support paging");
+            }
+            paging = requestedPaging;
+        }
+        else {
+            paging = new Paging(0, pageSize);   // TODO -- set to null if paging not supported, to be consistent with sorting and filtering
+        }
+
+        CountMode countMode = getRequestedCountMode(ctx);
+        timer.mark(RequestMetrics.PARSE);
+
+        // A streamed response is recorded once its stream has been read, when the count is known
+        QueryFingerprint fingerprint = queryStats != null ? QueryFingerprint.of(filtering, sorting, paging) : null;
+        IntConsumer streamed = fingerprint != null ? n -> queryStats.record(fingerprint, System.nanoTime() - start, n) : null;
+
+        int items = respondList(ctx, timer, paging, filtering, sorting, countMode, streamed);
+        if(fingerprint != null && items >= 0) {
+            queryStats.record(fingerprint, System.nanoTime() - start, items);
+        }
+    }
+
+    // Returns the number of items in the response, 0 if it was not modified, or -1 if it's streamed
+    // (streamed, if not null, then gets the count)
+    private int respondList(Context ctx, PhaseTimer timer, Paging paging, Filtering filtering, Sorting sorting,
+                            CountMode countMode, IntConsumer streamed) {
+        Deadline.of(ctx).check();
+        Versioned version = listable.version(ctx);
+        if(version != null && notModified(ctx, version)) {
+            return 0;
+        }
+
+        if(flights != null && !streaming) {
+            return respondCoalesced(ctx, timer, paging, filtering, sorting, countMode);
+        }
 
         ListResult<T> result = listable.list(ctx, paging, filtering, sorting);
+        timer.mark(RequestMetrics.LIST);
+
+        if(isVersioned(result) && notModified(ctx, result)) {
+            result.getItems().close();
+            return 0;
+        }
+
+        if(streaming) {
+            respondStreaming(ctx, timer, paging, result, nextCursor(result, sorting, filtering),
+                    () -> resolveTotal(ctx, countMode, filtering, result), streamed);
+            // Includes draining the stream, which happens as it's written
+            timer.mark(RequestMetrics.SERIALIZE);
+            return -1;
+        }
+
+        CollectionPage<T> page = toPage(ctx, paging, filtering, sorting, countMode, result);
+        timer.mark(RequestMetrics.DRAIN);
+        timer.items(page.getItems().size());
+        respond(ctx, page);
+        timer.mark(RequestMetrics.SERIALIZE);
+        return page.getItems().size();
+    }
+
+    // Concurrent requests for the same page share one call to the Listable, and the page built
+    // from its result
+    private int respondCoalesced(Context ctx, PhaseTimer timer, Paging paging, Filtering filtering, Sorting sorting,
+                                  CountMode countMode) {
+        final Map<String, String> params = new TreeMap<>(ctx.request().queryParams());
+        final String cursor = params.remove("cursor");
+        params.keySet().removeAll(List.of("filter", "sortBy", "page", "pageSize", "count", "fields"));
+        // The projection is part of the key as the Listable may have fetched only those fields
+        Object key = Arrays.asList(RestRouter.getParentIds(ctx), paging.getPage(), paging.getPageSize(), cursor,
+                filtering, sorting, countMode, Projection.of(ctx), params);
+
+        SharedPage<T> shared = flights.run(key, () -> {
+            ListResult<T> result = listable.list(ctx, paging, filtering, sorting);
+            Versioned version = isVersioned(result) ? Versioned.of(result.getVersion(), result.getLastModified()) : null;
+            return new SharedPage<>(toPage(ctx, paging, filtering, sorting, countMode, result), version);
+        });
 
-        List<T> items = result.getItems().collect(Collectors.toList());
+        // Listing and draining happen together, possibly in another request
+        timer.mark(RequestMetrics.LIST);
+
+        if(shared.version != null && notModified(ctx, shared.version)) {
+            return 0;
+        }
+        timer.items(shared.page.getItems().size());
+        respond(ctx, shared.page);
+        timer.mark(RequestMetrics.SERIALIZE);
+        return shared.page.getItems().size();
+    }
+
+    private CollectionPage<T> toPage(Context ctx, Paging paging, Filtering filtering, Sorting sorting,
+                                     CountMode countMode, ListResult<T> result) {
+        String nextCursor = nextCursor(result, sorting, filtering);
+
+        List<T> items = drain(ctx, result.getItems());
         result.getItems().close();
 
         // TODO - warn if collection returns more than pageSize items, or if totalItems makes no sense
 
-        CollectionPage<T> response = listable.supportsPaging()
-                ? new CollectionPage<T>(paging.getPage(), paging.getPageSize(), items, result.getTotalItems())
-                : new CollectionPage<>(items);
+        if(listable.supportsPaging()) {
+            TotalCount total = resolveTotal(ctx, countMode, filtering, result);
+            return new CollectionPage<T>(pageNumber(paging), paging.getPageSize(), items,
+                    total.value, total.estimatedFlag(), nextCursor);
+        }
+        return new CollectionPage<>(items);
+    }
+
+    // Stops reading (and closes the stream) once the request's deadline has passed
+    private static <T> List<T> drain(Context ctx, Stream<T> stream) {
+        Deadline deadline = Deadline.of(ctx);
+        if(deadline == Deadline.NONE) {
+            return stream.collect(Collectors.toList());
+        }
+        List<T> items = new ArrayList<>();
+        Iterator<T> iterator = stream.iterator();
+        while(iterator.hasNext()) {
+            if(items.size() % Deadline.CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                stream.close();
+                throw new DeadlineExceededException();
+            }
+            items.add(iterator.next());
+        }
+        return items;
+    }
+
+    private void respond(Context ctx, CollectionPage<?> page) {
+        Projection projection = Projection.of(ctx);
+        Object response = page;
+        if(projection != null) {
+            Function<Object, Object> projector = Projector.projecting(projection, properties);
+            List<Object> items = new ArrayList<>(page.getItems().size());
+            for (Object item : page.getItems()) {
+                items.add(projector.apply(item));
+            }
+            response = page.withItems(items);
+        }
 
+        ResponseCache.captureBody(ctx, response);
+        Object body = response;
         try {
-            ctx.response().body(response);
+            ResponseGuard.write(ctx, () -> ctx.response().body(body));
         } catch (IOException e) {
             throw new InternalServerErrorException(e);
         }
     }
 
-    private Paging getRequestedPaging(Context ctx) {
+    private String nextCursor(ListResult<T> result, Sorting sorting, Filtering filtering) {
+        if(result.getNextCursor() != null && listable.supportsCursors()) {
+            return cursorCodec.encode(result.getNextCursor(), cursorContext(sorting, filtering));
+        }
+        return null;
+    }
+
+    private static boolean isVersioned(ListResult<?> result) {
+        return result.getVersion() != null || result.getLastModified() != null;
+    }
+
+    private void respondStreaming(Context ctx, PhaseTimer timer, Paging paging, ListResult<T> result,
+                                  String nextCursor, Supplier<TotalCount> total, IntConsumer streamed) {
+        // A response closed because it failed isn't a query to record
+        AtomicBoolean failed = new AtomicBoolean();
+        IntConsumer itemsRead = n -> {
+            timer.items(n);
+            if(streamed != null && !failed.get()) {
+                streamed.accept(n);
+            }
+        };
+        Projection projection = Projection.of(ctx);
+        // Only the items are read from the ListResult given to the page
+        ListResult<?> items = projection == null ? result
+                : new ListResult<>(result.getItems().map(Projector.projecting(projection, properties)));
+        StreamingCollectionPage<?> response = listable.supportsPaging()
+                ? new StreamingCollectionPage<>(pageNumber(paging), paging.getPageSize(), items, nextCursor, total,
+                        Deadline.of(ctx), itemsRead)
+                : new StreamingCollectionPage<>(null, null, items, null,
+                        () -> new TotalCount(result.getTotalItems(), false), Deadline.of(ctx), itemsRead);
+
+        // Past this point a deadline only truncates the list
+        if(Deadline.of(ctx).isExpired()) {
+            failed.set(true);
+            response.close();
+            throw new DeadlineExceededException();
+        }
+        try {
+            ResponseGuard.write(ctx, () -> ctx.response().body(response));
+        } catch (IOException e) {
+            failed.set(true);
+            response.close();
+            throw new InternalServerErrorException(e);
+        } catch (RuntimeException e) {
+            failed.set(true);
+            response.close();
+            throw e;
+        }
+    }
+
+    private static boolean notModified(Context ctx, Versioned version) {
+        String v = version.getVersion();
+        String etag = v == null ? null : Conditional.weakTag(v, ctx.request().queryParams());
+        return Conditional.notModified(ctx, etag, version.getLastModified());
+    }
+
+    // An eagerly provided total is always used as is. Otherwise an exact count comes from the
+    // count cache or ListResult.countedBy(), and an estimate from ListResult.estimatedBy(), falling
+    // back to an exact count if the collection can't estimate.
+    private TotalCount resolveTotal(Context ctx, CountMode mode, Filtering filtering, ListResult<T> result) {
+        if(mode == CountMode.NONE) {
+            return TotalCount.NONE;
+        }
+        if(result.getTotalItems() != null) {
+            return new TotalCount(result.getTotalItems(), false);
+        }
+
+        Map<String, String> parentIds = null;
+        if(countCache != null && result.getCount() != null) {
+            parentIds = RestRouter.getParentIds(ctx);
+            Integer cached = countCache.get(parentIds, filtering);
+            if(cached != null) {
+                return new TotalCount(cached, false);
+            }
+        }
+
+        if(mode == CountMode.ESTIMATE && result.getEstimate() != null) {
+            return new TotalCount(result.getEstimate().get(), true);
+        }
+        if(result.getCount() == null) {
+            return TotalCount.NONE;
+        }
+
+        Integer count = result.getCount().get();
+        if(parentIds != null && count != null) {
+            countCache.put(parentIds, filtering, count);
+        }
+        return new TotalCount(count, false);
+    }
+
+    private CountMode getRequestedCountMode(Context ctx) {
+        final String count = ctx.request().queryParams().get("count");
+        if(count == null) {
+            return defaultCount;
+        }
+        try {
+            return CountMode.valueOf(count.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid count: expected none, exact or estimate");
+        }
+    }
+
+    // Pages after a cursor don't have a meaningful number
+    private static Integer pageNumber(Paging paging) {
+        return paging.getCursor() != null ? null : paging.getPage();
+    }
+
+    // A cursor is only valid with the sorting and filtering it was issued for. Built from the parsed
+    // specs, as equivalent specs can share a page (and its cursor) through coalescing or a ResponseCache.
+    private static String cursorContext(Sorting sorting, Filtering filtering) {
+        StringBuilder context = new StringBuilder();
+        if(sorting != null) {
+            for (SortField sf : sorting.getSortFields()) {
+                context.append(sf.getDirection() == SortDirection.DESCENDING ? '-' : '+').append(sf.getField()).append(',');
+            }
+        }
+        context.append('\n');
+        if(filtering != null) {
+            appendFilter(context, filtering);
+        }
+        return context.toString();
+    }
+
+    private static void appendFilter(StringBuilder context, Filtering filtering) {
+        context.append(filtering.getFilterName());
+        for (Object arg : filtering.getArgs()) {
+            if(arg instanceof Filtering) {
+                context.append('(');
+                appendFilter(context, (Filtering) arg);
+                context.append(')');
+                continue;
+            }
+            String value = String.valueOf(arg);
+            context.append(arg instanceof String ? 's' : 'n').append(value.length()).append(':').append(value);
+        }
+    }
+
+    private Paging getRequestedPaging(Context ctx, Sorting sorting, Filtering filtering) {
         // TODO - Wrap in a convenience accessor object. Maybe goes in core?
         final Map<String, String> params = ctx.request().queryParams();
 
@@ -105,6 +453,21 @@ public class ListHandler<T> implements Middleware {
             } catch (NumberFormatException ignored) { }
         }
 
+        final String cursor = params.get("cursor");
+        if(cursor != null && !cursor.isEmpty()) {
+            if(params.containsKey("page")) {
+                throw new BadRequestException("A cursor can't be combined with a page number");
+            }
+            if(!listable.supportsPaging() || !listable.supportsCursors()) {
+                throw new BadRequestException("This collection does not support cursors");
+            }
+            try {
+                return new Paging(pageSize, cursorCodec.decode(cursor, cursorContext(sorting, filtering)));
+            } catch (SpecParseException e) {
+                throw new BadRequestException("Invalid cursor: " + e.getMessage());
+            }
+        }
+
         if(requestedPaging) {
             return new Paging(page, pageSize);
         }
@@ -116,7 +479,7 @@ public class ListHandler<T> implements Middleware {
         final Map<String, String> params = ctx.request().queryParams();
         final String sortspec = params.get("sortBy");
         if(sortspec != null) {
-            return SortParser.parse(sortspec);
+            return sortCache != null ? sortCache.get(sortspec) : SortParser.parse(sortspec);
         }
         return null;
     }
@@ -125,8 +488,18 @@ public class ListHandler<T> implements Middleware {
         final Map<String, String> params = ctx.request().queryParams();
         final String filterspec = params.get("filter");
         if(filterspec != null) {
-            return FilterParser.parse(filterspec);
+            return filterCache != null ? filterCache.get(filterspec) : FilterParser.parseExpression(filterspec);
         }
         return null;
     }
+
+    private static final class SharedPage<T> {
+        final CollectionPage<T> page;
+        final Versioned version;
+
+        SharedPage(CollectionPage<T> page, Versioned version) {
+            this.page = page;
+            this.version = version;
+        }
+    }
 }
@@ -1,11 +1,18 @@
 package ca.lavers.joa.rest;
 
+import java.time.Instant;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-public class ListResult<T> {
+public class ListResult<T> implements Versioned {
 
     private final Stream<T> items;
     private Integer totalItems = null;
+    private Cursor nextCursor = null;
+    private Supplier<Integer> count = null;
+    private Supplier<Integer> estimate = null;
+    private String version = null;
+    private Instant lastModified = null;
 
     public ListResult(Stream<T> items) {
         this.items = items;
@@ -16,6 +23,36 @@ public class ListResult<T> {
         this.totalItems = totalItems;
     }
 
+    // nextCursor is the position of the last item, if there are more items after it
+    public ListResult(Stream<T> items, Integer totalItems, Cursor nextCursor) {
+        this.items = items;
+        this.totalItems = totalItems;
+        this.nextCursor = nextCursor;
+    }
+
+    // Computes the total only if the client asks for it, in place of passing totalItems up front
+    public ListResult<T> countedBy(Supplier<Integer> count) {
+        this.count = count;
+        return this;
+    }
+
+    // A cheaper approximate total, used when the client asks for ?count=estimate
+    public ListResult<T> estimatedBy(Supplier<Integer> estimate) {
+        this.estimate = estimate;
+        return this;
+    }
+
+    // Version of the listed items, for ETags on list responses
+    public ListResult<T> version(String version) {
+        this.version = version;
+        return this;
+    }
+
+    public ListResult<T> lastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+        return this;
+    }
+
     public Stream<T> getItems() {
         return items;
     }
@@ -23,4 +60,26 @@ public class ListResult<T> {
     public Integer getTotalItems() {
         return totalItems;
     }
+
+    Supplier<Integer> getCount() {
+        return count;
+    }
+
+    Supplier<Integer> getEstimate() {
+        return estimate;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public Cursor getNextCursor() {
+        return nextCursor;
+    }
 }
@@ -13,4 +13,17 @@ public interface Listable<T> {
     default boolean supportsSorting() {
         return false;
     }
+    // Version of the whole collection, changing whenever any item does; a conditional list
+    // request is then answered without calling list() if nothing has changed
+    default Versioned version(Context ctx) {
+        return null;
+    }
+    // Paging after a Cursor; requires supportsPaging()
+    default boolean supportsCursors() {
+        return false;
+    }
+    // Filters combined with and/or/not, passed as a compound Filtering; requires supportsFiltering()
+    default boolean supportsFilterExpressions() {
+        return false;
+    }
 }
@@ -0,0 +1,155 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Builds a ListResult for one page of an in-memory collection without sorting the whole thing.
+// Items up to the end of the requested page are selected with a bounded heap in a single pass
+// (O(n log k) for k = (page + 1) * pageSize), which also counts the total. If the page reaches
+// far enough into the collection that a heap wouldn't save anything, it falls back to a full sort.
+//
+// Ties are broken by position in the source, so the pages are the same as a stable sort's.
+public final class PageSelector {
+
+    // Fall back to a full sort when the page ends beyond this fraction of the collection
+    public static final double FULL_SORT_FRACTION = 0.5;
+
+    private PageSelector() {}
+
+    public static <T> ListResult<T> select(Iterable<T> items, Paging paging, Sorting sorting, SortKeys<T> keys) {
+        return select(items, null, paging, sorting == null ? null : sorting.toComparator(keys));
+    }
+
+    public static <T> ListResult<T> select(Iterable<T> items, Paging paging, Comparator<T> comparator) {
+        return select(items, null, paging, comparator);
+    }
+
+    // filter and comparator may be null; with no paging, all matching items are returned
+    public static <T> ListResult<T> select(Iterable<T> items, Predicate<T> filter, Paging paging, Comparator<T> comparator) {
+        if(paging == null) {
+            List<T> all = matching(items, filter);
+            if(comparator != null) {
+                all.sort(comparator);
+            }
+            return new ListResult<>(all.stream(), all.size());
+        }
+
+        long offset = (long) paging.getPage() * paging.getPageSize();
+        long end = offset + paging.getPageSize();
+        if(paging.getPage() < 0 || paging.getPageSize() <= 0) {
+            return new ListResult<>(Stream.empty(), count(items, filter));
+        }
+
+        if(comparator == null) {
+            return unsortedPage(items, filter, offset, end);
+        }
+
+        if(end > Integer.MAX_VALUE
+                || (items instanceof Collection && end > ((Collection<T>) items).size() * FULL_SORT_FRACTION)) {
+            List<T> all = matching(items, filter);
+            all.sort(comparator);
+            return new ListResult<>(subList(all, offset, end).stream(), all.size());
+        }
+
+        return heapPage(items, filter, comparator, offset, (int) end);
+    }
+
+    private static <T> ListResult<T> heapPage(Iterable<T> items, Predicate<T> filter, Comparator<T> comparator,
+                                              long offset, int k) {
+        // Max-heap on (comparator, source position), so the head is the first thing to drop
+        Comparator<Ranked<T>> order = (a, b) -> {
+            int result = comparator.compare(a.item, b.item);
+            return result != 0 ? result : Long.compare(a.position, b.position);
+        };
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<>(Math.min(k, 1024), order.reversed());
+
+        int total = 0;
+        long position = 0;
+        for(T item : items) {
+            if(filter != null && !filter.test(item)) {
+                continue;
+            }
+            total++;
+            if(heap.size() < k) {
+                heap.add(new Ranked<>(item, position));
+            }
+            // Later items only displace the head if strictly smaller, preserving source order for ties
+            else if(comparator.compare(item, heap.peek().item) < 0) {
+                heap.poll();
+                heap.add(new Ranked<>(item, position));
+            }
+            position++;
+        }
+
+        @SuppressWarnings("unchecked")
+        Ranked<T>[] selected = heap.toArray(new Ranked[0]);
+        Arrays.sort(selected, order);
+
+        List<T> page = new ArrayList<>();
+        for(long i = offset; i < selected.length; i++) {
+            page.add(selected[(int) i].item);
+        }
+        return new ListResult<>(page.stream(), total);
+    }
+
+    private static <T> ListResult<T> unsortedPage(Iterable<T> items, Predicate<T> filter, long offset, long end) {
+        List<T> page = new ArrayList<>();
+        int total = 0;
+        for(T item : items) {
+            if(filter != null && !filter.test(item)) {
+                continue;
+            }
+            if(total >= offset && total < end) {
+                page.add(item);
+            }
+            total++;
+        }
+        return new ListResult<>(page.stream(), total);
+    }
+
+    private static <T> List<T> matching(Iterable<T> items, Predicate<T> filter) {
+        List<T> result = items instanceof Collection ? new ArrayList<>(((Collection<T>) items).size()) : new ArrayList<>();
+        for(T item : items) {
+            if(filter == null || filter.test(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static <T> int count(Iterable<T> items, Predicate<T> filter) {
+        if(filter == null && items instanceof Collection) {
+            return ((Collection<T>) items).size();
+        }
+        int count = 0;
+        for(T item : items) {
+            if(filter == null || filter.test(item)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static <T> List<T> subList(List<T> list, long from, long to) {
+        if(from >= list.size()) {
+            return List.of();
+        }
+        return list.subList((int) from, (int) Math.min(to, list.size()));
+    }
+
+    private static final class Ranked<T> {
+        final T item;
+        final long position;
+
+        Ranked(T item, long position) {
+            this.item = item;
+            this.position = position;
+        }
+    }
+}
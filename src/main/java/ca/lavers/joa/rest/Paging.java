@@ -3,10 +3,19 @@ package ca.lavers.joa.rest;
 public class Paging {
     private final int page;
     private final int pageSize;
+    private final Cursor cursor;
 
     public Paging(int page, int pageSize) {
         this.page = page;
         this.pageSize = pageSize;
+        this.cursor = null;
+    }
+
+    // The page of pageSize items following the cursor's position
+    public Paging(int pageSize, Cursor cursor) {
+        this.page = 0;
+        this.pageSize = pageSize;
+        this.cursor = cursor;
     }
 
     public int getPage() {
@@ -16,4 +25,9 @@ public class Paging {
     public int getPageSize() {
         return pageSize;
     }
+
+    // Null unless the client asked for the page after a cursor, in which case getPage() is 0
+    public Cursor getCursor() {
+        return cursor;
+    }
 }
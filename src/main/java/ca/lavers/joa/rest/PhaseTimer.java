@@ -0,0 +1,67 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+// Times one request for RequestMetrics. The router puts it in the Context, and handlers mark the
+// end of each phase; with no metrics attached, handlers get NONE, which does nothing.
+class PhaseTimer {
+
+    static final PhaseTimer NONE = new PhaseTimer(RequestMetrics.NONE, null) {
+        @Override
+        void mark(String phase) {
+        }
+
+        @Override
+        void items(int count) {
+        }
+    };
+
+    private final RequestMetrics metrics;
+    private final String route;
+    final long start;
+    private long last;
+
+    private PhaseTimer(RequestMetrics metrics, String route) {
+        this.metrics = metrics;
+        this.route = route;
+        this.start = System.nanoTime();
+        this.last = start;
+    }
+
+    static PhaseTimer of(Context ctx) {
+        return ctx.get(RestRouter.NS, RestRouter.PHASE_TIMER, PhaseTimer.class).orElse(NONE);
+    }
+
+    // Runs the route's chain, through its admission check if it has one, timing it as a whole. A
+    // request the check turns away is recorded with a RequestRejectedException.
+    static void time(Context ctx, RequestMetrics metrics, String route, AdmissionControl.Route admission,
+                     Runnable chain) {
+        PhaseTimer timer = new PhaseTimer(metrics, route);
+        ctx.put(RestRouter.NS, RestRouter.PHASE_TIMER, timer);
+        Throwable error = null;
+        try {
+            if(admission == null) {
+                chain.run();
+            }
+            else if(!admission.run(ctx, chain)) {
+                error = new RequestRejectedException();
+            }
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            metrics.request(route, System.nanoTime() - timer.start, error);
+        }
+    }
+
+    // Ends the named phase, which started when the previous one ended
+    void mark(String phase) {
+        long now = System.nanoTime();
+        metrics.phase(route, phase, now - last);
+        last = now;
+    }
+
+    void items(int count) {
+        metrics.items(route, count);
+    }
+}
@@ -0,0 +1,92 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The properties a client asked for with ?fields=a,b,c. Only those are serialized, and collections
+// can get it with Projection.of(ctx) to fetch only those (e.g. select fewer columns). Items may
+// still be returned in full; the handlers drop the other properties either way.
+//
+// Immutable, so parsed instances can be cached and shared between requests
+public final class Projection {
+
+    private final List<String> fields;
+
+    public Projection(List<String> fields) {
+        this.fields = List.copyOf(fields);
+    }
+
+    // The request's projection, or null if the client wants every property
+    public static Projection of(Context ctx) {
+        return ctx.get(RestRouter.NS, RestRouter.PROJECTION, Projection.class).orElse(null);
+    }
+
+    // Parses the request's ?fields= (through ListHandler.FIELDS_CACHE), and stores it for of()
+    static Projection fromRequest(Context ctx) {
+        String spec = ctx.request().queryParams().get("fields");
+        if(spec == null) {
+            return null;
+        }
+        Projection projection;
+        try {
+            projection = ListHandler.FIELDS_CACHE.get(spec);
+        } catch (SpecParseException e) {
+            throw new BadRequestException("Error parsing fields: " + e.getMessage());
+        }
+        ctx.put(RestRouter.NS, RestRouter.PROJECTION, projection);
+        return projection;
+    }
+
+    // Parses a comma-separated list of property names, ignoring repeats
+    public static Projection parse(String spec) {
+        List<String> fields = new ArrayList<>();
+        for (String part : spec.split(",", -1)) {
+            String field = part.trim();
+            if(!isName(field)) {
+                throw new SpecParseException(field.isEmpty() ? "Empty field name" : "Invalid field name: " + field);
+            }
+            if(!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+        return new Projection(fields);
+    }
+
+    private static boolean isName(String field) {
+        if(field.isEmpty() || !Character.isJavaIdentifierStart(field.charAt(0))) {
+            return false;
+        }
+        for(int i = 1; i < field.length(); i++) {
+            if(!Character.isJavaIdentifierPart(field.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public boolean includes(String field) {
+        return fields.contains(field);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Projection && fields.equals(((Projection) o).fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", fields);
+    }
+}
@@ -0,0 +1,206 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Copies an item's projected properties into a Map, which is serialized in place of the item.
+//
+// A handler given serializedProperties() projects the Map the server's serializer makes of the
+// item, so fields= sees exactly the names a full response has, and nothing it leaves out.
+// Otherwise properties are the public getters and public fields of public classes, compiled once
+// per (item class, projection): found by reflection once per class, and read through MethodHandles
+// afterwards, so projecting an item doesn't reflect. That model only matches the serializer's for
+// plain beans; a property the serializer renames or hides needs serializedProperties().
+//
+// Map items are projected by key. Either way, a field the item doesn't have is a 400; a key that's
+// present with a null value counts as there.
+final class Projector {
+
+    // Past this many projections of one class, further ones are compiled on every use rather than
+    // cached, so clients can't grow the cache without bound
+    static final int MAX_PER_CLASS = 256;
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<Map<String, MethodHandle>> PROPERTIES = new ClassValue<>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return properties(type);
+        }
+    };
+
+    private static final ClassValue<ConcurrentHashMap<Projection, Projector>> COMPILED = new ClassValue<>() {
+        @Override
+        protected ConcurrentHashMap<Projection, Projector> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final String[] names;
+    private final MethodHandle[] getters;
+
+    private Projector(String[] names, MethodHandle[] getters) {
+        this.names = names;
+        this.getters = getters;
+    }
+
+    // Projects items of any class, compiling (or finding) a Projector for each class it sees.
+    // Not thread-safe; use one per request.
+    static Function<Object, Object> projecting(Projection projection) {
+        return projecting(projection, null);
+    }
+
+    // With properties, items are projected from the Map it makes of each one
+    static Function<Object, Object> projecting(Projection projection,
+                                               Function<Object, ? extends Map<String, ?>> properties) {
+        return new Function<>() {
+            private Class<?> lastClass;
+            private Projector last;
+
+            @Override
+            public Object apply(Object item) {
+                if(item == null) {
+                    return null;
+                }
+                if(properties != null) {
+                    return projectMap(properties.apply(item), projection);
+                }
+                if(item instanceof Map) {
+                    return projectMap((Map<?, ?>) item, projection);
+                }
+                if(item.getClass() != lastClass) {
+                    last = of(item.getClass(), projection);
+                    lastClass = item.getClass();
+                }
+                return last.project(item);
+            }
+        };
+    }
+
+    static Projector of(Class<?> type, Projection projection) {
+        ConcurrentHashMap<Projection, Projector> compiled = COMPILED.get(type);
+        Projector projector = compiled.get(projection);
+        if(projector == null) {
+            projector = compile(type, projection);
+            if(compiled.size() < MAX_PER_CLASS) {
+                compiled.putIfAbsent(projection, projector);
+            }
+        }
+        return projector;
+    }
+
+    private static Projector compile(Class<?> type, Projection projection) {
+        Map<String, MethodHandle> properties = PROPERTIES.get(type);
+        String[] names = projection.getFields().toArray(new String[0]);
+        MethodHandle[] getters = new MethodHandle[names.length];
+        for(int i = 0; i < names.length; i++) {
+            getters[i] = properties.get(names[i]);
+            if(getters[i] == null) {
+                throw new BadRequestException("Unknown field: " + names[i]);
+            }
+        }
+        return new Projector(names, getters);
+    }
+
+    Map<String, Object> project(Object item) {
+        Map<String, Object> projected = new LinkedHashMap<>(names.length * 2);
+        for(int i = 0; i < names.length; i++) {
+            try {
+                projected.put(names[i], (Object) getters[i].invokeExact(item));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InternalServerErrorException(t);
+            }
+        }
+        return projected;
+    }
+
+    private static Map<String, Object> projectMap(Map<?, ?> item, Projection projection) {
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (String field : projection.getFields()) {
+            if(!item.containsKey(field)) {
+                throw new BadRequestException("Unknown field: " + field);
+            }
+            projected.put(field, item.get(field));
+        }
+        return projected;
+    }
+
+    // Bean-style getters (getName(), isActive()) and public fields, by property name. Members that
+    // aren't accessible as they are (e.g. those of a private nested class) are left out rather than
+    // opened up with setAccessible.
+    private static Map<String, MethodHandle> properties(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<String, MethodHandle> properties = new HashMap<>();
+
+        for (Field field : type.getFields()) {
+            if(!Modifier.isStatic(field.getModifiers())) {
+                MethodHandle getter = unreflect(() -> lookup.unreflectGetter(field));
+                if(getter != null) {
+                    properties.put(field.getName(), getter);
+                }
+            }
+        }
+
+        // Getters take precedence over fields of the same name
+        for (Method method : type.getMethods()) {
+            String property = propertyName(method);
+            if(property != null) {
+                MethodHandle getter = unreflect(() -> lookup.unreflect(method));
+                if(getter != null) {
+                    properties.put(property, getter);
+                }
+            }
+        }
+        return properties;
+    }
+
+    private static String propertyName(Method method) {
+        if(Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0
+                || method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        String name = method.getName();
+        if(name.startsWith("get") && name.length() > 3) {
+            return decapitalize(name.substring(3));
+        }
+        if(name.startsWith("is") && name.length() > 2
+                && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+            return decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    // As java.beans.Introspector does: "Name" becomes "name", but "URL" stays "URL"
+    private static String decapitalize(String name) {
+        if(name.length() > 1 && Character.isUpperCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static MethodHandle unreflect(Unreflect unreflect) {
+        try {
+            return unreflect.get().asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private interface Unreflect {
+        MethodHandle get() throws IllegalAccessException;
+    }
+}
@@ -0,0 +1,136 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// The shape of a list query, without its values: the filter's name and argument types, the sort
+// fields and directions, and the page size rounded up to a power of two. "age(30)" and "age(45)"
+// have the same fingerprint, so it says which queries an index would help, not which values are hot.
+public final class QueryFingerprint {
+
+    private final String filter;
+    private final List<String> filterArgTypes;
+    private final List<String> sortBy;
+    private final int pageSizeBucket;
+    private final boolean cursor;
+
+    QueryFingerprint(String filter, List<String> filterArgTypes, List<String> sortBy, int pageSizeBucket, boolean cursor) {
+        this.filter = filter;
+        this.filterArgTypes = filterArgTypes;
+        this.sortBy = sortBy;
+        this.pageSizeBucket = pageSizeBucket;
+        this.cursor = cursor;
+    }
+
+    static QueryFingerprint of(Filtering filtering, Sorting sorting, Paging paging) {
+        String filter = null;
+        List<String> argTypes = List.of();
+        if(filtering != null) {
+            filter = filtering.getFilterName();
+            List<String> types = new ArrayList<>(filtering.getArgCount());
+            for (Object arg : filtering.getArgs()) {
+                types.add(typeOf(arg));
+            }
+            argTypes = List.copyOf(types);
+        }
+
+        List<String> sortBy = List.of();
+        if(sorting != null) {
+            List<String> fields = new ArrayList<>(sorting.getSortFields().size());
+            for (SortField sf : sorting.getSortFields()) {
+                fields.add((sf.getDirection() == SortDirection.DESCENDING ? "-" : "+") + sf.getField());
+            }
+            sortBy = List.copyOf(fields);
+        }
+
+        return new QueryFingerprint(filter, argTypes, sortBy, bucket(paging.getPageSize()),
+                paging.getCursor() != null);
+    }
+
+    // A combined filter's operands are described by their own shape, e.g. "age(number,number)"
+    private static String typeOf(Object arg) {
+        if(arg instanceof Filtering) {
+            Filtering filter = (Filtering) arg;
+            StringBuilder shape = new StringBuilder(filter.getFilterName());
+            if(filter.getArgCount() > 0) {
+                shape.append('(');
+                for(int i = 0; i < filter.getArgCount(); i++) {
+                    shape.append(i > 0 ? "," : "").append(typeOf(filter.getArgs().get(i)));
+                }
+                shape.append(')');
+            }
+            return shape.toString();
+        }
+        return arg instanceof Number ? "number" : "string";
+    }
+
+    // Smallest power of two at least as big as the page size
+    static int bucket(int pageSize) {
+        if(pageSize <= 1) {
+            return 1;
+        }
+        int bucket = Integer.highestOneBit(pageSize - 1) << 1;
+        return bucket < 0 ? Integer.MAX_VALUE : bucket;
+    }
+
+    // Null if the query wasn't filtered
+    public String getFilter() {
+        return filter;
+    }
+
+    // "string" or "number" for each of the filter's arguments, or the shape of each combined filter
+    public List<String> getFilterArgTypes() {
+        return filterArgTypes;
+    }
+
+    // e.g. ["+name", "-age"], or empty if the query wasn't sorted
+    public List<String> getSortBy() {
+        return sortBy;
+    }
+
+    public int getPageSizeBucket() {
+        return pageSizeBucket;
+    }
+
+    // Whether the page was after a cursor rather than by number
+    public boolean isCursor() {
+        return cursor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof QueryFingerprint)) {
+            return false;
+        }
+        QueryFingerprint other = (QueryFingerprint) o;
+        return pageSizeBucket == other.pageSizeBucket && cursor == other.cursor
+                && Objects.equals(filter, other.filter) && filterArgTypes.equals(other.filterArgTypes)
+                && sortBy.equals(other.sortBy);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(filter, filterArgTypes, sortBy, pageSizeBucket, cursor);
+    }
+
+    // e.g. "filter=age(number) sortBy=+name,-age pageSize<=16"
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        if(filter != null) {
+            s.append("filter=").append(filter).append('(').append(String.join(",", filterArgTypes)).append(") ");
+        }
+        if(!sortBy.isEmpty()) {
+            s.append("sortBy=").append(String.join(",", sortBy)).append(' ');
+        }
+        s.append("pageSize<=").append(pageSizeBucket);
+        if(cursor) {
+            s.append(" cursor");
+        }
+        return s.toString();
+    }
+}
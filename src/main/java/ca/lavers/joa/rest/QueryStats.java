@@ -0,0 +1,211 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The list queries costing the most time in total, by QueryFingerprint, for ListHandler.queryStats().
+//
+// At most maxEntries fingerprints are tracked, using the Space-Saving heavy-hitters algorithm weighted
+// by latency: once the table is full, a new fingerprint replaces the one with the lowest total, and
+// inherits that total as its error. Any fingerprint whose true total is more than 1/maxEntries of the
+// time recorded is guaranteed to be in the table, and a reported total is never more than its error
+// above the true one.
+//
+// Recording for a fingerprint already in the table is lock-free; a sample that races with its
+// fingerprint being replaced may be lost, which doesn't matter for finding the heavy hitters.
+public class QueryStats {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<QueryFingerprint, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock replaceLock = new ReentrantLock();
+
+    public QueryStats() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public QueryStats(int maxEntries) {
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    public void record(QueryFingerprint fingerprint, long nanos, int items) {
+        Entry entry = entries.get(fingerprint);
+        if(entry == null) {
+            entry = admit(fingerprint);
+        }
+        entry.add(Math.max(0, nanos), items);
+    }
+
+    // The n fingerprints with the highest total latency, highest first
+    public List<Stats> top(int n) {
+        List<Stats> stats = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            stats.add(entry.stats());
+        }
+        stats.sort(Comparator.comparingLong(Stats::getTotalNanos).reversed());
+        return stats.size() > n ? new ArrayList<>(stats.subList(0, n)) : stats;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    // A list handler reporting the top fingerprints, for the list chain of a RestRouter of its own,
+    // e.g. new RestRouter().list(stats.handler()). Takes an optional ?limit=.
+    public Middleware handler() {
+        return (ctx, next) -> {
+            int limit = maxEntries;
+            String param = ctx.request().queryParams().get("limit");
+            if(param != null) {
+                try {
+                    limit = Integer.parseInt(param);
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+                if(limit < 0) {
+                    throw new BadRequestException("Invalid limit");
+                }
+            }
+            List<Stats> top = top(limit);
+            try {
+                ResponseGuard.write(ctx, () -> ctx.response().body(top));
+            } catch (IOException e) {
+                throw new InternalServerErrorException(e);
+            }
+        };
+    }
+
+    private Entry admit(QueryFingerprint fingerprint) {
+        replaceLock.lock();
+        try {
+            Entry entry = entries.get(fingerprint);
+            if(entry != null) {
+                return entry;
+            }
+
+            long error = 0;
+            if(entries.size() >= maxEntries) {
+                Entry min = null;
+                long minCost = Long.MAX_VALUE;
+                for (Entry e : entries.values()) {
+                    long cost = e.cost();
+                    if(cost < minCost) {
+                        min = e;
+                        minCost = cost;
+                    }
+                }
+                if(min != null) {
+                    entries.remove(min.fingerprint);
+                    error = minCost;
+                }
+            }
+
+            entry = new Entry(fingerprint, error);
+            entries.put(fingerprint, entry);
+            return entry;
+        } finally {
+            replaceLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        final QueryFingerprint fingerprint;
+        final long error;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder items = new LongAdder();
+
+        Entry(QueryFingerprint fingerprint, long error) {
+            this.fingerprint = fingerprint;
+            this.error = error;
+        }
+
+        void add(long nanos, int items) {
+            count.increment();
+            totalNanos.add(nanos);
+            this.items.add(items);
+            long max = maxNanos.get();
+            while(nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        long cost() {
+            return error + totalNanos.sum();
+        }
+
+        Stats stats() {
+            return new Stats(fingerprint, count.sum(), cost(), error, maxNanos.get(), items.sum());
+        }
+    }
+
+    public static class Stats {
+        private final QueryFingerprint fingerprint;
+        private final long count;
+        private final long totalNanos;
+        private final long error;
+        private final long maxNanos;
+        private final long items;
+
+        Stats(QueryFingerprint fingerprint, long count, long totalNanos, long error, long maxNanos, long items) {
+            this.fingerprint = fingerprint;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.error = error;
+            this.maxNanos = maxNanos;
+            this.items = items;
+        }
+
+        public QueryFingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        // e.g. "filter=age(number) sortBy=+name pageSize<=16"
+        public String getQuery() {
+            return fingerprint.toString();
+        }
+
+        // Queries recorded since the fingerprint entered the table
+        public long getCount() {
+            return count;
+        }
+
+        // Includes the error inherited on entering the table, so may be an overestimate
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        // How much of getTotalNanos() may belong to fingerprints this one replaced
+        public long getError() {
+            return error;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) (totalNanos - error) / count;
+        }
+
+        // Items returned; a streamed response counts the items read from its stream
+        public long getItems() {
+            return items;
+        }
+    }
+}
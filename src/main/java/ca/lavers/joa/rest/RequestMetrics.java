@@ -0,0 +1,27 @@
+package ca.lavers.joa.rest;
+
+// Receives timings from a RestRouter tree, attached with RestRouter.metrics(). LatencyRecorder keeps
+// them in histograms; implement this to send them elsewhere instead. Routes are named by action and
+// sub-resource, e.g. "list /posts". Calls come from request threads, so should be quick.
+public interface RequestMetrics {
+
+    // Phases of a list request, as timed by ListHandler
+    String PARSE = "parse";             // query parameters
+    String LIST = "list";               // Listable.list()
+    String DRAIN = "drain";             // collecting the items and total
+    String SERIALIZE = "serialize";     // writing the response body
+
+    RequestMetrics NONE = new RequestMetrics() {};
+
+    // A request's total time in the route's chain, and what it threw, if anything; a request
+    // AdmissionControl shed gets a RequestRejectedException
+    default void request(String route, long nanos, Throwable error) {
+    }
+
+    default void phase(String route, String phase, long nanos) {
+    }
+
+    // Number of items a list request returned
+    default void items(String route, int count) {
+    }
+}
@@ -0,0 +1,10 @@
+package ca.lavers.joa.rest;
+
+// Reported to RequestMetrics for a request that AdmissionControl turned away with 503 Service
+// Unavailable. It's never thrown, so it doesn't bother filling in a stack trace.
+public class RequestRejectedException extends RuntimeException {
+
+    public RequestRejectedException() {
+        super("Rejected by admission control", null, false, false);
+    }
+}
@@ -0,0 +1,305 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.NextMiddleware;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+import ca.lavers.jstatemachine.StateMachineException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Caches the response bodies built by GetHandler and ListHandler (along with their ETag and
+// Last-Modified validators) for one collection. Add the same instance at the start of each of the
+// router's chains:
+//
+//   ResponseCache cache = new ResponseCache(1000, Duration.ofMinutes(5));
+//   router.list(cache, new ListHandler<>(...)).get(cache, new GetHandler<>(...))
+//         .create(cache, ...).update(cache, ...).delete(cache, ...)
+//
+// List responses are keyed by the parent IDs plus the parsed paging, filter, sorting and fields (so
+// equivalent specs share an entry) and any other query parameters; item responses by parent IDs,
+// item ID and fields. A successful create, update or delete bumps generation counters that make
+// affected entries stale: the collection's for any write, which invalidates its lists, and the
+// item's for an update or delete, including each item a BulkHandler updates or deletes. Counters are
+// striped by hash, so a write occasionally invalidates unrelated entries too, but memory stays bounded
+// however many items and parents there are.
+//
+// A hit is answered from here, without running anything after the cache in the chain, and is the
+// same for every requester. So put it after any auth middleware, and only use it for collections
+// whose responses don't depend on who is asking.
+//
+// Cached bodies are reused as is, so items returned by the Gettable/Listable must not be modified
+// afterwards. Streaming list responses aren't cached.
+public class ResponseCache implements Middleware {
+
+    public static final String NS = "ca.lavers.joa.rest.ResponseCache";
+    static final String CAPTURE = "capture";
+
+    private static final int STRIPES = 4096;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray collectionGenerations = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray itemGenerations = new AtomicLongArray(STRIPES);
+
+    private SpecCache<Filtering> filterCache = ListHandler.FILTER_CACHE;
+    private SpecCache<Sorting> sortCache = ListHandler.SORT_CACHE;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<Object, Entry>> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    ResponseCache(int maxSize, Duration ttl, LongSupplier clock) {
+        if(maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+    }
+
+    // The parse caches given to the collection's ListHandler, if it was given its own with
+    // ListHandler.specCaches(); null parses every request's spec afresh
+    public ResponseCache specCaches(SpecCache<Filtering> filterCache, SpecCache<Sorting> sortCache) {
+        this.filterCache = filterCache;
+        this.sortCache = sortCache;
+        return this;
+    }
+
+    @Override
+    public void call(Context ctx, NextMiddleware next) {
+        String id = RestRouter.getItemId(ctx);
+        Map<String, String> parentIds = RestRouter.getParentIds(ctx);
+
+        if(!"GET".equals(ctx.request().method())) {
+            // A bulk write reports the items it wrote, which may have been written even if it then fails
+            Capture capture = new Capture();
+            ctx.put(NS, CAPTURE, capture);
+            try {
+                next.run();
+                // Only reached if the write succeeded
+                invalidate(parentIds, id);
+            } finally {
+                for(String written : capture.written) {
+                    invalidate(parentIds, written);
+                }
+            }
+            return;
+        }
+
+        Projection projection;
+        try {
+            projection = Projection.fromRequest(ctx);
+        } catch (BadRequestException e) {
+            // The handler reports it
+            next.run();
+            return;
+        }
+        Object key = id != null ? Arrays.asList(parentIds, id, projection) : listKey(ctx, parentIds, projection);
+        if(key == null) {
+            next.run();
+            return;
+        }
+        AtomicLongArray generations = id != null ? itemGenerations : collectionGenerations;
+        int stripe = id != null ? stripe(parentIds, id) : stripe(parentIds, null);
+
+        Entry entry = entries.get(key);
+        if(entry != null && entry.generation == generations.get(stripe)
+                && clock.getAsLong() - entry.storedAt <= ttlNanos) {
+            hits.increment();
+            entry.referenced = true;
+            respond(ctx, entry);
+            return;
+        }
+
+        misses.increment();
+        // Read before the response is built, so a write that lands meanwhile leaves the entry stale
+        long generation = generations.get(stripe);
+        Capture capture = new Capture();
+        ctx.put(NS, CAPTURE, capture);
+        next.run();
+
+        if(capture.body != null) {
+            if(entries.size() >= maxSize) {
+                evict();
+            }
+            entries.put(key, new Entry(capture, generation, clock.getAsLong()));
+        }
+    }
+
+    private void respond(Context ctx, Entry entry) {
+        if((entry.etag != null || entry.lastModified != null)
+                && Conditional.notModified(ctx, entry.etag, entry.lastModified)) {
+            return;
+        }
+        try {
+            ResponseGuard.write(ctx, () -> ctx.response().body(entry.body));
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+
+    // Null if the filter or sortBy spec is malformed; ListHandler reports those
+    private Object listKey(Context ctx, Map<String, String> parentIds, Projection projection) {
+        Map<String, String> params = new TreeMap<>(ctx.request().queryParams());
+        Object filter = null;
+        Object sort = null;
+        try {
+            String spec = params.remove("filter");
+            if(spec != null) {
+                filter = filterCache != null ? filterCache.get(spec) : FilterParser.parseExpression(spec);
+            }
+            spec = params.remove("sortBy");
+            if(spec != null) {
+                sort = sortCache != null ? sortCache.get(spec) : SortParser.parse(spec);
+            }
+        } catch (StateMachineException | SpecParseException e) {
+            return null;
+        }
+        // Unparseable numbers are ignored by ListHandler, so are equivalent to leaving them out
+        Integer page = parseInt(params.remove("page"));
+        Integer pageSize = parseInt(params.remove("pageSize"));
+        params.remove("fields");
+        return Arrays.asList(parentIds, page, pageSize, filter, sort, projection, params);
+    }
+
+    private static Integer parseInt(String value) {
+        if(value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int stripe(Map<String, String> parentIds, String id) {
+        int h = 31 * parentIds.hashCode() + (id == null ? 0 : id.hashCode());
+        h ^= h >>> 16;
+        return h & (STRIPES - 1);
+    }
+
+    // Called by the handlers with the body they're about to send, if a ResponseCache is listening
+    static void captureBody(Context ctx, Object body) {
+        ctx.get(NS, CAPTURE, Capture.class).ifPresent(c -> c.body = body);
+    }
+
+    // Called by BulkHandler with the IDs of items it has updated or deleted
+    static void captureWritten(Context ctx, Collection<String> ids) {
+        ctx.get(NS, CAPTURE, Capture.class).ifPresent(c -> c.written.addAll(ids));
+    }
+
+    static void captureValidators(Context ctx, String etag, Instant lastModified) {
+        ctx.get(NS, CAPTURE, Capture.class).ifPresent(c -> {
+            c.etag = etag;
+            c.lastModified = lastModified;
+        });
+    }
+
+    // Drops cached lists for the collection with the given parent IDs (empty for a top-level
+    // collection), and with an ID, that item's cached response
+    public void invalidate(Map<String, String> parentIds, String id) {
+        collectionGenerations.incrementAndGet(stripe(parentIds, null));
+        if(id != null) {
+            itemGenerations.incrementAndGet(stripe(parentIds, id));
+        }
+    }
+
+    private void evict() {
+        if(!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int budget = entries.size() * 2;
+            long now = clock.getAsLong();
+            while(entries.size() >= maxSize && budget-- > 0) {
+                if(hand == null || !hand.hasNext()) {
+                    hand = entries.entrySet().iterator();
+                    if(!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<Object, Entry> candidate = hand.next();
+                Entry entry = candidate.getValue();
+                if(entry.referenced && now - entry.storedAt <= ttlNanos) {
+                    entry.referenced = false;
+                }
+                else if(entries.remove(candidate.getKey(), entry)) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    static final class Capture {
+        volatile Object body;
+        volatile String etag;
+        volatile Instant lastModified;
+        final Queue<String> written = new ConcurrentLinkedQueue<>();
+    }
+
+    private static final class Entry {
+        final Object body;
+        final String etag;
+        final Instant lastModified;
+        final long generation;
+        final long storedAt;
+        volatile boolean referenced = false;
+
+        Entry(Capture capture, long generation, long storedAt) {
+            this.body = capture.body;
+            this.etag = capture.etag;
+            this.lastModified = capture.lastModified;
+            this.generation = generation;
+            this.storedAt = storedAt;
+        }
+    }
+}
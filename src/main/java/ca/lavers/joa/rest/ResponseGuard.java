@@ -0,0 +1,54 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+
+import java.io.IOException;
+import java.util.Optional;
+
+// Keeps a chain that a Bulkhead offloaded, then gave up on at the deadline, from writing the
+// response: the request thread answers 504 while the chain may run on until it notices the
+// interrupt. The handlers write through here; once the chain is abandoned, a write fails with
+// DeadlineExceededException instead. Writes made by middleware of your own aren't covered.
+final class ResponseGuard {
+
+    static final String GUARD = "responseGuard";
+
+    interface Write {
+        void run() throws IOException;
+    }
+
+    private boolean abandoned = false;
+
+    // The request's guard, set up by the first Bulkhead to offload it
+    static ResponseGuard of(Context ctx) {
+        Optional<ResponseGuard> guard = ctx.get(RestRouter.NS, GUARD, ResponseGuard.class);
+        if(guard.isPresent()) {
+            return guard.get();
+        }
+        ResponseGuard created = new ResponseGuard();
+        ctx.put(RestRouter.NS, GUARD, created);
+        return created;
+    }
+
+    static void write(Context ctx, Write write) throws IOException {
+        Optional<ResponseGuard> guard = ctx.get(RestRouter.NS, GUARD, ResponseGuard.class);
+        if(guard.isPresent()) {
+            guard.get().run(write);
+        }
+        else {
+            write.run();
+        }
+    }
+
+    private synchronized void run(Write write) throws IOException {
+        if(abandoned) {
+            throw new DeadlineExceededException();
+        }
+        write.run();
+    }
+
+    // Waits for a write already in progress, so none overlaps the 504
+    synchronized void abandon() {
+        abandoned = true;
+    }
+}
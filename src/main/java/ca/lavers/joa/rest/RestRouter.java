@@ -5,6 +5,7 @@ import ca.lavers.joa.core.errors.MethodNotAllowedException;
 import ca.lavers.joa.core.errors.NotFoundException;
 import ca.lavers.joa.core.util.WrappedRequest;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -14,6 +15,19 @@ public class RestRouter implements Middleware {
     public static final String NS = "ca.lavers.joa.rest.RestRouter";
     public static final String ITEM_ID = "itemID";
     public static final String PARENT_IDS = "parentIDs";
+    public static final String ROUTE_MATCH = "routeMatch";
+    public static final String ADMISSION_CONTROL = "admissionControl";
+    public static final String RESOURCE_PATH = "resourcePath";
+    public static final String REQUEST_METRICS = "requestMetrics";
+    public static final String PHASE_TIMER = "phaseTimer";
+    public static final String DEADLINE = "deadline";
+    public static final String PROJECTION = "projection";
+
+    // Multi-get is routed from GET /?ids=a,b,c and POST /_batchGet
+    public static final String BATCH_GET_PARAM = "ids";
+    public static final String BATCH_GET_PATH = "_batchGet";
+    // Bulk writes are routed from POST /_bulk
+    public static final String BULK_PATH = "_bulk";
 
     // TODO - chains null by default with MethodNotAllowed if they weren't configured?
     private MiddlewareChain getChain;
@@ -21,10 +35,18 @@ public class RestRouter implements Middleware {
     private MiddlewareChain createChain;
     private MiddlewareChain updateChain;
     private MiddlewareChain deleteChain;
+    private MiddlewareChain batchGetChain;
+    private MiddlewareChain bulkChain;
+    private AdmissionControl admissionControl;
+    private RequestMetrics metrics;
+    private Duration timeout;
 
     private final Map<String, SubResourceChain> subResources = new HashMap<>();
 
+    private boolean frozen = false;
+
     public RestRouter get(Middleware... middlewares) {
+        checkNotFrozen();
         if(getChain == null) {
            getChain = new MiddlewareChain();
         }
@@ -33,6 +55,7 @@ public class RestRouter implements Middleware {
     }
 
     public RestRouter list(Middleware... middlewares) {
+        checkNotFrozen();
         if(listChain == null) {
             listChain = new MiddlewareChain();
         }
@@ -41,6 +64,7 @@ public class RestRouter implements Middleware {
     }
 
     public RestRouter create(Middleware... middlewares) {
+        checkNotFrozen();
         if(createChain == null) {
             createChain = new MiddlewareChain();
         }
@@ -49,6 +73,7 @@ public class RestRouter implements Middleware {
     }
 
     public RestRouter update(Middleware... middlewares) {
+        checkNotFrozen();
         if(updateChain == null) {
             updateChain = new MiddlewareChain();
         }
@@ -57,6 +82,7 @@ public class RestRouter implements Middleware {
     }
 
     public RestRouter delete(Middleware... middlewares) {
+        checkNotFrozen();
         if(deleteChain == null) {
             deleteChain = new MiddlewareChain();
         }
@@ -64,41 +90,163 @@ public class RestRouter implements Middleware {
         return this;
     }
 
+    public RestRouter batchGet(Middleware... middlewares) {
+        checkNotFrozen();
+        if(batchGetChain == null) {
+            batchGetChain = new MiddlewareChain();
+        }
+        batchGetChain.append(middlewares);
+        return this;
+    }
+
+    public RestRouter bulk(Middleware... middlewares) {
+        checkNotFrozen();
+        if(bulkChain == null) {
+            bulkChain = new MiddlewareChain();
+        }
+        bulkChain.append(middlewares);
+        return this;
+    }
+
+    // Sheds load for this router and the RestRouters nested under it
+    public RestRouter admissionControl(AdmissionControl admissionControl) {
+        checkNotFrozen();
+        this.admissionControl = admissionControl;
+        return this;
+    }
+
+    // Times requests to this router and the RestRouters nested under it
+    public RestRouter metrics(RequestMetrics metrics) {
+        checkNotFrozen();
+        this.metrics = metrics;
+        return this;
+    }
+
+    // Deadline for requests to this router and the RestRouters nested under it; a client's
+    // X-Request-Timeout header can shorten it but not extend it
+    public RestRouter timeout(Duration timeout) {
+        checkNotFrozen();
+        this.timeout = timeout;
+        return this;
+    }
+
     public RestRouter subResource(String name, String parentIDName, Middleware... middlewares) {
+        checkNotFrozen();
         this.subResources.put(name, new SubResourceChain(parentIDName, middlewares));
         return this;
     }
 
+    // Freezes this router (and any RestRouters nested as sub-resources) and builds an
+    // immutable dispatch table from it. Use the result in place of this router.
+    public CompiledRestRouter compile() {
+        return new CompiledRestRouter(this);
+    }
+
+    void freeze() {
+        this.frozen = true;
+    }
+
+    private void checkNotFrozen() {
+        if(frozen) {
+            throw new IllegalStateException("RestRouter has been compiled and can no longer be modified");
+        }
+    }
+
+    MiddlewareChain getChain() {
+        return getChain;
+    }
+
+    MiddlewareChain listChain() {
+        return listChain;
+    }
+
+    MiddlewareChain createChain() {
+        return createChain;
+    }
+
+    MiddlewareChain updateChain() {
+        return updateChain;
+    }
+
+    MiddlewareChain deleteChain() {
+        return deleteChain;
+    }
+
+    MiddlewareChain batchGetChain() {
+        return batchGetChain;
+    }
+
+    MiddlewareChain bulkChain() {
+        return bulkChain;
+    }
+
+    AdmissionControl admissionControl() {
+        return admissionControl;
+    }
+
+    RequestMetrics metrics() {
+        return metrics;
+    }
+
+    Duration timeout() {
+        return timeout;
+    }
+
+    Map<String, SubResourceChain> subResources() {
+        return subResources;
+    }
+
     @Override
     public void call(Context ctx, NextMiddleware next) {
+        Deadline.start(ctx, timeout);
+        try {
+            route(ctx);
+        } catch (DeadlineExceededException e) {
+            Deadline.respond(ctx);
+        }
+    }
+
+    private void route(Context ctx) {
         PathParser path = new PathParser(ctx.request().path());
 
         if(path.isCollectionRequest()) {
             switch(ctx.request().method()) {
                 case "GET":
+                    if(batchGetChain != null && ctx.request().queryParams().containsKey(BATCH_GET_PARAM)) {
+                        dispatch(ctx, AdmissionControl.BATCH_GET, batchGetChain);
+                        return;
+                    }
                     if(listChain == null) throw new MethodNotAllowedException();
-                    listChain.call(ctx);
+                    dispatch(ctx, AdmissionControl.LIST, listChain);
                    return;
                 case "POST":
                     if(createChain == null) throw new MethodNotAllowedException();
-                    createChain.call(ctx);
+                    dispatch(ctx, AdmissionControl.CREATE, createChain);
                     return;
             }
         }
         else if(path.isItemRequest()) {
+            if(batchGetChain != null && "POST".equals(ctx.request().method()) && BATCH_GET_PATH.equals(path.getItemID())) {
+                dispatch(ctx, AdmissionControl.BATCH_GET, batchGetChain);
+                return;
+            }
+            if(bulkChain != null && "POST".equals(ctx.request().method()) && BULK_PATH.equals(path.getItemID())) {
+                dispatch(ctx, AdmissionControl.BULK, bulkChain);
+                return;
+            }
             ctx.put(NS, ITEM_ID, path.getItemID());
             switch (ctx.request().method()) {
                 case "GET":
                     if(getChain == null) throw new MethodNotAllowedException();
-                    getChain.call(ctx);
+                    dispatch(ctx, AdmissionControl.GET, getChain);
                     return;
                 case "PUT":
                     if(updateChain == null) throw new MethodNotAllowedException();
-                    updateChain.call(ctx);
+                    dispatch(ctx, AdmissionControl.UPDATE, updateChain);
                     return;
                 case "DELETE":
                     if(deleteChain == null) throw new MethodNotAllowedException();
-                    deleteChain.call(ctx);
+                    dispatch(ctx, AdmissionControl.DELETE, deleteChain);
                     return;
             }
         }
@@ -119,6 +267,15 @@ public class RestRouter implements Middleware {
             }
             parentIDs.put(chain.parentName, path.getItemID());
 
+            AdmissionControl control = admissionControl(ctx);
+            RequestMetrics requestMetrics = metrics(ctx);
+            if(control != null || requestMetrics != null) {
+                String resource = ctx.get(NS, RESOURCE_PATH, String.class).orElse("");
+                ctx.put(NS, RESOURCE_PATH, resource + "/" + path.getSubResourceName());
+                if(control != null) ctx.put(NS, ADMISSION_CONTROL, control);
+                if(requestMetrics != null) ctx.put(NS, REQUEST_METRICS, requestMetrics);
+            }
+
             // Chop off parent ID from path
             Context newCtx = ctx.withAlternateRequest(new SubRequest(ctx.request(), path.getRemainingPath()));
             chain.chain.call(newCtx);
@@ -130,26 +287,85 @@ public class RestRouter implements Middleware {
         throw new MethodNotAllowedException();
     }
 
+    private void dispatch(Context ctx, String action, MiddlewareChain chain) {
+        AdmissionControl control = admissionControl(ctx);
+        RequestMetrics requestMetrics = metrics(ctx);
+        if(control == null && requestMetrics == null) {
+            chain.call(ctx);
+            return;
+        }
+        String resource = ctx.get(NS, RESOURCE_PATH, String.class).orElse("/");
+        AdmissionControl.Route admission = control != null ? control.route(action, resource) : null;
+        // Timed outside the admission check, so requests it sheds are recorded too
+        if(requestMetrics != null) {
+            PhaseTimer.time(ctx, requestMetrics, action + " " + resource, admission, () -> chain.call(ctx));
+        }
+        else {
+            admission.run(ctx, () -> chain.call(ctx));
+        }
+    }
+
+    // This router's, or else one inherited from the router this is nested under
+    private AdmissionControl admissionControl(Context ctx) {
+        if(admissionControl != null) {
+            return admissionControl;
+        }
+        return ctx.get(NS, ADMISSION_CONTROL, AdmissionControl.class).orElse(null);
+    }
+
+    private RequestMetrics metrics(Context ctx) {
+        if(metrics != null) {
+            return metrics;
+        }
+        return ctx.get(NS, REQUEST_METRICS, RequestMetrics.class).orElse(null);
+    }
+
+    // A plain RestRouter reached through a compiled router's opaque sub-resource chain (one that
+    // doesn't end in a RestRouter) sets its IDs as attributes; those are deeper than the RouteMatch's
     public static String getItemId(Context ctx) {
+        Optional<RouteMatch> match = getRouteMatch(ctx);
+        if(match.isPresent() && match.get().getItemId() != null) {
+            return match.get().getItemId();
+        }
         return ctx.get(RestRouter.NS, RestRouter.ITEM_ID, String.class).orElse(null);
     }
 
     public static String getParentId(Context ctx, String name) {
         Optional<Map> o = ctx.get(RestRouter.NS, RestRouter.PARENT_IDS, Map.class);
-        if(o.isPresent()) {
+        if(o.isPresent() && o.get().containsKey(name)) {
             return (String) o.get().get(name);
         }
-        return null;
+        Optional<RouteMatch> match = getRouteMatch(ctx);
+        return match.isPresent() ? match.get().getParentId(name) : null;
+    }
+
+    // All parent IDs for the request, by name
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> getParentIds(Context ctx) {
+        Optional<RouteMatch> match = getRouteMatch(ctx);
+        Map<String, String> ids = match.isPresent() ? match.get().getParentIds() : new HashMap<>();
+        Optional<Map> o = ctx.get(RestRouter.NS, RestRouter.PARENT_IDS, Map.class);
+        if(o.isPresent()) {
+            ids.putAll((Map<String, String>) o.get());
+        }
+        return ids;
+    }
+
+    // Only present when routed by a CompiledRestRouter
+    public static Optional<RouteMatch> getRouteMatch(Context ctx) {
+        return ctx.get(RestRouter.NS, RestRouter.ROUTE_MATCH, RouteMatch.class);
     }
 }
 
 class SubResourceChain {
     public String parentName;
     public MiddlewareChain chain;
+    public Middleware[] middlewares;
 
     public SubResourceChain(String parentName, Middleware... chain) {
         this.parentName = parentName;
         this.chain = new MiddlewareChain(chain);
+        this.middlewares = chain;
     }
 }
 
@@ -0,0 +1,116 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.MiddlewareChain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Result of resolving a request path against a CompiledRestRouter. Holds offsets into
+// the original path rather than substrings, so IDs are only materialized if asked for, and keeps
+// all of its per-level state in one int array: resolving a path allocates just this and the array.
+public final class RouteMatch {
+
+    final String path;
+
+    // Item ID span, or -1 if this isn't an item request
+    int itemStart = -1;
+    int itemEnd = -1;
+    private String itemId;
+
+    // Per nesting level, STRIDE ints: the path offset at which the level's relative path begins,
+    // then for levels with a sub-resource below them, which one (an index into the level's
+    // subNames) and the span of its parent ID. Levels and parent ID names aren't copied here; they
+    // come from the compiled tree, starting at root.
+    private static final int STRIDE = 4;
+    private static final int OFFSET = 0;
+    private static final int SUB = 1;
+    private static final int PARENT_START = 2;
+    private static final int PARENT_END = 3;
+    private final int[] spans;
+    private final CompiledRestRouter.Level root;
+    int parentCount = 0;
+
+    // Dispatch state: the deepest level traversed (null below an opaque sub-resource chain), and the
+    // chain (or failure) found there
+    int depth;
+    CompiledRestRouter.Level level;
+    MiddlewareChain terminal;
+    int failure = CompiledRestRouter.OK;
+
+    RouteMatch(String path, CompiledRestRouter.Level root, int maxDepth) {
+        this.path = path;
+        this.root = root;
+        this.spans = new int[(maxDepth + 1) * STRIDE];
+    }
+
+    void levelOffset(int depth, int offset) {
+        spans[depth * STRIDE + OFFSET] = offset;
+    }
+
+    void parent(int depth, int sub, int start, int end) {
+        int i = depth * STRIDE;
+        spans[i + SUB] = sub;
+        spans[i + PARENT_START] = start;
+        spans[i + PARENT_END] = end;
+        parentCount = depth + 1;
+    }
+
+    // The level at the given depth, or null below an opaque sub-resource chain
+    CompiledRestRouter.Level level(int depth) {
+        CompiledRestRouter.Level level = root;
+        for(int d = 0; d < depth && level != null; d++) {
+            level = level.children[spans[d * STRIDE + SUB]];
+        }
+        return level;
+    }
+
+    public String getItemId() {
+        if(itemId == null && itemStart >= 0) {
+            itemId = path.substring(itemStart, itemEnd);
+        }
+        return itemId;
+    }
+
+    public String getParentId(String name) {
+        // The last one wins, so a repeated name resolves to the closest parent
+        int found = -1;
+        CompiledRestRouter.Level level = root;
+        for(int i = 0; i < parentCount; i++) {
+            int sub = spans[i * STRIDE + SUB];
+            if(level.parentIdNames[sub].equals(name)) {
+                found = i;
+            }
+            level = level.children[sub];
+        }
+        return found < 0 ? null : parentId(found);
+    }
+
+    public Map<String, String> getParentIds() {
+        Map<String, String> ids = new HashMap<>();
+        CompiledRestRouter.Level level = root;
+        for(int i = 0; i < parentCount; i++) {
+            int sub = spans[i * STRIDE + SUB];
+            ids.put(level.parentIdNames[sub], parentId(i));
+            level = level.children[sub];
+        }
+        return ids;
+    }
+
+    private String parentId(int depth) {
+        int i = depth * STRIDE;
+        return path.substring(spans[i + PARENT_START], spans[i + PARENT_END]);
+    }
+
+    public int getParentCount() {
+        return parentCount;
+    }
+
+    // Path as seen by the given nesting level, e.g. "/42" for level 1 of "/37/bar/42"
+    String relativePath(int depth) {
+        if(depth == 0) {
+            return path;
+        }
+        int start = spans[depth * STRIDE + OFFSET];
+        return start >= path.length() ? "/" : path.substring(start - 1);
+    }
+}
@@ -0,0 +1,78 @@
+package ca.lavers.joa.rest;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Coalesces concurrent loads with the same key: the first caller (the leader) runs the loader,
+// and callers arriving while it's in flight wait for its result instead of loading themselves.
+//
+// A follower that waits longer than the timeout loads independently. If the leader fails, its
+// followers try once more, coalescing among themselves, since the failure may have been specific
+// to the leader's request; a second failure is thrown.
+final class SingleFlight<V> {
+
+    private final long timeoutNanos;
+    private final ConcurrentHashMap<Object, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    SingleFlight(Duration timeout) {
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    V run(Object key, Supplier<V> loader) {
+        for(int attempt = 0; ; attempt++) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+            if(leader == null) {
+                return lead(key, flight, loader);
+            }
+
+            try {
+                return leader.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return loader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loader.get();
+            } catch (ExecutionException e) {
+                if(attempt > 0) {
+                    throw rethrow(e.getCause());
+                }
+            }
+        }
+    }
+
+    // The flight is removed before it's completed, so followers retrying after a failure can't
+    // find it again
+    private V lead(Object key, CompletableFuture<V> flight, Supplier<V> loader) {
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        flight.complete(value);
+        return value;
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if(t instanceof Error) {
+            throw (Error) t;
+        }
+        if(t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
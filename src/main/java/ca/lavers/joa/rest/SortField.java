@@ -1,5 +1,7 @@
 package ca.lavers.joa.rest;
 
+import java.util.Objects;
+
 public class SortField {
     private final String field;
     private final SortDirection direction;
@@ -16,4 +18,18 @@ public class SortField {
     public SortDirection getDirection() {
         return direction;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof SortField)) {
+            return false;
+        }
+        SortField other = (SortField) o;
+        return Objects.equals(field, other.field) && direction == other.direction;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, direction);
+    }
 }
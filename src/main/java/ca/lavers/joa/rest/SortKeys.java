@@ -0,0 +1,112 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.errors.BadRequestException;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+// Declares how each sortable field of T is compared, for use with Sorting.toComparator and
+// Sorting.sort. Primitive keys are compared without boxing; object keys sort nulls first.
+public final class SortKeys<T> {
+
+    private final Map<String, Key<T>> keys = new HashMap<>();
+
+    // Past this many, comparators for further Sortings are compiled on every use rather than cached
+    static final int MAX_COMPILED = 256;
+
+    // Bumped on every change, so comparators compiled from an earlier state aren't reused
+    private volatile int version = 0;
+    private final ConcurrentHashMap<Sorting, Compiled<T>> compiled = new ConcurrentHashMap<>();
+
+    public SortKeys<T> intKey(String field, ToIntFunction<T> extractor) {
+        return comparator(field, Comparator.comparingInt(extractor));
+    }
+
+    public SortKeys<T> longKey(String field, ToLongFunction<T> extractor) {
+        return comparator(field, Comparator.comparingLong(extractor));
+    }
+
+    public SortKeys<T> doubleKey(String field, ToDoubleFunction<T> extractor) {
+        return comparator(field, Comparator.comparingDouble(extractor));
+    }
+
+    public <U extends Comparable<? super U>> SortKeys<T> key(String field, Function<T, U> extractor) {
+        return comparator(field, Comparator.comparing(extractor, Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+
+    // For keys that are expensive to compute (e.g. a Collator's CollationKey); Sorting.sort
+    // computes these once per item instead of twice per comparison
+    public <U extends Comparable<? super U>> SortKeys<T> precomputedKey(String field, Function<T, U> extractor) {
+        return put(field, new Key<>(
+                Comparator.comparing(extractor, Comparator.nullsFirst(Comparator.naturalOrder())),
+                extractor
+        ));
+    }
+
+    public SortKeys<T> comparator(String field, Comparator<T> comparator) {
+        return put(field, new Key<>(comparator, null));
+    }
+
+    private synchronized SortKeys<T> put(String field, Key<T> key) {
+        keys.put(field, key);
+        version++;
+        return this;
+    }
+
+    // The version is read before compiling, so a comparator compiled while keys were changing is
+    // recorded against the older version and not reused
+    Comparator<T> compiled(Sorting sorting) {
+        int current = version;
+        Compiled<T> c = compiled.get(sorting);
+        if(c != null && c.version == current) {
+            return c.comparator;
+        }
+        Comparator<T> comparator = sorting.toComparator(this::comparatorFor);
+        if(c != null || compiled.size() < MAX_COMPILED) {
+            compiled.put(sorting, new Compiled<>(current, comparator));
+        }
+        return comparator;
+    }
+
+    public boolean has(String field) {
+        return keys.containsKey(field);
+    }
+
+    Key<T> key(String field) {
+        Key<T> key = keys.get(field);
+        if(key == null) {
+            throw new BadRequestException("Unrecognized sort field: " + field);
+        }
+        return key;
+    }
+
+    Comparator<T> comparatorFor(String field) {
+        return key(field).comparator;
+    }
+
+    private static final class Compiled<T> {
+        final int version;
+        final Comparator<T> comparator;
+
+        Compiled(int version, Comparator<T> comparator) {
+            this.version = version;
+            this.comparator = comparator;
+        }
+    }
+
+    static final class Key<T> {
+        final Comparator<T> comparator;
+        final Function<T, ? extends Comparable<?>> precompute;
+
+        Key(Comparator<T> comparator, Function<T, ? extends Comparable<?>> precompute) {
+            this.comparator = comparator;
+            this.precompute = precompute;
+        }
+    }
+}
@@ -13,7 +13,14 @@ class SortParser {
     // TODO - Better error messages
     // TODO - Sanity checks (not repeating fields, etc)
 
+    // Throws SpecParseException if the spec is malformed
     public static Sorting parse(String spec) {
+        return SortScanner.parse(spec);
+    }
+
+    // The original state machine parser, kept for comparison; same results and error messages as
+    // parse(), but throws StateMachineException
+    static Sorting parseWithStateMachine(String spec) {
         List<SortField> fields = new ArrayList<>();
         fieldMaker.process(tokenizer.process(TokenStream.of(spec))).consume(fields::add);
         return new Sorting(fields);
@@ -0,0 +1,126 @@
+package ca.lavers.joa.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Single-pass, index-based equivalent of SortParser's state machines. As with FilterScanner, the
+// states and error messages mirror the tokenizer, and tokens go straight to the field-building stage.
+final class SortScanner {
+
+    private static final int PRE_FIELD = 0;
+    private static final int FIELD = 1;
+    private static final int PRE_DIRECTION = 2;
+    private static final int DIRECTION = 3;
+    private static final int PRE_COMMA = 4;
+
+    static Sorting parse(String spec) {
+        return new SortScanner(spec).scan();
+    }
+
+    private final String spec;
+    private final List<SortField> fields = new ArrayList<>();
+
+    // Field-building stage: the field awaiting a direction, if any
+    private String field;
+
+    private SortScanner(String spec) {
+        this.spec = spec;
+    }
+
+    private Sorting scan() {
+        final int len = spec.length();
+        int state = PRE_FIELD;
+        int start = 0;
+
+        for(int i = 0; i < len; i++) {
+            final char c = spec.charAt(i);
+            switch(state) {
+                case PRE_FIELD:
+                    if(c == ' ') break;
+                    if(c == ',') throw new SpecParseException("Missing field name before comma");
+                    start = i;
+                    state = FIELD;
+                    break;
+                case FIELD:
+                    if(c == ' ') {
+                        acceptField(start, i);
+                        state = PRE_DIRECTION;
+                    }
+                    else if(c == ',') {
+                        acceptField(start, i);
+                        state = PRE_FIELD;
+                    }
+                    break;
+                case PRE_DIRECTION:
+                    if(c == ' ') break;
+                    if(c == ',') {
+                        state = PRE_FIELD;
+                        break;
+                    }
+                    start = i;
+                    state = DIRECTION;
+                    break;
+                case DIRECTION:
+                    if(c == ' ') {
+                        acceptDirection(start, i);
+                        state = PRE_COMMA;
+                    }
+                    else if(c == ',') {
+                        acceptDirection(start, i);
+                        state = PRE_FIELD;
+                    }
+                    break;
+                case PRE_COMMA:
+                    if(c == ' ') break;
+                    if(c == ',') {
+                        state = PRE_FIELD;
+                        break;
+                    }
+                    throw new SpecParseException("Expected comma");
+            }
+        }
+
+        if(state == FIELD) {
+            acceptField(start, len);
+        }
+        else if(state == DIRECTION) {
+            acceptDirection(start, len);
+        }
+
+        if(field != null) {
+            emitField(SortDirection.ASCENDING);
+        }
+        return new Sorting(fields);
+    }
+
+    private void acceptField(int start, int end) {
+        if(field != null) {
+            // Previous field had no direction
+            emitField(SortDirection.ASCENDING);
+        }
+        field = spec.substring(start, end);
+    }
+
+    private void acceptDirection(int start, int end) {
+        if(field == null) {
+            throw new SpecParseException("Expected field name, but got sort direction");
+        }
+        emitField(direction(start, end));
+    }
+
+    private SortDirection direction(int start, int end) {
+        int len = end - start;
+        if(len == 3 && (spec.startsWith("asc", start) || spec.startsWith("ASC", start))) {
+            return SortDirection.ASCENDING;
+        }
+        if(len == 4 && (spec.startsWith("desc", start) || spec.startsWith("DESC", start))) {
+            return SortDirection.DESCENDING;
+        }
+        throw new SpecParseException("Unrecognized sort direction");
+    }
+
+    private void emitField(SortDirection direction) {
+        fields.add(new SortField(field, direction));
+        field = null;
+    }
+}
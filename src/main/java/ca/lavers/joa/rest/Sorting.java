@@ -1,41 +1,124 @@
 package ca.lavers.joa.rest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.ListIterator;
 import java.util.function.Function;
 
-public class Sorting {
+// Immutable, so parsed instances can be cached and shared between requests
+public final class Sorting {
 
     private final List<SortField> sortFields;
 
     public Sorting(List<SortField> sortFields) {
-        this.sortFields = sortFields;
+        this.sortFields = List.copyOf(sortFields);
     }
 
     public List<SortField> getSortFields() {
         return sortFields;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Sorting && sortFields.equals(((Sorting) o).sortFields);
+    }
+
+    @Override
+    public int hashCode() {
+        return sortFields.hashCode();
+    }
+
+    // Resolves each field's comparator up front (once per distinct field), folds descending
+    // fields in with reversed(), and chains them. A null comparator from fieldLookup means
+    // that field doesn't affect the order.
     public <T> Comparator<T> toComparator(Function<String, Comparator<T>> fieldLookup) {
-        Map<String, Comparator<T>> comparators = new HashMap<>();
-        for (SortField sf : this.getSortFields()) {
-            if(!comparators.containsKey(sf.getField())) {
-                Comparator<T> c = fieldLookup.apply(sf.getField());
-                if (c == null) {
-                    c = (a, b) -> 0;
-                }
-                comparators.put(sf.getField(), c);
+        List<Comparator<T>> chain = new ArrayList<>(sortFields.size());
+        List<String> seen = new ArrayList<>(sortFields.size());
+        List<Comparator<T>> resolved = new ArrayList<>(sortFields.size());
+
+        for (SortField sf : sortFields) {
+            int i = seen.indexOf(sf.getField());
+            Comparator<T> c;
+            if(i >= 0) {
+                c = resolved.get(i);
+            }
+            else {
+                c = fieldLookup.apply(sf.getField());
+                seen.add(sf.getField());
+                resolved.add(c);
             }
+            if(c != null) {
+                chain.add(sf.getDirection() == SortDirection.DESCENDING ? c.reversed() : c);
+            }
+        }
+
+        return compile(chain);
+    }
+
+    // Compiled comparators are cached by the SortKeys, as the same (cached) Sorting is usually
+    // sorted with the same keys over and over
+    public <T> Comparator<T> toComparator(SortKeys<T> keys) {
+        return keys.compiled(this);
+    }
+
+    // Sorts the list in place. Fields declared with SortKeys.precomputedKey have their keys
+    // computed once per item up front rather than on every comparison.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public <T> void sort(List<T> items, SortKeys<T> keys) {
+        if(sortFields.stream().noneMatch(sf -> keys.key(sf.getField()).precompute != null)) {
+            items.sort(toComparator(keys));
+            return;
         }
 
+        List<Function<T, ? extends Comparable<?>>> precomputed = new ArrayList<>();
+        List<Comparator<Decorated<T>>> chain = new ArrayList<>(sortFields.size());
+
+        for (SortField sf : sortFields) {
+            SortKeys.Key<T> key = keys.key(sf.getField());
+            Comparator<Decorated<T>> c;
+            if(key.precompute != null) {
+                final int slot = precomputed.size();
+                precomputed.add(key.precompute);
+                c = (a, b) -> compareKeys(a.keys[slot], b.keys[slot]);
+            }
+            else {
+                final Comparator<T> itemComparator = key.comparator;
+                c = (a, b) -> itemComparator.compare(a.item, b.item);
+            }
+            chain.add(sf.getDirection() == SortDirection.DESCENDING ? c.reversed() : c);
+        }
+
+        Decorated<T>[] decorated = new Decorated[items.size()];
+        int i = 0;
+        for (T item : items) {
+            Comparable[] itemKeys = new Comparable[precomputed.size()];
+            for(int k = 0; k < itemKeys.length; k++) {
+                itemKeys[k] = precomputed.get(k).apply(item);
+            }
+            decorated[i++] = new Decorated<>(item, itemKeys);
+        }
+
+        Arrays.sort(decorated, compile(chain));
+
+        ListIterator<T> it = items.listIterator();
+        for (Decorated<T> d : decorated) {
+            it.next();
+            it.set(d.item);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Comparator<T> compile(List<Comparator<T>> chain) {
+        switch(chain.size()) {
+            case 0: return (a, b) -> 0;
+            case 1: return chain.get(0);
+        }
+        final Comparator<T>[] comparators = chain.toArray(new Comparator[0]);
         return (a, b) -> {
-            for (SortField sf : this.getSortFields()) {
-                int result = comparators.get(sf.getField()).compare(a, b);
-                if (sf.getDirection() == SortDirection.DESCENDING) {
-                    result *= -1;
-                }
+            for (Comparator<T> c : comparators) {
+                int result = c.compare(a, b);
                 if (result != 0) {
                     return result;
                 }
@@ -44,4 +127,24 @@ public class Sorting {
         };
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Comparable a, Comparable b) {
+        if(a == null) {
+            return b == null ? 0 : -1;
+        }
+        if(b == null) {
+            return 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static final class Decorated<T> {
+        final T item;
+        final Comparable<?>[] keys;
+
+        Decorated(T item, Comparable<?>[] keys) {
+            this.item = item;
+            this.keys = keys;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.jstatemachine.StateMachineException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Concurrent, size-bounded cache of parsed filter/sortBy specifications keyed by the raw spec
+// string. Parse failures are cached too, so a malformed spec is only parsed once. Cached values
+// are shared between requests, so must be immutable (as Filtering and Sorting are).
+//
+// Eviction is CLOCK-style: entries are marked when read, and the eviction sweep removes the first
+// unmarked entry it finds, clearing marks as it passes.
+public class SpecCache<V> {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    // Longer specs are parsed but never cached, so huge junk query strings can't bloat the cache
+    public static final int MAX_SPEC_LENGTH = 1024;
+
+    private final Function<String, V> parser;
+    private final int maxSize;
+
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<String, Entry<V>>> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SpecCache(Function<String, V> parser) {
+        this(parser, DEFAULT_MAX_SIZE);
+    }
+
+    public SpecCache(Function<String, V> parser, int maxSize) {
+        if(maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.parser = parser;
+        this.maxSize = maxSize;
+    }
+
+    // Returns the parsed spec, or throws SpecParseException if it is malformed
+    public V get(String spec) {
+        Entry<V> entry = entries.get(spec);
+        if(entry != null) {
+            hits.increment();
+            entry.referenced = true;
+            return entry.result();
+        }
+
+        misses.increment();
+        entry = parse(spec);
+        if(spec.length() <= MAX_SPEC_LENGTH) {
+            if(entries.size() >= maxSize) {
+                evict();
+            }
+            entries.putIfAbsent(spec, entry);
+        }
+        return entry.result();
+    }
+
+    private Entry<V> parse(String spec) {
+        try {
+            return new Entry<>(parser.apply(spec), null);
+        } catch (StateMachineException | SpecParseException e) {
+            return new Entry<>(null, e.getMessage());
+        }
+    }
+
+    private void evict() {
+        // If another thread is already evicting, let the cache run briefly over size rather than wait
+        if(!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Two full turns of the hand is enough to find an unmarked entry if there is one
+            int budget = entries.size() * 2;
+            while(entries.size() >= maxSize && budget-- > 0) {
+                if(hand == null || !hand.hasNext()) {
+                    hand = entries.entrySet().iterator();
+                    if(!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, Entry<V>> candidate = hand.next();
+                if(candidate.getValue().referenced) {
+                    candidate.getValue().referenced = false;
+                }
+                else if(entries.remove(candidate.getKey(), candidate.getValue())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final String error;
+        volatile boolean referenced = false;
+
+        Entry(V value, String error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        V result() {
+            if(error != null) {
+                throw new SpecParseException(error);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ca.lavers.joa.rest;
+
+// Thrown when a filter, sortBy or fields specification can't be parsed
+public class SpecParseException extends RuntimeException {
+    public SpecParseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,132 @@
+package ca.lavers.joa.rest;
+
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Streaming counterpart to CollectionPage; items are handed to the serializer as an Iterator
+// over the ListResult stream, so they're written one at a time rather than collected first.
+// The stream is closed once the last item has been read, or once the deadline passes. By then the
+// response has started, so a deadline that passes while items are being written ends the list early
+// rather than failing the request: the client gets a truncated list with a 200.
+public class StreamingCollectionPage<T> {
+
+    private final Integer page;
+    private final Integer pageSize;
+    private final ClosingIterator<T> items;
+    private final String nextCursor;
+
+    private final ListResult<T> result;
+    private final Supplier<TotalCount> totalSupplier;
+    private TotalCount total;
+
+    public StreamingCollectionPage(ListResult<T> result) {
+        this(null, null, result);
+    }
+
+    public StreamingCollectionPage(Integer page, Integer pageSize, ListResult<T> result) {
+        this(page, pageSize, result, null);
+    }
+
+    public StreamingCollectionPage(Integer page, Integer pageSize, ListResult<T> result, String nextCursor) {
+        this(page, pageSize, result, nextCursor, () -> new TotalCount(result.getTotalItems(), false), Deadline.NONE,
+                count -> {});
+    }
+
+    // The total is only resolved once the items have been written; itemsRead gets the number of
+    // items written once the stream is closed
+    StreamingCollectionPage(Integer page, Integer pageSize, ListResult<T> result, String nextCursor,
+                            Supplier<TotalCount> totalSupplier, Deadline deadline, IntConsumer itemsRead) {
+        this.totalSupplier = totalSupplier;
+        this.page = page;
+        this.pageSize = pageSize;
+        this.result = result;
+        this.nextCursor = nextCursor;
+        this.items = new ClosingIterator<>(result.getItems(), deadline, itemsRead);
+    }
+
+    public Integer getPage() {
+        return page;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public Iterator<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    // Not backed by fields, so they're serialized after the items
+    public Integer getTotalItems() {
+        return total().value;
+    }
+
+    public Boolean getTotalItemsEstimated() {
+        return total().estimatedFlag();
+    }
+
+    private TotalCount total() {
+        if(total == null) {
+            total = totalSupplier.get();
+        }
+        return total;
+    }
+
+    void close() {
+        items.close();
+    }
+
+    private static class ClosingIterator<T> implements Iterator<T> {
+        private final Stream<T> stream;
+        private final Iterator<T> iterator;
+        private final Deadline deadline;
+        private final IntConsumer itemsRead;
+        private boolean closed = false;
+        private int checks = 0;
+        private int read = 0;
+
+        ClosingIterator(Stream<T> stream, Deadline deadline, IntConsumer itemsRead) {
+            this.stream = stream;
+            this.iterator = stream.iterator();
+            this.deadline = deadline;
+            this.itemsRead = itemsRead;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(closed) {
+                return false;
+            }
+            if(checks++ % Deadline.CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                close();
+                return false;
+            }
+            if(!iterator.hasNext()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            T item = iterator.next();
+            read++;
+            return item;
+        }
+
+        void close() {
+            if(!closed) {
+                closed = true;
+                stream.close();
+                itemsRead.accept(read);
+            }
+        }
+    }
+}
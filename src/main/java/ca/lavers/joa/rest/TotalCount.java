@@ -0,0 +1,20 @@
+package ca.lavers.joa.rest;
+
+// A list response's total, as resolved by ListHandler for the requested CountMode
+final class TotalCount {
+
+    static final TotalCount NONE = new TotalCount(null, false);
+
+    final Integer value;
+    final boolean estimated;
+
+    TotalCount(Integer value, boolean estimated) {
+        this.value = value;
+        this.estimated = estimated;
+    }
+
+    // Null when there's no total, so the flag is only present alongside one
+    Boolean estimatedFlag() {
+        return value == null ? null : estimated;
+    }
+}
@@ -0,0 +1,26 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+
+import java.io.IOException;
+
+// 503 responses for requests turned away under load. joa-core has no exception for this status,
+// so the response is written directly.
+final class Unavailable {
+
+    private Unavailable() {
+    }
+
+    static void respond(Context ctx, long retryAfterSeconds) {
+        try {
+            ResponseGuard.write(ctx, () -> {
+                ctx.response().header("Retry-After", Long.toString(Math.max(1, retryAfterSeconds)));
+                ctx.response().body("Service Unavailable");
+                ctx.response().status(503);
+            });
+        } catch (IOException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+}
@@ -16,6 +16,11 @@ public class UpdateHandler<T> extends BaseHandler<T> {
         this.updatable = updatable;
     }
 
+    // For a non-blocking backend; see GetHandler.async()
+    public static <T> UpdateHandler<T> async(Class<T> itemClass, AsyncUpdatable<T> updatable) {
+        return new UpdateHandler<>(itemClass, Async.updatable(updatable));
+    }
+
     @Override
     public void call(Context ctx, NextMiddleware next) {
         try {
@@ -25,7 +30,7 @@ public class UpdateHandler<T> extends BaseHandler<T> {
             if(updated == null) {
                 throw new NotFoundException();
             }
-            ctx.response().body(updated);
+            ResponseGuard.write(ctx, () -> ctx.response().body(updated));
         } catch (IOException e) {
             throw new InternalServerErrorException(e);
         }
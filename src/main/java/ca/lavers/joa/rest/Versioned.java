@@ -0,0 +1,30 @@
+package ca.lavers.joa.rest;
+
+import java.time.Instant;
+
+// Implemented by items (and returned by the cheap version lookups on Gettable and Listable) to
+// let GetHandler and ListHandler send ETag/Last-Modified headers and answer conditional requests
+// with 304 Not Modified.
+public interface Versioned {
+
+    // Opaque, and must change whenever the content does; null if unknown
+    String getVersion();
+
+    default Instant getLastModified() {
+        return null;
+    }
+
+    static Versioned of(String version, Instant lastModified) {
+        return new Versioned() {
+            @Override
+            public String getVersion() {
+                return version;
+            }
+
+            @Override
+            public Instant getLastModified() {
+                return lastModified;
+            }
+        };
+    }
+}
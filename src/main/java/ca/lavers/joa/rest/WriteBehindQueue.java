@@ -0,0 +1,353 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+import ca.lavers.joa.core.errors.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded queue of items accepted by CreateHandler.respondAccepted(queue), written in the background.
+// A single worker thread takes up to batchSize items at a time and passes them to the BatchCreatable
+// in one call, as soon as a full batch is waiting or the oldest item has waited maxDelay.
+//
+// The queue is a ConcurrentLinkedQueue bounded by a separate counter: a slot is reserved by
+// incrementing it, so accepting an item never takes a lock. When the queue is full, requests get a
+// 503, or with blockWhenFull wait up to the given time for space first.
+//
+// Each accepted item gets an ID, returned in the 202 body, that statusHandler() reports on until
+// statusRetention after the item was written. A batch is split by the parent IDs the items were
+// posted under, so each createAll() call only has items for one parent, and is made with the
+// context of the first request in it, after that request has finished. So apart from the parent
+// IDs, the BatchCreatable shouldn't depend on anything tied to a request, such as who sent it;
+// BatchCreatable.each() takes one item at a time, so each create() gets its own request's context.
+//
+// A batch that fails, even with an Error, fails only its own items; the worker carries on.
+//
+// close() stops accepting items and waits for the ones already queued to be written.
+public class WriteBehindQueue<T> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(50);
+    public static final Duration DEFAULT_STATUS_RETENTION = Duration.ofMinutes(5);
+
+    private final BatchCreatable<T> creatable;
+    private final int capacity;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long maxDelayNanos = DEFAULT_MAX_DELAY.toNanos();
+    private long blockNanos = 0;
+    private long retentionNanos = DEFAULT_STATUS_RETENTION.toNanos();
+    private long retryAfterSeconds = 1;
+
+    private final ConcurrentLinkedQueue<Pending<T>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ConcurrentHashMap<String, WriteStatus<T>> statuses = new ConcurrentHashMap<>();
+    // Written IDs in the order they finished, for expiring their statuses
+    private final ConcurrentLinkedQueue<Completed> completed = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean closed = false;
+    private volatile Thread worker;
+
+    public WriteBehindQueue(BatchCreatable<T> creatable, int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.creatable = creatable;
+        this.capacity = capacity;
+    }
+
+    public WriteBehindQueue<T> batchSize(int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    // Longest an item waits for a batch to fill up
+    public WriteBehindQueue<T> maxDelay(Duration maxDelay) {
+        this.maxDelayNanos = maxDelay.toNanos();
+        return this;
+    }
+
+    // When the queue is full, wait up to this long for space rather than rejecting straight away
+    public WriteBehindQueue<T> blockWhenFull(Duration maxWait) {
+        this.blockNanos = maxWait.toNanos();
+        return this;
+    }
+
+    public WriteBehindQueue<T> statusRetention(Duration retention) {
+        this.retentionNanos = retention.toNanos();
+        return this;
+    }
+
+    // Sent in the Retry-After header of the 503 for an item that didn't fit
+    public WriteBehindQueue<T> retryAfter(Duration retryAfter) {
+        this.retryAfterSeconds = retryAfter.getSeconds();
+        return this;
+    }
+
+    long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    // Queues the item, returning its status ID, or null if the queue is full or closed
+    public String offer(Context ctx, T item) {
+        int queued = reserve();
+        if(queued < 0) {
+            return null;
+        }
+        ensureStarted();
+
+        String id = UUID.randomUUID().toString();
+        statuses.put(id, new WriteStatus<>(id, WriteStatus.State.PENDING, null, null));
+        queue.add(new Pending<>(id, ctx, RestRouter.getParentIds(ctx), item, System.nanoTime()));
+
+        // The worker only needs waking to start the delay timer, or for a full batch
+        if(queued == 1 || queued == batchSize) {
+            LockSupport.unpark(worker);
+        }
+        return id;
+    }
+
+    // Queue size including the reserved slot, or -1 if there's no room
+    private int reserve() {
+        long deadline = System.nanoTime() + blockNanos;
+        while(true) {
+            if(closed) {
+                return -1;
+            }
+            int n = size.get();
+            if(n < capacity) {
+                if(size.compareAndSet(n, n + 1)) {
+                    // Checked again so an item can't be queued after the worker has finished draining
+                    if(closed) {
+                        size.decrementAndGet();
+                        return -1;
+                    }
+                    return n + 1;
+                }
+                continue;
+            }
+            if(blockNanos <= 0 || System.nanoTime() - deadline >= 0) {
+                return -1;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    public WriteStatus<T> status(String id) {
+        return statuses.get(id);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Responds with the status of the item whose ID is the request's item ID, so is meant as the
+    // get chain of a RestRouter of its own, e.g. new RestRouter().get(queue.statusHandler())
+    public Middleware statusHandler() {
+        return (ctx, next) -> {
+            String id = RestRouter.getItemId(ctx);
+            WriteStatus<T> status = id == null ? null : statuses.get(id);
+            if(status == null) {
+                throw new NotFoundException();
+            }
+            try {
+                ResponseGuard.write(ctx, () -> ctx.response().body(status));
+            } catch (IOException e) {
+                throw new InternalServerErrorException(e);
+            }
+        };
+    }
+
+    // Stops accepting items, and waits up to the timeout for the queued ones to be written.
+    // Returns false if some were still queued when it gave up.
+    public boolean close(Duration timeout) throws InterruptedException {
+        closed = true;
+        Thread w = worker;
+        if(w == null) {
+            return size.get() == 0;
+        }
+        LockSupport.unpark(w);
+        w.join(Math.max(1, timeout.toMillis()));
+        return !w.isAlive();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        close(Duration.ofSeconds(30));
+    }
+
+    // Also replaces a worker that has died, which it shouldn't
+    private void ensureStarted() {
+        Thread current = worker;
+        if(current == null || !current.isAlive()) {
+            synchronized (this) {
+                if(worker == current) {
+                    Thread w = new Thread(this::run, "joa-write-behind");
+                    w.setDaemon(true);
+                    w.start();
+                    worker = w;
+                }
+            }
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>(batchSize);
+        while(true) {
+            boolean draining = closed;
+            int waiting = size.get();
+            if(waiting == 0) {
+                if(draining) {
+                    return;
+                }
+                expireStatuses();
+                LockSupport.parkNanos(this, maxDelayNanos);
+                continue;
+            }
+
+            Pending<T> head = queue.peek();
+            if(head == null) {
+                // Slot reserved, but the item isn't in the queue yet
+                Thread.onSpinWait();
+                continue;
+            }
+            long wait = head.queuedAt + maxDelayNanos - System.nanoTime();
+            if(!draining && waiting < batchSize && wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            // Every reserved slot is counted in waiting, so wait for the items still being added
+            // rather than leave them behind for another maxDelay
+            int n = Math.min(batchSize, waiting);
+            while(batch.size() < n) {
+                Pending<T> p = queue.poll();
+                if(p == null) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                batch.add(p);
+            }
+            size.addAndGet(-batch.size());
+            try {
+                write(batch);
+            } catch (Throwable t) {
+                log.error("Error writing batch of " + batch.size() + " queued items", t);
+                fail(batch, "Internal server error");
+            }
+            batch.clear();
+        }
+    }
+
+    // One parent's items at a time, in calls of at most the BatchCreatable's maxCreateBatchSize()
+    private void write(List<Pending<T>> batch) {
+        int max = Math.max(1, creatable.maxCreateBatchSize());
+        Map<Map<String, String>, List<Pending<T>>> byParent = new LinkedHashMap<>();
+        for (Pending<T> p : batch) {
+            byParent.computeIfAbsent(p.parentIds, k -> new ArrayList<>()).add(p);
+        }
+        for (List<Pending<T>> group : byParent.values()) {
+            for(int from = 0; from < group.size(); from += Math.min(max, group.size() - from)) {
+                writeAll(group.subList(from, from + Math.min(max, group.size() - from)));
+            }
+        }
+        expireStatuses();
+    }
+
+    private void writeAll(List<Pending<T>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T> p : batch) {
+            items.add(p.item);
+        }
+
+        List<T> created = null;
+        String error = "Not created";
+        try {
+            created = creatable.createAll(batch.get(0).ctx, items);
+        } catch (BadRequestException e) {
+            if(e.getMessage() != null) {
+                error = e.getMessage();
+            }
+        } catch (Throwable t) {
+            log.error("Error writing batch of " + batch.size() + " queued items", t);
+            error = "Internal server error";
+        }
+
+        long now = System.nanoTime();
+        for(int i = 0; i < batch.size(); i++) {
+            String id = batch.get(i).id;
+            T item = created != null && i < created.size() ? created.get(i) : null;
+            statuses.put(id, item != null
+                    ? new WriteStatus<>(id, WriteStatus.State.CREATED, item, null)
+                    : new WriteStatus<>(id, WriteStatus.State.FAILED, null, error));
+            completed.add(new Completed(id, now));
+        }
+    }
+
+    // Fails the items of a batch that haven't been written
+    private void fail(List<Pending<T>> batch, String error) {
+        long now = System.nanoTime();
+        for (Pending<T> p : batch) {
+            WriteStatus<T> status = statuses.get(p.id);
+            if(status != null && status.getState() == WriteStatus.State.PENDING) {
+                statuses.put(p.id, new WriteStatus<>(p.id, WriteStatus.State.FAILED, null, error));
+                completed.add(new Completed(p.id, now));
+            }
+        }
+    }
+
+    private void expireStatuses() {
+        long now = System.nanoTime();
+        Completed c;
+        while((c = completed.peek()) != null && now - c.at > retentionNanos) {
+            completed.poll();
+            statuses.remove(c.id);
+        }
+    }
+
+    private static final class Pending<T> {
+        final String id;
+        final Context ctx;
+        final Map<String, String> parentIds;
+        final T item;
+        final long queuedAt;
+
+        Pending(String id, Context ctx, Map<String, String> parentIds, T item, long queuedAt) {
+            this.id = id;
+            this.ctx = ctx;
+            this.parentIds = parentIds;
+            this.item = item;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static final class Completed {
+        final String id;
+        final long at;
+
+        Completed(String id, long at) {
+            this.id = id;
+            this.at = at;
+        }
+    }
+}
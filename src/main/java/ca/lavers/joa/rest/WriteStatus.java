@@ -0,0 +1,36 @@
+package ca.lavers.joa.rest;
+
+// State of an item accepted by a WriteBehindQueue, as returned in the 202 response and by the queue's status handler
+public class WriteStatus<T> {
+
+    public enum State { PENDING, CREATED, FAILED }
+
+    private final String id;
+    private final State state;
+    private final T item;
+    private final String error;
+
+    public WriteStatus(String id, State state, T item, String error) {
+        this.id = id;
+        this.state = state;
+        this.item = item;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // The created item, once there is one
+    public T getItem() {
+        return item;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
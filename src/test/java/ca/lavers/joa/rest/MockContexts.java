@@ -0,0 +1,39 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.Mockito.*;
+
+// Mock Contexts with working attributes, as nested RestRouters and the handlers pass state through
+// them. Contexts made by withAlternateRequest() share their parent's attributes and response.
+class MockContexts {
+
+    // Query parameters as name, value pairs
+    static Context ctx(String method, String path, String... params) {
+        Map<String, String> query = new HashMap<>();
+        for(int i = 0; i < params.length; i += 2) {
+            query.put(params[i], params[i + 1]);
+        }
+        Request request = mock(Request.class);
+        when(request.method()).thenReturn(method);
+        when(request.path()).thenReturn(path);
+        when(request.queryParams()).thenReturn(query);
+        return ctx(request, mock(Response.class), new HashMap<>());
+    }
+
+    private static Context ctx(Request request, Response response, Map<String, Object> attributes) {
+        Context ctx = mock(Context.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(response);
+        when(ctx.withAlternateRequest(any())).thenAnswer(inv -> ctx(inv.getArgument(0), response, attributes));
+        when(ctx.get(anyString(), anyString(), any())).thenAnswer(inv -> Optional.ofNullable(attributes.get(inv.getArgument(1))));
+        doAnswer(inv -> attributes.put(inv.getArgument(1), inv.getArgument(2))).when(ctx).put(anyString(), anyString(), any());
+        return ctx;
+    }
+}
@@ -0,0 +1,136 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.test.TestMiddleware;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static ca.lavers.joa.rest.MockContexts.ctx;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestAdmissionControl {
+
+    @Test
+    void shedsOverRouteLimit() {
+        AdmissionControl control = new AdmissionControl().initialLimit(1).maxLimit(1);
+        Context rejected = ctx("GET", "/");
+        boolean[] ran = {false, false};
+
+        control.route(AdmissionControl.LIST, "/").run(ctx("GET", "/"), () -> {
+            control.route(AdmissionControl.LIST, "/").run(rejected, () -> fail("Should have been shed"));
+            // A different route has its own limit
+            control.route(AdmissionControl.GET, "/").run(ctx("GET", "/1"), () -> ran[0] = true);
+        });
+        control.route(AdmissionControl.LIST, "/").run(ctx("GET", "/"), () -> ran[1] = true);
+
+        verify(rejected.response()).status(503);
+        verify(rejected.response()).header("Retry-After", "1");
+        assertTrue(ran[0]);
+        assertTrue(ran[1]);
+        assertEquals(1, control.getRejected());
+        assertEquals(0, control.getInFlight());
+    }
+
+    @Test
+    void shedRequestsAreRecorded() {
+        for(boolean compile : new boolean[] { false, true }) {
+            AdmissionControl control = new AdmissionControl().initialLimit(1).maxLimit(1);
+            LatencyRecorder metrics = new LatencyRecorder();
+            Context rejected = ctx("GET", "/");
+            Middleware[] router = new Middleware[1];
+            RestRouter tree = new RestRouter()
+                    .admissionControl(control)
+                    .metrics(metrics)
+                    .list((c, next) -> {
+                        if(c != rejected) {
+                            router[0].call(rejected, () -> {});
+                        }
+                    });
+            router[0] = compile ? tree.compile() : tree;
+
+            router[0].call(ctx("GET", "/"), () -> {});
+            verify(rejected.response()).status(503);
+            assertEquals(2, metrics.getLatencies().get("list /").getCount());
+            assertEquals(Map.of("RequestRejectedException", 1L), metrics.getErrors("list /"));
+        }
+    }
+
+    @Test
+    void listsShedFirst() {
+        // The whole tree is limited to 5, of which lists may use 3.75 and writes 4.5
+        AdmissionControl control = new AdmissionControl().initialLimit(1).maxLimit(1);
+        boolean[] ran = {false, false};
+        Context list = ctx("GET", "/");
+
+        control.route(AdmissionControl.GET, "/a").run(ctx("GET", "/a/1"), () ->
+            control.route(AdmissionControl.GET, "/b").run(ctx("GET", "/b/1"), () ->
+                control.route(AdmissionControl.GET, "/c").run(ctx("GET", "/c/1"), () -> {
+                    control.route(AdmissionControl.LIST, "/d").run(list, () -> fail("List should have been shed"));
+                    control.route(AdmissionControl.CREATE, "/e").run(ctx("POST", "/e"), () -> {
+                        ran[0] = true;
+                        control.route(AdmissionControl.GET, "/f").run(ctx("GET", "/f/1"), () -> ran[1] = true);
+                    });
+                })));
+
+        verify(list.response()).status(503);
+        assertTrue(ran[0]);
+        assertTrue(ran[1]);
+    }
+
+    @Test
+    void limitFollowsLatency() {
+        GradientLimit limit = new GradientLimit(20, 1, 1000);
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+
+        // Barely used: fast responses don't grow it
+        for(int i = 0; i < 50; i++) {
+            limit.sample(fast, 0);
+        }
+        assertEquals(20, limit.get());
+
+        // Busy with steady latency: room to grow
+        for(int i = 0; i < 50; i++) {
+            limit.sample(fast, limit.get());
+        }
+        int grown = limit.get();
+        assertTrue(grown > 20);
+
+        // Requests start queueing
+        for(int i = 0; i < 20; i++) {
+            limit.sample(fast * 10, limit.get());
+        }
+        assertTrue(limit.get() < grown / 2);
+    }
+
+    @Test
+    void routesBySubResource() {
+        AdmissionControl control = new AdmissionControl();
+        TestMiddleware list = new TestMiddleware();
+        RestRouter router = new RestRouter()
+                .admissionControl(control)
+                .get(new TestMiddleware())
+                .subResource("posts", "userID", new RestRouter().list(list));
+
+        router.call(ctx("GET", "/1"), () -> {});
+        router.call(ctx("GET", "/1/posts"), () -> {});
+        assertTrue(list.ran());
+
+        CompiledRestRouter compiled = new RestRouter()
+                .admissionControl(control)
+                .subResource("posts", "userID", new RestRouter()
+                        .subResource("comments", "postID", new RestRouter().delete(new TestMiddleware())))
+                .compile();
+        compiled.call(ctx("DELETE", "/1/posts/2/comments/3"), () -> {});
+
+        Set<String> routes = control.getRoutes().stream()
+                .map(AdmissionControl.RouteStats::getRoute)
+                .collect(Collectors.toSet());
+        assertTrue(routes.containsAll(Set.of("get /", "list /posts", "delete /posts/comments")));
+    }
+}
@@ -0,0 +1,107 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.InternalServerErrorException;
+import ca.lavers.joa.core.errors.NotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestAsync {
+
+    private static Context itemContext(String id) {
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(mock(Response.class));
+        when(request.queryParams()).thenReturn(Map.of());
+        when(ctx.get(RestRouter.NS, RestRouter.ITEM_ID, String.class)).thenReturn(Optional.of(id));
+        return ctx;
+    }
+
+    @Test
+    void get() throws Exception {
+        GetHandler<String> handler = GetHandler.async(String.class,
+                (ctx, id) -> CompletableFuture.supplyAsync(() -> id.equals("1") ? "one" : null, ForkJoinPool.commonPool()));
+
+        Context found = itemContext("1");
+        handler.call(found, () -> {});
+        verify(found.response()).body("one");
+
+        assertThrows(NotFoundException.class, () -> handler.call(itemContext("2"), () -> {}));
+    }
+
+    @Test
+    void exceptionalCompletions() {
+        AsyncGettable<String> gettable = (ctx, id) -> {
+            switch(id) {
+                case "missing": return CompletableFuture.failedFuture(new NotFoundException());
+                case "bad": return CompletableFuture.failedFuture(new BadRequestException("bad"));
+                // Failure wrapped by a dependent stage
+                case "composed": return CompletableFuture.completedFuture(id)
+                        .thenCompose(i -> CompletableFuture.failedFuture(new BadRequestException(i)));
+                default: return CompletableFuture.failedFuture(new IOException("down"));
+            }
+        };
+        GetHandler<String> handler = GetHandler.async(String.class, gettable);
+
+        assertThrows(NotFoundException.class, () -> handler.call(itemContext("missing"), () -> {}));
+        assertEquals("bad", assertThrows(BadRequestException.class,
+                () -> handler.call(itemContext("bad"), () -> {})).getMessage());
+        assertEquals("composed", assertThrows(BadRequestException.class,
+                () -> handler.call(itemContext("composed"), () -> {})).getMessage());
+        InternalServerErrorException e = assertThrows(InternalServerErrorException.class,
+                () -> handler.call(itemContext("io"), () -> {}));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    void list() throws Exception {
+        AsyncListable<String> listable = new AsyncListable<>() {
+            @Override
+            public CompletableFuture<ListResult<String>> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+                return CompletableFuture.supplyAsync(() -> {
+                    List<String> items = Stream.of("a", "b", "c")
+                            .skip((long) page.getPage() * page.getPageSize()).limit(page.getPageSize())
+                            .collect(Collectors.toList());
+                    return new ListResult<>(items.stream(), 3);
+                });
+            }
+
+            @Override
+            public boolean supportsPaging() {
+                return true;
+            }
+        };
+
+        CollectionPage<String> page = TestListHandler.list(ListHandler.async(listable), "page", "1", "pageSize", "2");
+
+        assertEquals(List.of("c"), page.getItems());
+        assertEquals(3, page.getTotalItems());
+    }
+
+    @Test
+    void delete() throws Exception {
+        DeleteHandler<String> handler = DeleteHandler.async(String.class,
+                (ctx, id) -> CompletableFuture.completedFuture(id.equals("1")));
+
+        Context deleted = itemContext("1");
+        handler.call(deleted, () -> {});
+        verify(deleted.response()).status(200);
+
+        assertThrows(NotFoundException.class, () -> handler.call(itemContext("2"), () -> {}));
+    }
+}
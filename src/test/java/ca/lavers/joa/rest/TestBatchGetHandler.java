@@ -0,0 +1,113 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.MethodNotAllowedException;
+import ca.lavers.joa.test.TestMiddleware;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestBatchGetHandler {
+
+    private static final Map<String, String> STORE = Map.of("a", "A", "b", "B", "c", "C");
+
+    private final AtomicInteger batches = new AtomicInteger();
+    private final BatchGettable<String> batchGettable = (ctx, ids) -> {
+        batches.incrementAndGet();
+        return STORE;
+    };
+
+    private Context ctx(String method, String path, Map<String, String> query) throws Exception {
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(mock(Response.class));
+        when(ctx.withAlternateRequest(any())).thenReturn(ctx);
+        when(request.method()).thenReturn(method);
+        when(request.path()).thenReturn(path);
+        when(request.queryParams()).thenReturn(query);
+        when(request.parseBody(String[].class)).thenReturn(new String[] {"c", "x", "a"});
+        return ctx;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BatchGetResponse<String> response(Context ctx) throws Exception {
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(ctx.response()).body(body.capture());
+        return (BatchGetResponse<String>) body.getValue();
+    }
+
+    @Test
+    void queryIds() throws Exception {
+        Context ctx = ctx("GET", "/", Map.of("ids", "b,a,zz,b"));
+
+        new BatchGetHandler<>(batchGettable).call(ctx, () -> {});
+
+        BatchGetResponse<String> response = response(ctx);
+        assertEquals(List.of("B", "A"), response.getItems());
+        assertEquals(List.of("zz"), response.getMissing());
+        assertEquals(1, batches.get());
+    }
+
+    @Test
+    void bodyIdsWithFallback() throws Exception {
+        Context ctx = ctx("POST", "/_batchGet", Map.of());
+
+        new BatchGetHandler<>(BatchGettable.<String>parallel((c, id) -> STORE.get(id), Runnable::run)).call(ctx, () -> {});
+
+        BatchGetResponse<String> response = response(ctx);
+        assertEquals(List.of("C", "A"), response.getItems());
+        assertEquals(List.of("x"), response.getMissing());
+    }
+
+    @Test
+    void tooManyIds() throws Exception {
+        Context ctx = ctx("GET", "/", Map.of("ids", "a,b,c"));
+
+        assertThrows(BadRequestException.class, () -> new BatchGetHandler<>(batchGettable).maxIds(2).call(ctx, () -> {}));
+        assertEquals(0, batches.get());
+    }
+
+    @Test
+    void routing() throws Exception {
+        TestMiddleware list = new TestMiddleware();
+        TestMiddleware batchGet = new TestMiddleware();
+        RestRouter router = new RestRouter().list(list).batchGet(batchGet);
+
+        router.call(ctx("GET", "/", Map.of("ids", "a")), () -> {});
+        router.call(ctx("POST", "/_batchGet", Map.of()), () -> {});
+        assertTrue(batchGet.ran());
+        assertFalse(list.ran());
+
+        router.call(ctx("GET", "/", Map.of()), () -> {});
+        assertTrue(list.ran());
+    }
+
+    @Test
+    void compiledRouting() throws Exception {
+        TestMiddleware list = new TestMiddleware();
+        TestMiddleware batchGet = new TestMiddleware();
+        CompiledRestRouter router = new RestRouter()
+                .subResource("posts", "userID", new RestRouter().list(list).batchGet(batchGet))
+                .compile();
+
+        router.call(ctx("GET", "/1/posts", Map.of("ids", "a")), () -> {});
+        assertTrue(batchGet.ran());
+        assertFalse(list.ran());
+
+        assertNotNull(router.resolve("/1/posts/_batchGet", "POST").terminal);
+        assertNull(router.resolve("/1/posts/_batchGet", "POST").getItemId());
+
+        Context put = ctx("PUT", "/1/posts", Map.of("ids", "a"));
+        assertThrows(MethodNotAllowedException.class, () -> router.call(put, () -> {}));
+    }
+}
@@ -0,0 +1,217 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.test.TestMiddleware;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestBulkHandler {
+
+    public static class StringOperation extends BulkOperation<String> {
+        StringOperation(String op, String id, String item) {
+            super(op, id, item);
+        }
+    }
+
+    // Records each batch call as e.g. "create:a,b"
+    private final List<String> calls = new ArrayList<>();
+    private final Map<String, String> store = new HashMap<>(Map.of("1", "one", "2", "two"));
+
+    private final BatchCreatable<String> creatable = (ctx, items) -> {
+        calls.add("create:" + String.join(",", items));
+        return items.stream().map(item -> item.equals("bad") ? null : item.toUpperCase()).collect(Collectors.toList());
+    };
+    private final BatchUpdatable<String> updatable = (ctx, items) -> {
+        calls.add("update:" + String.join(",", items.keySet()));
+        Map<String, String> updated = new HashMap<>();
+        items.forEach((id, item) -> {
+            if(store.replace(id, item) != null) {
+                updated.put(id, item);
+            }
+        });
+        return updated;
+    };
+    private final BatchDeletable<String> deletable = (ctx, ids) -> {
+        calls.add("delete:" + String.join(",", ids));
+        return new HashSet<>(ids.stream().filter(id -> store.remove(id) != null).collect(Collectors.toList()));
+    };
+
+    private BulkHandler<String> handler() {
+        return new BulkHandler<>(StringOperation.class).creating(creatable).updating(updatable).deleting(deletable);
+    }
+
+    private static Context ctx(String method, String path, StringOperation... operations) throws Exception {
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(mock(Response.class));
+        when(request.method()).thenReturn(method);
+        when(request.path()).thenReturn(path);
+        when(request.queryParams()).thenReturn(Map.of());
+        when(request.parseBody(StringOperation[].class)).thenReturn(operations);
+        return ctx;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BulkResponse<String> response(Context ctx) throws Exception {
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(ctx.response()).body(body.capture());
+        return (BulkResponse<String>) body.getValue();
+    }
+
+    private static List<Integer> statuses(BulkResponse<String> response) {
+        return response.getResults().stream().map(BulkResult::getStatus).collect(Collectors.toList());
+    }
+
+    @Test
+    void groupsConsecutiveOperations() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("create", null, "a"),
+                new StringOperation("create", null, "bad"),
+                new StringOperation("update", "1", "uno"),
+                new StringOperation("update", "9", "nine"),
+                new StringOperation("create", null, "b"),
+                new StringOperation("delete", "2", null),
+                new StringOperation("delete", "2", null));
+
+        handler().call(ctx, () -> {});
+
+        assertEquals(List.of("create:a,bad", "update:1,9", "create:b", "delete:2", "delete:2"), calls);
+        BulkResponse<String> response = response(ctx);
+        assertEquals(List.of(201, 400, 200, 404, 201, 200, 404), statuses(response));
+        assertEquals(3, response.getFailed());
+        assertEquals("A", response.getResults().get(0).getItem());
+        assertEquals("uno", store.get("1"));
+    }
+
+    @Test
+    void invalidOperationsDontSplitGroups() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("create", null, "a"),
+                new StringOperation("upsert", "1", "x"),
+                new StringOperation("update", null, "x"),
+                null,
+                new StringOperation("create", null, "b"));
+
+        new BulkHandler<>(StringOperation.class).creating(creatable).call(ctx, () -> {});
+
+        assertEquals(List.of("create:a,b"), calls);
+        assertEquals(List.of(201, 400, 405, 400, 201), statuses(response(ctx)));
+    }
+
+    @Test
+    void batchSize() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("create", null, "a"),
+                new StringOperation("create", null, "b"),
+                new StringOperation("create", null, "c"));
+
+        handler().batchSize(2).call(ctx, () -> {});
+
+        assertEquals(List.of("create:a,b", "create:c"), calls);
+    }
+
+    @Test
+    void failedBatch() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("delete", "1", null),
+                new StringOperation("create", null, "a"));
+
+        new BulkHandler<>(StringOperation.class)
+                .creating(creatable)
+                .deleting((c, ids) -> { throw new IllegalStateException("down"); })
+                .call(ctx, () -> {});
+
+        BulkResponse<String> response = response(ctx);
+        assertEquals(List.of(500, 201), statuses(response));
+        assertEquals("Internal server error", response.getResults().get(0).getError());
+    }
+
+    @Test
+    void tooManyOperations() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("create", null, "a"),
+                new StringOperation("create", null, "b"));
+
+        assertThrows(BadRequestException.class, () -> handler().maxOperations(1).call(ctx, () -> {}));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    void eachFallback() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("create", null, "a"),
+                new StringOperation("create", null, "b"),
+                new StringOperation("create", null, "c"),
+                new StringOperation("delete", "1", null));
+
+        new BulkHandler<>(StringOperation.class)
+                .creating(BatchCreatable.each((c, item) -> {
+                    if(item.equals("a")) throw new BadRequestException("exists");
+                    if(item.equals("c")) throw new IllegalStateException("down");
+                    return item;
+                }))
+                .deleting(BatchDeletable.each((c, id) -> { throw new IllegalStateException("down"); }))
+                .call(ctx, () -> {});
+
+        BulkResponse<String> response = response(ctx);
+        assertEquals(List.of(400, 201, 500, 500), statuses(response));
+        assertEquals("exists", response.getResults().get(0).getError());
+        assertEquals("Internal server error", response.getResults().get(3).getError());
+    }
+
+    @Test
+    void maxBatchSize() throws Exception {
+        Context ctx = ctx("POST", "/_bulk",
+                new StringOperation("update", "1", "uno"),
+                new StringOperation("update", "2", "dos"),
+                new StringOperation("update", "9", "nine"));
+
+        BatchUpdatable<String> limited = new BatchUpdatable<>() {
+            @Override
+            public Map<String, String> updateAll(Context c, Map<String, String> items) {
+                return updatable.updateAll(c, items);
+            }
+
+            @Override
+            public int maxUpdateBatchSize() {
+                return 2;
+            }
+        };
+        new BulkHandler<>(StringOperation.class).updating(limited).call(ctx, () -> {});
+
+        assertEquals(List.of("update:1,2", "update:9"), calls);
+    }
+
+    @Test
+    void routing() throws Exception {
+        TestMiddleware bulk = new TestMiddleware();
+        TestMiddleware update = new TestMiddleware();
+        RestRouter router = new RestRouter().bulk(bulk).update(update);
+
+        router.call(ctx("POST", "/_bulk"), () -> {});
+        assertTrue(bulk.ran());
+
+        router.call(ctx("PUT", "/_bulk"), () -> {});
+        assertTrue(update.ran());
+
+        CompiledRestRouter compiled = new RestRouter()
+                .subResource("posts", "userID", new RestRouter().bulk(bulk))
+                .compile();
+        assertNotNull(compiled.resolve("/1/posts/_bulk", "POST").terminal);
+        assertNull(compiled.resolve("/1/posts/_bulk", "POST").getItemId());
+    }
+}
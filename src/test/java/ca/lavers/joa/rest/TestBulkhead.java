@@ -0,0 +1,97 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestBulkhead {
+
+    private static Context ctx() {
+        Context ctx = mock(Context.class);
+        when(ctx.response()).thenReturn(mock(Response.class));
+        return ctx;
+    }
+
+    // Occupies the bulkhead from another thread until the returned latch is counted down
+    private static CountDownLatch occupy(Bulkhead bulkhead) throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread t = new Thread(() -> bulkhead.call(ctx(), () -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        t.setDaemon(true);
+        t.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    void rejectsWhenFull() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1);
+        CountDownLatch release = occupy(bulkhead);
+        assertEquals(1, bulkhead.getActive());
+
+        Context rejected = ctx();
+        bulkhead.call(rejected, () -> fail("Should have been rejected"));
+        verify(rejected.response()).status(503);
+        verify(rejected.response()).header("Retry-After", "1");
+        assertEquals(1, bulkhead.getRejected());
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(bulkhead.getActive() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        boolean[] ran = {false};
+        bulkhead.call(ctx(), () -> ran[0] = true);
+        assertTrue(ran[0]);
+    }
+
+    @Test
+    void waitsForPlace() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1).maxWait(Duration.ofSeconds(5));
+        CountDownLatch release = occupy(bulkhead);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignored) {
+            }
+            release.countDown();
+        }).start();
+
+        boolean[] ran = {false};
+        bulkhead.call(ctx(), () -> ran[0] = true);
+        assertTrue(ran[0]);
+        assertEquals(0, bulkhead.getRejected());
+    }
+
+    @Test
+    void offload() {
+        Bulkhead bulkhead = new Bulkhead("test", 2).offload();
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        bulkhead.call(ctx(), () -> ranOn.set(Thread.currentThread()));
+        assertNotNull(ranOn.get());
+        assertNotSame(Thread.currentThread(), ranOn.get());
+
+        assertThrows(BadRequestException.class, () -> bulkhead.call(ctx(), () -> {
+            throw new BadRequestException();
+        }));
+        assertEquals(0, bulkhead.getActive());
+    }
+}
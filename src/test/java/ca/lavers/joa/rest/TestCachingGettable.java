@@ -0,0 +1,142 @@
+package ca.lavers.joa.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCachingGettable {
+
+    private final AtomicLong now = new AtomicLong();
+    private final Map<String, String> store = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Gettable<String> backend = (ctx, id) -> {
+        loads.incrementAndGet();
+        return store.get(id);
+    };
+
+    @Test
+    void cachesAndCounts() {
+        store.put("1", "one");
+        CachingGettable<String> cache = new CachingGettable<>(backend, 10, now::get);
+
+        assertEquals("one", cache.get(null, "1"));
+        assertEquals("one", cache.get(null, "1"));
+        assertNull(cache.get(null, "2"));
+        assertNull(cache.get(null, "2"));
+
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(0.25, cache.getHitRate());
+        assertEquals(3, cache.getLoads());
+    }
+
+    @Test
+    void scanResistant() {
+        IntStream.range(0, 1000).forEach(i -> store.put(Integer.toString(i), "v" + i));
+        CachingGettable<String> cache = new CachingGettable<>(backend, 10, now::get);
+
+        for(int round = 0; round < 5; round++) {
+            IntStream.range(0, 10).forEach(i -> cache.get(null, Integer.toString(i)));
+        }
+        // A crawler reads every item once while the hot ones keep being requested
+        IntStream.range(10, 1000).forEach(i -> {
+            cache.get(null, Integer.toString(i));
+            cache.get(null, Integer.toString(i % 10));
+        });
+
+        loads.set(0);
+        IntStream.range(0, 10).forEach(i -> cache.get(null, Integer.toString(i)));
+        assertTrue(loads.get() <= 2, "hot items reloaded: " + loads.get());
+        assertTrue(cache.getRejections() > 900);
+    }
+
+    @Test
+    void expires() {
+        store.put("1", "one");
+        CachingGettable<String> cache = new CachingGettable<>(backend, 10, now::get).ttl(Duration.ofNanos(10));
+
+        cache.get(null, "1");
+        now.set(10);
+        cache.get(null, "1");
+        assertEquals(1, loads.get());
+        now.set(11);
+        cache.get(null, "1");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void refreshesAhead() {
+        store.put("1", "one");
+        CachingGettable<String> cache = new CachingGettable<>(backend, 10, now::get)
+                .ttl(Duration.ofNanos(100))
+                .refreshAfter(Duration.ofNanos(10))
+                .refreshExecutor(Runnable::run);
+
+        cache.get(null, "1");
+        store.put("1", "uno");
+        now.set(20);
+
+        // The stale value is served while the refresh happens
+        assertEquals("one", cache.get(null, "1"));
+        assertEquals("uno", cache.get(null, "1"));
+        assertEquals(1, cache.getRefreshes());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void writesPassThrough() {
+        store.put("1", "one");
+        store.put("2", "two");
+        CachingGettable<String> cache = new CachingGettable<>(backend, 10, now::get);
+        Updatable<String> updates = cache.updating((ctx, id, item) -> {
+            store.put(id, item);
+            return item;
+        });
+        Deletable<String> deletes = cache.deleting((ctx, id) -> store.remove(id) != null);
+
+        cache.get(null, "1");
+        cache.get(null, "2");
+        updates.update(null, "1", "uno");
+        assertTrue(deletes.delete(null, "2"));
+
+        assertEquals("uno", cache.get(null, "1"));
+        assertNull(cache.get(null, "2"));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void batchWritesThrough() {
+        store.put("1", "one");
+        store.put("2", "two");
+        store.put("3", "three");
+        CachingGettable<String> cache = new CachingGettable<>(backend, 10, now::get);
+        BatchUpdatable<String> updates = cache.batchUpdating(BatchUpdatable.each((ctx, id, item) -> {
+            if(id.equals("3")) throw new IllegalStateException("down");
+            store.put(id, item);
+            return item;
+        }));
+        BatchDeletable<String> deletes = cache.batchDeleting(BatchDeletable.each((ctx, id) -> store.remove(id) != null));
+
+        cache.get(null, "1");
+        cache.get(null, "2");
+        cache.get(null, "3");
+        updates.updateAll(null, Map.of("1", "uno"));
+        assertThrows(IllegalStateException.class, () -> updates.updateAll(null, Map.of("3", "tres")));
+        deletes.deleteAll(null, List.of("2"));
+
+        assertEquals("uno", cache.get(null, "1"));
+        assertNull(cache.get(null, "2"));
+        assertEquals("three", cache.get(null, "3"));
+        assertEquals(5, loads.get());
+        assertEquals(1, updates.maxUpdateBatchSize());
+    }
+}
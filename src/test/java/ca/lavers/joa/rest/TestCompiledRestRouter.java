@@ -0,0 +1,207 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.errors.MethodNotAllowedException;
+import ca.lavers.joa.core.errors.NotFoundException;
+import ca.lavers.joa.test.MockRequest;
+import ca.lavers.joa.test.TestContext;
+import ca.lavers.joa.test.TestMiddleware;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCompiledRestRouter {
+
+    @TestFactory
+    Stream<DynamicTest> basicRouting() {
+        return Stream.of(
+                //                        method    path     expected
+                constructBasicRoutingTest("GET",    "/",     "list"),
+                constructBasicRoutingTest("GET",    "/foo",  "get"),
+                constructBasicRoutingTest("GET",    "/foo/", "get"),
+                constructBasicRoutingTest("POST",   "/",     "create"),
+                constructBasicRoutingTest("PUT",    "/foo",  "update"),
+                constructBasicRoutingTest("DELETE", "/foo",  "delete")
+        );
+    }
+
+    DynamicTest constructBasicRoutingTest(String method, String path, String expectedResult) {
+        return DynamicTest.dynamicTest(method + " " + path + " -> " + expectedResult, () -> {
+            TestMiddleware doRun = new TestMiddleware();
+            TestMiddleware dontRun = new TestMiddleware();
+
+            Middleware idChecker = (ctx, next) -> {
+                assertEquals("foo", RestRouter.getItemId(ctx));
+                next.run();
+            };
+
+            CompiledRestRouter router = new RestRouter()
+                    .list(               "list".equals(expectedResult)   ? doRun : dontRun)
+                    .get(idChecker,      "get".equals(expectedResult)    ? doRun : dontRun)
+                    .create(             "create".equals(expectedResult) ? doRun : dontRun)
+                    .update(idChecker,   "update".equals(expectedResult) ? doRun : dontRun)
+                    .delete(idChecker,   "delete".equals(expectedResult) ? doRun : dontRun)
+                    .compile();
+
+            new MockRequest(method, path).run(router);
+
+            assertTrue(doRun.ran());
+            assertFalse(dontRun.ran());
+        });
+    }
+
+    @TestFactory
+    Stream<DynamicTest> invalidRequests() {
+        return Stream.of(
+                constructInvalidRequestsTest("POST", "/foo"),
+                constructInvalidRequestsTest("PUT", "/"),
+                constructInvalidRequestsTest("DELETE", "/"),
+                constructInvalidRequestsTest("PATCH", "/"),
+                constructInvalidRequestsTest("PATCH", "/foo")
+        );
+    }
+
+    DynamicTest constructInvalidRequestsTest(String method, String path) {
+        return DynamicTest.dynamicTest(method + " " + path, () -> {
+            TestMiddleware m = new TestMiddleware();
+            CompiledRestRouter router = new RestRouter()
+                    .list(m)
+                    .get(m)
+                    .create(m)
+                    .update(m)
+                    .delete(m)
+                    .compile();
+
+            TestContext ctx = new MockRequest(method, path).run(router);
+
+            assertTrue(ctx.getThrownException() instanceof MethodNotAllowedException);
+            assertFalse(m.ran());
+        });
+    }
+
+    @Test
+    void plainSubResourceChain() {
+        TestMiddleware m = new TestMiddleware();
+        CompiledRestRouter router = new RestRouter()
+                .subResource("bar", "fooID", m, (ctx, next) -> {
+                    assertEquals("/", ctx.request().path());
+                    assertEquals("37", RestRouter.getParentId(ctx, "fooID"));
+                })
+                .compile();
+
+        MockRequest.get("/37/bar").run(router);
+
+        assertTrue(m.ran());
+    }
+
+    @Test
+    void nestedRouters() {
+        TestMiddleware m = new TestMiddleware();
+        CompiledRestRouter router = new RestRouter()
+                .subResource("bar", "fooID", new RestRouter()
+                    .subResource("baz", "barID", new RestRouter()
+                        .get(m, (ctx, next) -> {
+                            assertEquals("/99", ctx.request().path());
+                            assertEquals("37", RestRouter.getParentId(ctx, "fooID"));
+                            assertEquals("42", RestRouter.getParentId(ctx, "barID"));
+                            assertEquals("99", RestRouter.getItemId(ctx));
+                        })
+                    )
+                )
+                .compile();
+
+        MockRequest.get("/37/bar/42/baz/99").run(router);
+
+        assertTrue(m.ran());
+    }
+
+    @Test
+    void repeatedParentName() {
+        TestMiddleware m = new TestMiddleware();
+        CompiledRestRouter router = new RestRouter()
+                .subResource("replies", "id", new RestRouter()
+                    .subResource("replies", "id", new RestRouter()
+                        .list(m, (ctx, next) -> {
+                            // The closest parent wins
+                            assertEquals("2", RestRouter.getParentId(ctx, "id"));
+                            RouteMatch match = ctx.get(RestRouter.NS, RestRouter.ROUTE_MATCH, RouteMatch.class).get();
+                            assertEquals(2, match.getParentCount());
+                            assertEquals(Map.of("id", "2"), match.getParentIds());
+                            assertNull(match.getParentId("other"));
+                        })
+                    )
+                )
+                .compile();
+
+        MockRequest.get("/1/replies/2/replies").run(router);
+
+        assertTrue(m.ran());
+    }
+
+    @Test
+    void middlewareBeforeNestedRouter() {
+        TestMiddleware m = new TestMiddleware();
+        Middleware pathChecker = (ctx, next) -> {
+            assertEquals("/42", ctx.request().path());
+            next.run();
+        };
+        CompiledRestRouter router = new RestRouter()
+                .subResource("bar", "fooID", pathChecker, new RestRouter().get(m))
+                .compile();
+
+        MockRequest.get("/37/bar/42").run(router);
+
+        assertTrue(m.ran());
+    }
+
+    @Test
+    void plainRouterInOpaqueChain() {
+        Map<String, Object> seen = new HashMap<>();
+        RestRouter inner = new RestRouter()
+                .subResource("baz", "barID", new RestRouter()
+                    .get((ctx, next) -> {
+                        seen.put("fooID", RestRouter.getParentId(ctx, "fooID"));
+                        seen.put("barID", RestRouter.getParentId(ctx, "barID"));
+                        seen.put("parentIds", RestRouter.getParentIds(ctx));
+                        seen.put("itemId", RestRouter.getItemId(ctx));
+                    })
+                );
+        // Wrapped, so the compiled router can't see the RestRouter inside
+        CompiledRestRouter router = new RestRouter()
+                .subResource("bar", "fooID", (ctx, next) -> inner.call(ctx, next))
+                .compile();
+
+        MockRequest.get("/37/bar/42/baz/99").run(router);
+
+        assertEquals("37", seen.get("fooID"));
+        assertEquals("42", seen.get("barID"));
+        assertEquals(Map.of("fooID", "37", "barID", "42"), seen.get("parentIds"));
+        assertEquals("99", seen.get("itemId"));
+    }
+
+    @Test
+    void unknownSubResource() {
+        CompiledRestRouter router = new RestRouter()
+                .subResource("bar", "fooID", new TestMiddleware())
+                .compile();
+
+        TestContext ctx = MockRequest.get("/37/baz").run(router);
+
+        assertTrue(ctx.getThrownException() instanceof NotFoundException);
+    }
+
+    @Test
+    void frozenAfterCompile() {
+        RestRouter router = new RestRouter();
+        router.compile();
+
+        assertThrows(IllegalStateException.class, () -> router.list(new TestMiddleware()));
+    }
+
+}
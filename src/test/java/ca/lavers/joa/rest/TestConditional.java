@@ -0,0 +1,146 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class TestConditional {
+
+    static class Doc implements Versioned {
+        final String version;
+
+        Doc(String version) {
+            this.version = version;
+        }
+
+        @Override
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public Instant getLastModified() {
+            return Instant.parse("2020-01-02T03:04:05.678Z");
+        }
+    }
+
+    private final Map<String, String> headers = new HashMap<>();
+    private final Map<String, String> query = new HashMap<>();
+    private final Response response = mock(Response.class);
+    private final Context ctx = mock(Context.class);
+
+    TestConditional() {
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(response);
+        when(ctx.get(RestRouter.NS, RestRouter.ITEM_ID, String.class)).thenReturn(Optional.of("1"));
+        when(request.queryParams()).thenReturn(query);
+        when(request.header(any())).thenAnswer(i -> headers.get(i.<String>getArgument(0)));
+    }
+
+    private String header(String name) throws Exception {
+        ArgumentCaptor<String> value = ArgumentCaptor.forClass(String.class);
+        verify(response, atLeastOnce()).header(eq(name), value.capture());
+        return value.getValue();
+    }
+
+    @Test
+    void getSendsValidators() throws Exception {
+        new GetHandler<>(Doc.class, (c, id) -> new Doc("v1")).call(ctx, () -> {});
+
+        assertEquals("\"v1\"", header("ETag"));
+        assertEquals("Thu, 02 Jan 2020 03:04:05 GMT", header("Last-Modified"));
+        verify(response).body(any());
+    }
+
+    @Test
+    void getIfNoneMatch() throws Exception {
+        headers.put("If-None-Match", "\"v0\", W/\"v1\"");
+
+        new GetHandler<>(Doc.class, (c, id) -> new Doc("v1")).call(ctx, () -> {});
+
+        verify(response).status(304);
+        verify(response, never()).body(any());
+    }
+
+    @Test
+    void getIfModifiedSince() throws Exception {
+        headers.put("If-Modified-Since", "Thu, 02 Jan 2020 03:04:05 GMT");
+        new GetHandler<>(Doc.class, (c, id) -> new Doc("v1")).call(ctx, () -> {});
+        verify(response).status(304);
+
+        headers.put("If-Modified-Since", "Thu, 02 Jan 2020 03:04:04 GMT");
+        new GetHandler<>(Doc.class, (c, id) -> new Doc("v1")).call(ctx, () -> {});
+        verify(response).body(any());
+    }
+
+    @Test
+    void versionLookupSkipsGet() throws Exception {
+        AtomicInteger gets = new AtomicInteger();
+        Gettable<String> gettable = new Gettable<String>() {
+            @Override
+            public String get(Context ctx, String id) {
+                gets.incrementAndGet();
+                return "item";
+            }
+
+            @Override
+            public Versioned version(Context ctx, String id) {
+                return Versioned.of("7", null);
+            }
+        };
+        headers.put("If-None-Match", "\"7\"");
+
+        new GetHandler<>(String.class, gettable).call(ctx, () -> {});
+
+        verify(response).status(304);
+        assertEquals(0, gets.get());
+    }
+
+    @Test
+    void versionedBy() throws Exception {
+        new GetHandler<>(String.class, (c, id) -> "item")
+                .versionedBy(s -> Versioned.of("needs \"hashing\"", null))
+                .call(ctx, () -> {});
+
+        assertTrue(header("ETag").matches("\"[0-9a-f]+\""));
+    }
+
+    @Test
+    void listIfNoneMatch() throws Exception {
+        IndexedCollection<String> letters = new IndexedCollection<>(s -> s, (s, id) -> s);
+        letters.create(null, "a");
+        ListHandler<String> handler = new ListHandler<>(letters);
+        query.put("pageSize", "5");
+
+        handler.call(ctx, () -> {});
+        String etag = header("ETag");
+        assertTrue(etag.startsWith("W/"));
+
+        headers.put("If-None-Match", etag);
+        handler.call(ctx, () -> {});
+        verify(response).status(304);
+
+        // A different page, or a change to the collection, needs a new response
+        query.put("pageSize", "6");
+        handler.call(ctx, () -> {});
+        query.put("pageSize", "5");
+        letters.create(null, "b");
+        handler.call(ctx, () -> {});
+        verify(response, times(3)).body(any());
+        verify(response, times(1)).status(anyInt());
+    }
+}
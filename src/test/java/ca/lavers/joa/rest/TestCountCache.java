@@ -0,0 +1,51 @@
+package ca.lavers.joa.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCountCache {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void expiresAfterStaleness() {
+        CountCache cache = new CountCache(Duration.ofNanos(10), 10, now::get);
+        cache.put(Map.of(), null, 5);
+
+        now.set(10);
+        assertEquals(5, cache.get(Map.of(), null));
+        now.set(11);
+        assertNull(cache.get(Map.of(), null));
+    }
+
+    @Test
+    void keyedByParentsAndFilter() {
+        CountCache cache = new CountCache(Duration.ofSeconds(1), 10, now::get);
+        cache.put(Map.of("userID", "1"), FilterParser.parse("age(30)"), 5);
+
+        assertEquals(5, cache.get(Map.of("userID", "1"), FilterParser.parse("age( 30)")));
+        assertNull(cache.get(Map.of("userID", "2"), FilterParser.parse("age(30)")));
+        assertNull(cache.get(Map.of("userID", "1"), FilterParser.parse("age(\"30\")")));
+        assertNull(cache.get(Map.of("userID", "1"), null));
+    }
+
+    @Test
+    void fullCacheDropsStaleEntries() {
+        CountCache cache = new CountCache(Duration.ofNanos(10), 2, now::get);
+        cache.put(Map.of(), FilterParser.parse("a(1)"), 1);
+        cache.put(Map.of(), FilterParser.parse("a(2)"), 2);
+
+        cache.put(Map.of(), FilterParser.parse("a(3)"), 3);
+        assertNull(cache.get(Map.of(), FilterParser.parse("a(3)")));
+
+        now.set(20);
+        cache.put(Map.of(), FilterParser.parse("a(3)"), 3);
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.get(Map.of(), FilterParser.parse("a(3)")));
+    }
+}
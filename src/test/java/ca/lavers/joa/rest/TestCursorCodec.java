@@ -0,0 +1,62 @@
+package ca.lavers.joa.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCursorCodec {
+
+    private final CursorCodec codec = new CursorCodec("0123456789abcdef".getBytes());
+
+    @Test
+    void roundTrip() {
+        Cursor cursor = new Cursor(Arrays.asList("h\u00e9llo", 42, -7L, 2.5, true, null), "item-9");
+
+        Cursor decoded = codec.decode(codec.encode(cursor, "name"), "name");
+
+        assertEquals(cursor.getValues(), decoded.getValues());
+        assertEquals("item-9", decoded.getId());
+    }
+
+    @Test
+    void urlSafe() {
+        String encoded = codec.encode(new Cursor(Arrays.asList("?&/+="), "1"), "");
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void rejectsOtherContext() {
+        String encoded = codec.encode(new Cursor(Arrays.asList(1), "1"), "age\n");
+
+        assertThrows(SpecParseException.class, () -> codec.decode(encoded, "-age\n"));
+    }
+
+    @Test
+    void rejectsOtherKey() {
+        String encoded = codec.encode(new Cursor(Arrays.asList(1), "1"), "");
+        CursorCodec other = new CursorCodec("fedcba9876543210".getBytes());
+
+        assertThrows(SpecParseException.class, () -> other.decode(encoded, ""));
+    }
+
+    @Test
+    void rejectsTampering() {
+        byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(new Cursor(Arrays.asList(1), "1"), ""));
+        bytes[3] ^= 1;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        assertThrows(SpecParseException.class, () -> codec.decode(tampered, ""));
+        assertThrows(SpecParseException.class, () -> codec.decode("not a cursor!", ""));
+        assertThrows(SpecParseException.class, () -> codec.decode("", ""));
+    }
+
+    @Test
+    void unsupportedValues() {
+        assertThrows(IllegalArgumentException.class, () -> new Cursor(Arrays.asList(new Object()), "1"));
+        assertThrows(IllegalArgumentException.class, () -> new CursorCodec(new byte[8]));
+    }
+}
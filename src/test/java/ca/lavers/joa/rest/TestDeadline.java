@@ -0,0 +1,223 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestDeadline {
+
+    private final AtomicInteger read = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // Slow to read, one item per millisecond
+    private final Listable<Integer> slow = (ctx, page, filter, sort) ->
+            new ListResult<>(Stream.generate(() -> {
+                sleep(1);
+                return read.incrementAndGet();
+            }).limit(1000).onClose(() -> closed.set(true)));
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Context ctx(String timeoutHeader) {
+        Context ctx = MockContexts.ctx("GET", "/");
+        when(ctx.request().header(Deadline.HEADER)).thenReturn(timeoutHeader);
+        return ctx;
+    }
+
+    @Test
+    void stopsDraining() {
+        Context ctx = ctx(null);
+        new RestRouter().timeout(Duration.ofMillis(20)).list(new ListHandler<>(slow)).call(ctx, () -> {});
+
+        verify(ctx.response()).status(504);
+        assertTrue(closed.get());
+        assertTrue(read.get() < 1000);
+    }
+
+    @Test
+    void stopsStreaming() throws Exception {
+        Context ctx = ctx("20");
+        Response response = ctx.response();
+        // Serializes by reading every item
+        doAnswer(inv -> {
+            StreamingCollectionPage<?> page = inv.getArgument(0);
+            page.getItems().forEachRemaining(item -> {});
+            return null;
+        }).when(response).body(any(StreamingCollectionPage.class));
+
+        new RestRouter().list(new ListHandler<>(slow).streaming()).call(ctx, () -> {});
+
+        // The response has started, so the list is cut short rather than failed
+        verify(ctx.response(), never()).status(504);
+        assertTrue(closed.get());
+        assertTrue(read.get() < 1000);
+    }
+
+    @Test
+    void expiredBeforeStreaming() throws Exception {
+        Context ctx = ctx("50");
+        // Expires while the collection is being queried
+        Listable<Integer> late = (c, page, filter, sort) -> {
+            sleep(60);
+            return slow.list(c, page, filter, sort);
+        };
+
+        new RestRouter().list(new ListHandler<>(late).streaming()).call(ctx, () -> {});
+
+        verify(ctx.response()).status(504);
+        verify(ctx.response(), never()).body(any(StreamingCollectionPage.class));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void headerAndRouterTimeout() {
+        AtomicReference<Duration> remaining = new AtomicReference<>();
+        RestRouter router = new RestRouter()
+                .timeout(Duration.ofSeconds(10))
+                .list((ctx, next) -> remaining.set(Deadline.of(ctx).remaining()));
+
+        // The client can shorten the router's timeout, but not extend it
+        router.call(ctx("1000"), () -> {});
+        assertTrue(remaining.get().compareTo(Duration.ofSeconds(1)) <= 0);
+        router.call(ctx("60000"), () -> {});
+        assertTrue(remaining.get().compareTo(Duration.ofSeconds(10)) <= 0);
+        assertTrue(remaining.get().compareTo(Duration.ofSeconds(5)) > 0);
+
+        assertThrows(BadRequestException.class, () -> router.call(ctx("soon"), () -> {}));
+
+        new RestRouter().list((ctx, next) -> assertSame(Deadline.NONE, Deadline.of(ctx))).call(ctx(null), () -> {});
+        assertNull(Deadline.NONE.remaining());
+        assertFalse(Deadline.NONE.isExpired());
+    }
+
+    @Test
+    void hugeTimeout() {
+        // Past what nanoTime can count to, the timeout is clamped rather than overflowing
+        AtomicReference<Deadline> deadline = new AtomicReference<>();
+        RestRouter router = new RestRouter().list((ctx, next) -> deadline.set(Deadline.of(ctx)));
+        for(String header : new String[] { "99999999999999999", "9223372036854775807", "99999999999999999999999" }) {
+            router.call(ctx(header), () -> {});
+            assertFalse(deadline.get().isExpired());
+            assertTrue(deadline.get().remaining().compareTo(Deadline.MAX_TIMEOUT) <= 0);
+            assertTrue(deadline.get().remaining().compareTo(Duration.ofDays(365 * 70)) > 0);
+        }
+
+        // A router timeout still wins over a huge header
+        new RestRouter().timeout(Duration.ofSeconds(10))
+                .list((ctx, next) -> assertTrue(Deadline.of(ctx).remaining().compareTo(Duration.ofSeconds(10)) <= 0))
+                .call(ctx("99999999999999999"), () -> {});
+        assertFalse(Deadline.after(Duration.ofSeconds(Long.MAX_VALUE)).isExpired());
+    }
+
+    @Test
+    void cancelsAsync() {
+        CompletableFuture<ListResult<Integer>> future = new CompletableFuture<>();
+        AsyncListable<Integer> listable = (ctx, page, filter, sort) -> future;
+        Context ctx = ctx(null);
+
+        new RestRouter().timeout(Duration.ofMillis(10)).list(ListHandler.async(listable)).call(ctx, () -> {});
+
+        verify(ctx.response()).status(504);
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    void interruptsOffload() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Bulkhead bulkhead = new Bulkhead("test", 1).offload();
+        Context ctx = ctx("10");
+
+        new RestRouter().list(bulkhead, (c, next) -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }).call(ctx, () -> {});
+
+        verify(ctx.response()).status(504);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void abandonsOffload() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Bulkhead bulkhead = new Bulkhead("test", 1).offload();
+        Context ctx = MockContexts.ctx("GET", "/1");
+        when(ctx.request().header(Deadline.HEADER)).thenReturn("10");
+
+        new RestRouter().get(bulkhead, new GetHandler<>(String.class, (c, id) -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            // Runs on after the interrupt, then tries to respond
+            try {
+                finish.await();
+            } catch (InterruptedException ignored) {
+            }
+            return "late";
+        })).call(ctx, () -> {});
+
+        verify(ctx.response()).status(504);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        // Still holds its place
+        assertEquals(1, bulkhead.getActive());
+
+        finish.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(bulkhead.getActive() > 0) {
+            assertTrue(System.nanoTime() < deadline, "Permit not released");
+            Thread.sleep(1);
+        }
+        verify(ctx.response(), never()).body("late");
+    }
+
+    @Test
+    void compiledNestedTimeout() {
+        AtomicReference<Duration> remaining = new AtomicReference<>();
+        CompiledRestRouter router = new RestRouter()
+                .timeout(Duration.ofSeconds(10))
+                .subResource("posts", "userID", new RestRouter()
+                        .timeout(Duration.ofSeconds(1))
+                        .list((ctx, next) -> remaining.set(Deadline.of(ctx).remaining())))
+                .compile();
+
+        Context ctx = MockContexts.ctx("GET", "/1/posts");
+        router.call(ctx, () -> {});
+        assertTrue(remaining.get().compareTo(Duration.ofSeconds(1)) <= 0);
+
+        Context expired = ctx(null);
+        new RestRouter().timeout(Duration.ofMillis(1))
+                .get((c, next) -> { sleep(5); Deadline.of(c).check(); })
+                .compile()
+                .call(withPath(expired, "/1"), () -> {});
+        verify(expired.response()).status(504);
+    }
+
+    private static Context withPath(Context ctx, String path) {
+        when(ctx.request().path()).thenReturn(path);
+        return ctx;
+    }
+}
@@ -0,0 +1,174 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFilterExpressions {
+
+    static class User {
+        final String name;
+        final int age;
+        final boolean active;
+
+        User(String name, int age, boolean active) {
+            this.name = name;
+            this.age = age;
+            this.active = active;
+        }
+    }
+
+    private static final List<User> USERS = List.of(
+            new User("alice", 30, true),
+            new User("bob", 25, false),
+            new User("carol", 35, true),
+            new User("dave", 30, false));
+
+    private final AtomicInteger custom = new AtomicInteger();
+    private final FilterRegistry<User> registry = new FilterRegistry<User>()
+            .flag("isActive", u -> u.active)
+            .field("age", u -> u.age, Integer::valueOf)
+            .field("name", u -> u.name)
+            .filter("nameContains", f -> u -> {
+                custom.incrementAndGet();
+                return u.name.contains(f.getStringArg(0));
+            });
+
+    private String matching(String spec) {
+        Predicate<User> predicate = registry.compile(FilterParser.parseExpression(spec));
+        return USERS.stream().filter(predicate).map(u -> u.name).collect(Collectors.joining(","));
+    }
+
+    private static Filtering filter(String name, Object... args) {
+        return new Filtering(name, List.of(args));
+    }
+
+    @Test
+    void parsesExpressions() {
+        Filtering a = filter("a"), b = filter("b", 1), c = filter("c", "x");
+        assertEquals(new Filtering(Filtering.OR, List.of(a, new Filtering(Filtering.AND, List.of(b, c)))),
+                FilterParser.parseExpression("a or b(1) and c(\"x\")"));
+        assertEquals(new Filtering(Filtering.AND, List.of(new Filtering(Filtering.OR, List.of(a, b)),
+                        new Filtering(Filtering.NOT, List.of(c)))),
+                FilterParser.parseExpression(" (a or b( 1)) and not c(\"x\")"));
+        assertEquals(new Filtering(Filtering.AND, List.of(a, b, filter("c", "x)"))),
+                FilterParser.parseExpression("a and b(1) and c(\"x\\)\")"));
+
+        Filtering expression = FilterParser.parseExpression("isActive and (age(18, 30) or not name(\"bob\"))");
+        assertTrue(expression.isCompound());
+        assertEquals("isActive and (age(18, 30) or not name(\"bob\"))", expression.toString());
+        assertEquals(expression, FilterParser.parseExpression(expression.toString()));
+    }
+
+    @Test
+    void singleFiltersParseAsBefore() {
+        for (String spec : List.of("isActive", "age( 30)", "between(2022-01-01, 2022-02-28)", "notable", "order(1)",
+                "not", "and", "or", " not ", "not(5)", "and(\"x\")")) {
+            assertEquals(FilterParser.parse(spec), FilterParser.parseExpression(spec));
+            assertFalse(FilterParser.parseExpression(spec).isCompound());
+        }
+        for (String spec : List.of("age(30) x", "(30)", "age(\"a", "", "a and", "a or", "not(5) and", "or ( 1, 2)")) {
+            SpecParseException legacy = assertThrows(SpecParseException.class, () -> FilterParser.parse(spec));
+            SpecParseException error = assertThrows(SpecParseException.class, () -> FilterParser.parseExpression(spec));
+            assertEquals(legacy.getMessage(), error.getMessage());
+        }
+        assertThrows(SpecParseException.class, () -> FilterParser.parseExpression("(a or b"));
+    }
+
+    @Test
+    void keywordsWithoutOperandsAreFilters() {
+        Filtering a = filter("a"), not = filter("not");
+        assertEquals(new Filtering(Filtering.AND, List.of(a, not)), FilterParser.parseExpression("a and not"));
+        assertEquals(new Filtering(Filtering.OR, List.of(a, filter("and"))), FilterParser.parseExpression("a or and"));
+        assertEquals(new Filtering(Filtering.NOT, List.of(filter("not", 5))), FilterParser.parseExpression("not not(5)"));
+        assertEquals(new Filtering(Filtering.AND, List.of(filter("not", 5), a)), FilterParser.parseExpression("not(5) and a"));
+        assertEquals(new Filtering(Filtering.AND, List.of(not, a)), FilterParser.parseExpression("not and a"));
+
+        Filtering expression = new Filtering(Filtering.OR, List.of(new Filtering(Filtering.AND, List.of(not, a)),
+                new Filtering(Filtering.NOT, List.of(filter("or")))));
+        assertEquals(expression, FilterParser.parseExpression(expression.toString()));
+    }
+
+    @Test
+    void compiles() {
+        assertEquals("alice,carol", matching("isActive"));
+        assertEquals("alice,dave", matching("age(30)"));
+        assertEquals("alice,bob,dave", matching("age(25, 30)"));
+        assertEquals("carol,dave", matching("isActive and age(31, 40) or not isActive and not name(\"bob\")"));
+        assertEquals("bob", matching("not (isActive or age(30))"));
+        assertEquals("alice,bob,carol,dave", matching("isActive or not isActive"));
+
+        assertThrows(BadRequestException.class, () -> matching("height(2) or isActive"));
+        assertThrows(BadRequestException.class, () -> matching("isActive(1)"));
+        assertThrows(BadRequestException.class, () -> matching("age(\"old\")"));
+        assertThrows(BadRequestException.class, () -> matching("age(1, 2, 3)"));
+    }
+
+    @Test
+    void foldsConstantsAndOrdersClauses() {
+        // An empty range never matches, so the rest of the and is never evaluated
+        assertEquals("", matching("nameContains(\"a\") and age(40, 30)"));
+        assertEquals(0, custom.get());
+        assertEquals("alice,carol", matching("age(40, 30) or isActive"));
+
+        // The cheap, selective clauses run before the custom filter, which only sees dave
+        assertEquals("dave", matching("nameContains(\"a\") and age(30) and not isActive"));
+        assertEquals(1, custom.get());
+
+        // Repeats are evaluated once
+        custom.set(0);
+        assertEquals("carol", matching("nameContains(\"ro\") and nameContains(\"ro\")"));
+        assertEquals(USERS.size(), custom.get());
+    }
+
+    @Test
+    void cachesCompiled() {
+        Filtering filter = FilterParser.parseExpression("isActive and age(30)");
+        assertSame(registry.compile(filter), registry.compile(FilterParser.parseExpression("isActive and age(30)")));
+    }
+
+    @Test
+    void listHandlerRequiresSupport() throws Exception {
+        Listable<String> listable = new Listable<>() {
+            @Override
+            public ListResult<String> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+                return new ListResult<>(Stream.of(filter.toString()));
+            }
+
+            @Override
+            public boolean supportsFiltering() {
+                return true;
+            }
+        };
+        assertEquals(List.of("a(1)"), TestListHandler.list(new ListHandler<>(listable), "filter", "a(1)").getItems());
+        assertThrows(BadRequestException.class,
+                () -> TestListHandler.list(new ListHandler<>(listable), "filter", "a(1) and b"));
+
+        Listable<String> expressions = new Listable<>() {
+            @Override
+            public ListResult<String> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+                return listable.list(ctx, page, filter, sort);
+            }
+
+            @Override
+            public boolean supportsFiltering() {
+                return true;
+            }
+
+            @Override
+            public boolean supportsFilterExpressions() {
+                return true;
+            }
+        };
+        assertEquals(List.of("a(1) and b"),
+                TestListHandler.list(new ListHandler<>(expressions), "filter", "a(1) and b").getItems());
+    }
+}
@@ -0,0 +1,206 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIndexedCollection {
+
+    static class Person {
+        final String id;
+        final String name;
+        final int age;
+
+        Person(String id, String name, int age) {
+            this.id = id;
+            this.name = name;
+            this.age = age;
+        }
+
+        Person withId(String id) {
+            return new Person(id, name, age);
+        }
+    }
+
+    private IndexedCollection<Person> people;
+
+    @BeforeEach
+    void setUp() {
+        people = new IndexedCollection<Person>(p -> p.id, Person::withId)
+                .index("age", p -> p.age, Integer::valueOf)
+                .sortKey("name", p -> p.name)
+                .filter("nameStartsWith", f -> p -> p.name.startsWith(f.getStringArg(0)));
+
+        people.create(null, new Person("1", "alice", 30));
+        people.create(null, new Person("2", "bob", 25));
+        people.create(null, new Person("3", "carol", 35));
+        people.create(null, new Person("4", "dave", 30));
+        people.create(null, new Person("5", "erin", 40));
+    }
+
+    private String list(Paging paging, String filter, String sort) {
+        ListResult<Person> result = people.list(null, paging,
+                filter == null ? null : FilterParser.parse(filter),
+                sort == null ? null : SortParser.parse(sort));
+        return result.getItems().map(p -> p.name).collect(Collectors.joining(",")) + "/" + result.getTotalItems();
+    }
+
+    private static String names(ListResult<Person> result) {
+        return result.getItems().map(p -> p.name).collect(Collectors.joining(","));
+    }
+
+    @Test
+    void crud() {
+        Person created = people.create(null, new Person(null, "frank", 50));
+        assertNotNull(created.id);
+        assertEquals("frank", people.get(null, created.id).name);
+
+        assertEquals(51, people.update(null, created.id, new Person(null, "frank", 51)).age);
+        assertEquals(51, people.get(null, created.id).age);
+        assertNull(people.update(null, "nope", new Person(null, "x", 1)));
+
+        assertTrue(people.delete(null, created.id));
+        assertFalse(people.delete(null, created.id));
+        assertNull(people.get(null, created.id));
+
+        assertThrows(BadRequestException.class, () -> people.create(null, new Person("1", "again", 1)));
+    }
+
+    @Test
+    void filterExpressions() {
+        ListResult<Person> result = people.list(null, new Paging(0, 10),
+                FilterParser.parseExpression("age(30, 40) and not nameStartsWith(\"c\") or age(25)"), null);
+        assertEquals("alice,bob,dave,erin", names(result));
+        assertEquals(4, result.getTotalItems());
+
+        result = people.list(null, new Paging(0, 10),
+                FilterParser.parseExpression("(age(30) or age(40)) and not age(30)"), SortParser.parse("name DESC"));
+        assertEquals("erin", names(result));
+
+        assertThrows(BadRequestException.class, () -> people.list(null, new Paging(0, 10),
+                FilterParser.parseExpression("age(30) and height(2)"), null));
+    }
+
+    @Test
+    void andNarrowedByIndex() {
+        AtomicInteger tested = new AtomicInteger();
+        people.filter("counted", f -> p -> {
+            tested.incrementAndGet();
+            return !p.name.equals("dave");
+        });
+
+        // Only the age(30, 35) range is scanned, in age order
+        ListResult<Person> result = people.list(null, new Paging(0, 10),
+                FilterParser.parseExpression("counted and age(30, 35)"), null);
+        assertEquals("alice,carol", names(result));
+        assertEquals(2, result.getTotalItems());
+        assertEquals(3, tested.get());
+
+        tested.set(0);
+        result = people.list(null, new Paging(0, 10),
+                FilterParser.parseExpression("counted and (age(30) and nameStartsWith(\"a\"))"), SortParser.parse("name DESC"));
+        assertEquals("alice", names(result));
+        assertTrue(tested.get() <= 2);
+
+        // An or can't be narrowed, so scans everything
+        result = people.list(null, new Paging(0, 10),
+                FilterParser.parseExpression("counted or age(30)"), null);
+        assertEquals("alice,bob,carol,dave,erin", names(result));
+    }
+
+    @Test
+    void unsortedListsInIdOrder() {
+        assertEquals("alice,bob,carol,dave,erin/5", list(new Paging(0, 10), null, null));
+        assertEquals("carol,dave/5", list(new Paging(1, 2), null, null));
+    }
+
+    @Test
+    void sortByIndex() {
+        assertEquals("bob,alice,dave/5", list(new Paging(0, 3), null, "age"));
+        assertEquals("erin,carol/5", list(new Paging(0, 2), null, "age DESC"));
+    }
+
+    @Test
+    void filterByIndex() {
+        assertEquals("alice,dave/2", list(new Paging(0, 10), "age(30)", null));
+        assertEquals("alice,dave,carol/3", list(new Paging(0, 10), "age(26, 35)", null));
+        assertEquals("dave,carol/3", list(new Paging(0, 2), "age(26, 35)", "name DESC"));
+        assertEquals("/0", list(new Paging(0, 10), "age(35, 26)", null));
+    }
+
+    @Test
+    void cursorPaging() {
+        Sorting byAge = SortParser.parse("age");
+        ListResult<Person> first = people.list(null, new Paging(0, 2), null, byAge);
+        assertEquals("bob,alice", names(first));
+
+        ListResult<Person> second = people.list(null, new Paging(2, first.getNextCursor()), null, byAge);
+        assertEquals("dave,carol", names(second));
+        assertEquals(5, second.getTotalItems());
+
+        ListResult<Person> last = people.list(null, new Paging(2, second.getNextCursor()), null, byAge);
+        assertEquals("erin", names(last));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void cursorPagingDescendingAndFiltered() {
+        Sorting byAgeDesc = SortParser.parse("age DESC");
+        Filtering filter = FilterParser.parse("age(26, 40)");
+        ListResult<Person> first = people.list(null, new Paging(0, 1), filter, byAgeDesc);
+        assertEquals("erin", names(first));
+        assertEquals(4, first.getTotalItems());
+
+        ListResult<Person> second = people.list(null, new Paging(3, first.getNextCursor()), filter, byAgeDesc);
+        assertEquals("carol,dave,alice", names(second));
+        assertNull(second.getTotalItems());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void cursorRequiresIndexedSort() {
+        Cursor cursor = new Cursor(List.of("alice"), "1");
+
+        assertThrows(BadRequestException.class, () ->
+                people.list(null, new Paging(2, cursor), null, SortParser.parse("name")));
+    }
+
+    @Test
+    void predicateFilter() {
+        people.create(null, new Person("6", "anne", 20));
+
+        assertEquals("anne/2", list(new Paging(0, 1), "nameStartsWith(\"a\")", "age"));
+    }
+
+    @Test
+    void unknownFilterAndSort() {
+        assertThrows(BadRequestException.class, () -> list(new Paging(0, 10), "shoeSize(9)", null));
+        assertThrows(BadRequestException.class, () -> list(new Paging(0, 10), null, "shoeSize, age"));
+    }
+
+    @Test
+    void updatesMoveIndexEntries() {
+        people.update(null, "2", new Person(null, "bob", 45));
+
+        assertEquals("bob,erin/5", list(new Paging(0, 2), null, "age DESC"));
+        assertEquals("/0", list(new Paging(0, 10), "age(25)", null));
+    }
+
+    @Test
+    void concurrentUpdatesLeaveOneEntryPerItem() {
+        IntStream.range(0, 1000).parallel().forEach(i ->
+                people.update(null, Integer.toString(i % 5 + 1), new Person(null, "p" + i, i % 7)));
+
+        List<String> ids = people.list(null, new Paging(0, 100), null, SortParser.parse("age"))
+                .getItems().map(p -> p.id).sorted().collect(Collectors.toList());
+        assertEquals(List.of("1", "2", "3", "4", "5"), ids);
+    }
+
+}
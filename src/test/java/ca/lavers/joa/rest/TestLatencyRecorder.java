@@ -0,0 +1,119 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import ca.lavers.joa.core.errors.NotFoundException;
+import ca.lavers.joa.test.TestMiddleware;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestLatencyRecorder {
+
+    private static Context list(String path, String... params) {
+        return MockContexts.ctx("GET", path, params);
+    }
+
+    @Test
+    void bucketsWithinSixPercent() {
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long bound = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(bound >= value, "Bucket below " + value);
+            assertTrue(bound - value <= value / 16 + 1, "Bucket too wide for " + value);
+        }
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(500_500, snapshot.getMean(), 0.001);
+        assertEquals(500_000, snapshot.getPercentile(50), 500_000 / 16.0);
+        assertEquals(990_000, snapshot.getPercentile(99), 990_000 / 16.0);
+        assertEquals(1_000_000, snapshot.getPercentile(100));
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentile(99));
+    }
+
+    @Test
+    void routesPhasesAndErrors() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        Listable<String> listable = new Listable<>() {
+            @Override
+            public ListResult<String> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+                return new ListResult<>(Stream.of("a", "b", "c"));
+            }
+
+            @Override
+            public boolean supportsFiltering() {
+                return true;
+            }
+        };
+        RestRouter router = new RestRouter()
+                .metrics(recorder)
+                .list(new ListHandler<>(listable))
+                .get((ctx, next) -> { throw new NotFoundException(); });
+
+        router.call(list("/"), () -> {});
+        assertThrows(BadRequestException.class, () -> router.call(list("/", "filter", "("), () -> {}));
+        assertThrows(NotFoundException.class, () -> router.call(MockContexts.ctx("GET", "/1"), () -> {}));
+
+        assertEquals(2, recorder.getLatencies().get("list /").getCount());
+        assertEquals(1, recorder.getLatencies().get("get /").getCount());
+        assertEquals(Map.of("BadRequestException", 1L), recorder.getErrors("list /"));
+        assertEquals(Map.of("NotFoundException", 1L), recorder.getErrors("get /"));
+        assertEquals(3, recorder.getItems("list /"));
+        assertEquals(1, recorder.getPhases("list /").get(RequestMetrics.LIST).getCount());
+        assertEquals(
+                Set.of(RequestMetrics.PARSE, RequestMetrics.LIST, RequestMetrics.DRAIN, RequestMetrics.SERIALIZE),
+                recorder.getPhases("list /").keySet());
+    }
+
+    @Test
+    void countsStreamedItems() throws Exception {
+        LatencyRecorder recorder = new LatencyRecorder();
+        RestRouter router = new RestRouter()
+                .metrics(recorder)
+                .list(new ListHandler<>((ctx, page, filter, sort) -> new ListResult<>(Stream.of("a", "b"))).streaming());
+
+        Context ctx = list("/");
+        // Writes the items as a serializer would
+        Response response = ctx.response();
+        doAnswer(inv -> {
+            inv.<StreamingCollectionPage<?>>getArgument(0).getItems().forEachRemaining(item -> {});
+            return null;
+        }).when(response).body(any());
+        router.call(ctx, () -> {});
+
+        assertEquals(2, recorder.getItems("list /"));
+    }
+
+    @Test
+    void compiledSubResources() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        TestMiddleware posts = new TestMiddleware();
+        CompiledRestRouter router = new RestRouter()
+                .metrics(recorder)
+                .subResource("posts", "userID", new RestRouter().list(posts))
+                .compile();
+
+        router.call(list("/1/posts"), () -> {});
+
+        assertTrue(posts.ran());
+        assertEquals(1, recorder.getLatencies().get("list /posts").getCount());
+    }
+}
@@ -0,0 +1,127 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestListHandler {
+
+    private final AtomicInteger counts = new AtomicInteger();
+
+    // Two items per page, with a total that's only counted on demand
+    private final Listable<String> lazyCounted = new Listable<String>() {
+        @Override
+        public ListResult<String> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+            return new ListResult<>(Stream.of("a", "b"))
+                    .countedBy(() -> 100 + counts.incrementAndGet())
+                    .estimatedBy(() -> 90);
+        }
+
+        @Override
+        public boolean supportsPaging() {
+            return true;
+        }
+
+        @Override
+        public boolean supportsFiltering() {
+            return true;
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    static <T> CollectionPage<T> list(ListHandler<T> handler, String... params) throws Exception {
+        Map<String, String> query = new HashMap<>();
+        for(int i = 0; i < params.length; i += 2) {
+            query.put(params[i], params[i + 1]);
+        }
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(response);
+        when(request.queryParams()).thenReturn(query);
+
+        handler.call(ctx, () -> {});
+
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(response).body(body.capture());
+        return (CollectionPage<T>) body.getValue();
+    }
+
+    @Test
+    void countModes() throws Exception {
+        ListHandler<String> handler = new ListHandler<>(lazyCounted);
+
+        CollectionPage<String> page = list(handler, "count", "none");
+        assertNull(page.getTotalItems());
+        assertNull(page.getTotalItemsEstimated());
+        assertEquals(0, counts.get());
+
+        page = list(handler, "count", "estimate");
+        assertEquals(90, page.getTotalItems());
+        assertTrue(page.getTotalItemsEstimated());
+        assertEquals(0, counts.get());
+
+        page = list(handler);
+        assertEquals(101, page.getTotalItems());
+        assertFalse(page.getTotalItemsEstimated());
+
+        assertThrows(BadRequestException.class, () -> list(handler, "count", "roughly"));
+    }
+
+    @Test
+    void defaultCountMode() throws Exception {
+        ListHandler<String> handler = new ListHandler<>(lazyCounted).defaultCount(CountMode.NONE);
+
+        assertNull(list(handler).getTotalItems());
+        assertEquals(101, list(handler, "count", "exact").getTotalItems());
+    }
+
+    @Test
+    void countCache() throws Exception {
+        ListHandler<String> handler = new ListHandler<>(lazyCounted).countCache(new CountCache(Duration.ofHours(1)));
+
+        assertEquals(101, list(handler, "filter", "age(30)").getTotalItems());
+        assertEquals(101, list(handler, "filter", "age( 30)").getTotalItems());
+        assertEquals(102, list(handler, "filter", "age(31)").getTotalItems());
+        // A cached exact count beats an estimate
+        assertEquals(101, list(handler, "filter", "age(30)", "count", "estimate").getTotalItems());
+        assertEquals(2, counts.get());
+    }
+
+    @Test
+    void cursorPaging() throws Exception {
+        IndexedCollection<String> letters = new IndexedCollection<String>(s -> s, (s, id) -> s)
+                .index("letter", s -> s);
+        Stream.of("a", "b", "c", "d", "e").forEach(s -> letters.create(null, s));
+        ListHandler<String> handler = new ListHandler<>(letters).cursorKey("0123456789abcdef".getBytes());
+
+        CollectionPage<String> page = list(handler, "sortBy", "letter DESC", "pageSize", "2");
+        StringBuilder seen = new StringBuilder(String.join("", page.getItems()));
+        while(page.getNextCursor() != null) {
+            page = list(handler, "sortBy", "letter DESC", "pageSize", "2", "cursor", page.getNextCursor());
+            assertNull(page.getPage());
+            seen.append(String.join("", page.getItems()));
+        }
+        assertEquals("edcba", seen.toString());
+
+        String cursor = list(handler, "sortBy", "letter DESC", "pageSize", "2").getNextCursor();
+        assertThrows(BadRequestException.class, () -> list(handler, "sortBy", "letter", "cursor", cursor));
+        assertThrows(BadRequestException.class, () -> list(handler, "sortBy", "letter DESC", "cursor", cursor, "page", "1"));
+        assertThrows(BadRequestException.class, () -> list(new ListHandler<>(lazyCounted), "cursor", cursor));
+    }
+}
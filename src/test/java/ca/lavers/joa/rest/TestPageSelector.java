@@ -0,0 +1,76 @@
+package ca.lavers.joa.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPageSelector {
+
+    // Lots of ties, so the order among equal items matters
+    private static List<int[]> items(int count) {
+        Random random = new Random(42);
+        List<int[]> items = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            items.add(new int[]{ random.nextInt(20), i });
+        }
+        return items;
+    }
+
+    private static final Comparator<int[]> BY_VALUE = Comparator.comparingInt(item -> item[0]);
+
+    @Test
+    void matchesFullStableSort() {
+        List<int[]> items = items(1000);
+        Predicate<int[]> even = item -> item[0] % 2 == 0;
+
+        List<int[]> expected = items.stream().filter(even).sorted(BY_VALUE).collect(Collectors.toList());
+
+        for(int page = 0; page < 60; page++) {
+            ListResult<int[]> result = PageSelector.select(items, even, new Paging(page, 10), BY_VALUE);
+            List<int[]> actual = result.getItems().collect(Collectors.toList());
+
+            int from = Math.min(page * 10, expected.size());
+            int to = Math.min(from + 10, expected.size());
+            assertEquals(expected.subList(from, to), actual, "page " + page);
+            assertEquals(expected.size(), result.getTotalItems());
+        }
+    }
+
+    @Test
+    void worksOnPlainIterables() {
+        List<int[]> items = items(500);
+        List<int[]> expected = items.stream().sorted(BY_VALUE.reversed()).collect(Collectors.toList());
+
+        Iterable<int[]> iterable = items::iterator;
+        ListResult<int[]> result = PageSelector.select(iterable, new Paging(3, 25), BY_VALUE.reversed());
+
+        assertEquals(expected.subList(75, 100), result.getItems().collect(Collectors.toList()));
+        assertEquals(500, result.getTotalItems());
+    }
+
+    @Test
+    void unsorted() {
+        List<int[]> items = items(100);
+
+        ListResult<int[]> result = PageSelector.select(items, new Paging(9, 10), null);
+
+        assertEquals(items.subList(90, 100), result.getItems().collect(Collectors.toList()));
+        assertEquals(100, result.getTotalItems());
+    }
+
+    @Test
+    void pagePastEnd() {
+        ListResult<int[]> result = PageSelector.select(items(100), new Paging(20, 10), BY_VALUE);
+
+        assertEquals(0, result.getItems().count());
+        assertEquals(100, result.getTotalItems());
+    }
+
+}
@@ -0,0 +1,124 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.jstatemachine.StateMachineException;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checks the hand-written scanners against the original state machine parsers
+public class TestParserEquivalence {
+
+    private static final List<String> FILTER_SPECS = List.of(
+            "isActive",
+            "  isActive  ",
+            "isActive()",
+            "isActive ()",
+            "hasRole(\"staff\")",
+            "hasRole( \"staff\" , \"admin\" )",
+            "hasRole(\"st\\\"aff\")",
+            "hasRole(\"staff)",
+            "hasRole(\"staff,admin\")",
+            "hasRole(\"staff\" \"admin\")",
+            "loggedInBetween(2022-01-01, 2022-02-28)",
+            "loggedInBetween(2022-1-1,2022-12-31)",
+            "olderThan(42)",
+            "olderThan(0042)",
+            "olderThan(42,)",
+            "olderThan(12-3)",
+            "olderThan(99999999999)",
+            "olderThan(42 )",
+            "olderThan(4a)",
+            "between(1, 2, 3)",
+            "foo (1)",
+            "foo(1) bar",
+            "foo(1)   ",
+            "foo bar",
+            "foo(",
+            "foo(\"abc",
+            "foo(\"abc\\",
+            "foo(\"abc\"",
+            "foo(,)",
+            "foo(x)",
+            "(1)",
+            "",
+            "   ",
+            "f(2022-01-011)",
+            "f(20220-1-1)"
+    );
+
+    private static final List<String> SORT_SPECS = List.of(
+            "username",
+            "username ASC",
+            "username asc, role DESC",
+            "username desc,role",
+            "  username   DESC  ,  role  ",
+            "a,b,c",
+            "a b",
+            "a Asc",
+            "a ASC DESC",
+            "a ASC x",
+            "a,,b",
+            ",a",
+            "a ,",
+            "a, ",
+            "",
+            "   "
+    );
+
+    @TestFactory
+    Stream<DynamicTest> filterParsers() {
+        return FILTER_SPECS.stream().map(spec -> DynamicTest.dynamicTest("filter=" + spec, () ->
+                assertEquivalent(FilterParser::parseWithStateMachine, FilterScanner::parse, spec, TestParserEquivalence::describe)
+        ));
+    }
+
+    @TestFactory
+    Stream<DynamicTest> sortParsers() {
+        return SORT_SPECS.stream().map(spec -> DynamicTest.dynamicTest("sortBy=" + spec, () ->
+                assertEquivalent(SortParser::parseWithStateMachine, SortScanner::parse, spec, TestParserEquivalence::describe)
+        ));
+    }
+
+    private <V> void assertEquivalent(Function<String, V> stateMachine, Function<String, V> scanner, String spec,
+                                      Function<V, String> describe) {
+        String expected;
+        String expectedError = null;
+        try {
+            expected = describe.apply(stateMachine.apply(spec));
+        } catch (StateMachineException e) {
+            expected = null;
+            expectedError = e.getMessage();
+        }
+
+        if(expectedError == null) {
+            assertEquals(expected, describe.apply(scanner.apply(spec)));
+        }
+        else {
+            SpecParseException e = assertThrows(SpecParseException.class, () -> scanner.apply(spec));
+            assertTrue(expectedError.contains(e.getMessage()),
+                    "Expected error like \"" + expectedError + "\" but got \"" + e.getMessage() + "\"");
+        }
+    }
+
+    private static String describe(Filtering filtering) {
+        if(filtering == null) {
+            return "null";
+        }
+        return filtering.getFilterName() + filtering.getArgs().stream()
+                .map(arg -> arg.getClass().getSimpleName() + ":" + arg)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private static String describe(Sorting sorting) {
+        return sorting.getSortFields().stream()
+                .map(sf -> sf.getField() + " " + sf.getDirection())
+                .collect(Collectors.joining(","));
+    }
+
+}
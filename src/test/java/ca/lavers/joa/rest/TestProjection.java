@@ -0,0 +1,199 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestProjection {
+
+    public static class Item {
+        public int score;
+        private final String id;
+        private final String name;
+
+        Item(String id, String name, int score) {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+    }
+
+    private final AtomicReference<Projection> seen = new AtomicReference<>();
+    private final Listable<Item> listable = (ctx, page, filter, sort) -> {
+        seen.set(Projection.of(ctx));
+        return new ListResult<>(Stream.of(new Item("1", "a", 10), new Item("2", "b", 20)));
+    };
+
+    private static Context ctx(String path, String... params) {
+        return MockContexts.ctx("GET", path, params);
+    }
+
+    private static Object body(Context ctx) throws Exception {
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(ctx.response()).body(body.capture());
+        return body.getValue();
+    }
+
+    @Test
+    void parse() {
+        assertEquals(List.of("name", "id"), Projection.parse("name, id,name").getFields());
+        assertEquals(Projection.parse("a,b"), Projection.parse(" a , b"));
+        assertThrows(SpecParseException.class, () -> Projection.parse("a,,b"));
+        assertThrows(SpecParseException.class, () -> Projection.parse("1a"));
+        assertThrows(SpecParseException.class, () -> Projection.parse("a.b"));
+    }
+
+    @Test
+    void listProjection() throws Exception {
+        Context ctx = ctx("/", "fields", "name,score,active");
+        new ListHandler<>(listable).call(ctx, () -> {});
+
+        assertEquals(Projection.parse("name,score,active"), seen.get());
+        CollectionPage<?> page = (CollectionPage<?>) body(ctx);
+        assertEquals(List.of(Map.of("name", "a", "score", 10, "active", true),
+                Map.of("name", "b", "score", 20, "active", true)), page.getItems());
+        assertEquals(List.of("name", "score", "active"), new ArrayList<>(((Map<?, ?>) page.getItems().get(0)).keySet()));
+
+        Context all = ctx("/");
+        new ListHandler<>(listable).call(all, () -> {});
+        assertNull(seen.get());
+        assertTrue(((CollectionPage<?>) body(all)).getItems().get(0) instanceof Item);
+    }
+
+    @Test
+    void streamingProjection() throws Exception {
+        Context ctx = ctx("/", "fields", "id");
+        new ListHandler<>(listable).streaming().call(ctx, () -> {});
+
+        Iterator<?> items = ((StreamingCollectionPage<?>) body(ctx)).getItems();
+        assertEquals(Map.of("id", "1"), items.next());
+        assertEquals(Map.of("id", "2"), items.next());
+        assertFalse(items.hasNext());
+    }
+
+    @Test
+    void badFields() {
+        assertThrows(BadRequestException.class, () -> new ListHandler<>(listable).call(ctx("/", "fields", "name,"), () -> {}));
+        assertThrows(BadRequestException.class, () -> new ListHandler<>(listable).call(ctx("/", "fields", "password"), () -> {}));
+    }
+
+    @Test
+    void getProjection() throws Exception {
+        Context ctx = ctx("/1", "fields", "id,name");
+        ctx.put(RestRouter.NS, RestRouter.ITEM_ID, "1");
+        new GetHandler<>(Item.class, (c, id) -> new Item(id, "a", 10)).call(ctx, () -> {});
+        assertEquals(Map.of("id", "1", "name", "a"), body(ctx));
+
+        // Map items are projected by key, and an unknown one is a 400 just like for beans
+        Context map = get("1", "fields", "b");
+        new GetHandler<Object>(Object.class, (c, id) -> Map.of("a", 1, "b", 2)).call(map, () -> {});
+        assertEquals(Map.of("b", 2), body(map));
+        assertThrows(BadRequestException.class, () -> new GetHandler<Object>(Object.class, (c, id) -> Map.of("a", 1, "b", 2))
+                .call(get("1", "fields", "b,c"), () -> {}));
+    }
+
+    @Test
+    void serializedProperties() throws Exception {
+        // As a serializer would see it: name renamed, score hidden
+        Function<Object, Map<String, ?>> serialized = item -> Map.of("id", ((Item) item).getId(), "display_name", ((Item) item).getName());
+        GetHandler<Item> handler = new GetHandler<>(Item.class, (c, id) -> new Item(id, "a", 10)).serializedProperties(serialized);
+
+        Context ctx = get("1", "fields", "display_name");
+        handler.call(ctx, () -> {});
+        assertEquals(Map.of("display_name", "a"), body(ctx));
+        assertThrows(BadRequestException.class, () -> handler.call(get("1", "fields", "name"), () -> {}));
+        assertThrows(BadRequestException.class, () -> handler.call(get("1", "fields", "score"), () -> {}));
+
+        Context list = ctx("/", "fields", "display_name");
+        new ListHandler<>(listable).serializedProperties(serialized).call(list, () -> {});
+        assertEquals(Map.of("display_name", "a"), ((CollectionPage<?>) body(list)).getItems().get(0));
+    }
+
+    private static Context get(String id, String... params) {
+        Context ctx = ctx("/" + id, params);
+        ctx.put(RestRouter.NS, RestRouter.ITEM_ID, id);
+        return ctx;
+    }
+
+    @Test
+    void projectedThenFullGetFromResponseCache() throws Exception {
+        ResponseCache cache = new ResponseCache(100, Duration.ofMinutes(1));
+        GetHandler<Item> handler = new GetHandler<>(Item.class, (c, id) -> new Item(id, "a", 10));
+        Middleware chain = (ctx, next) -> cache.call(ctx, () -> handler.call(ctx, next));
+
+        Context projected = get("1", "fields", "name");
+        chain.call(projected, () -> {});
+        assertEquals(Map.of("name", "a"), body(projected));
+
+        Context full = get("1");
+        chain.call(full, () -> {});
+        assertTrue(body(full) instanceof Item);
+
+        Context again = get("1", "fields", "name");
+        chain.call(again, () -> {});
+        assertEquals(Map.of("name", "a"), body(again));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void projectedThenFullGetFromCachingGettable() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        // Fetches only the requested fields, as a Gettable reading Projection.of(ctx) might
+        Gettable<Item> backend = (c, id) -> {
+            loads.incrementAndGet();
+            Projection projection = Projection.of(c);
+            return new Item(id, projection == null || projection.includes("name") ? "a" : null, 10);
+        };
+        CachingGettable<Item> cached = new CachingGettable<>(backend, 100);
+        GetHandler<Item> handler = new GetHandler<>(Item.class, cached);
+
+        handler.call(get("1", "fields", "id"), () -> {});
+        Context full = get("1");
+        handler.call(full, () -> {});
+        assertEquals("a", ((Item) body(full)).getName());
+        assertEquals(2, loads.get());
+
+        handler.call(get("1", "fields", "id"), () -> {});
+        assertEquals(2, loads.get());
+
+        // A write makes the projected entry stale too
+        cached.invalidate(get("1"), "1");
+        handler.call(get("1", "fields", "id"), () -> {});
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void compiledOncePerProjection() {
+        Projection projection = Projection.parse("id,name");
+        assertSame(Projector.of(Item.class, projection), Projector.of(Item.class, Projection.parse("id,name")));
+        assertNotSame(Projector.of(Item.class, projection), Projector.of(Item.class, Projection.parse("name,id")));
+    }
+}
@@ -0,0 +1,131 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestQueryStats {
+
+    private final Listable<String> listable = new Listable<>() {
+        @Override
+        public ListResult<String> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+            return new ListResult<>(Stream.of("a", "b", "c"));
+        }
+
+        @Override
+        public boolean supportsPaging() {
+            return true;
+        }
+
+        @Override
+        public boolean supportsFiltering() {
+            return true;
+        }
+
+        @Override
+        public boolean supportsSorting() {
+            return true;
+        }
+    };
+
+    private static QueryFingerprint fingerprint(String filter, int pageSize) {
+        return QueryFingerprint.of(filter == null ? null : FilterParser.parse(filter), null, new Paging(0, pageSize));
+    }
+
+    @Test
+    void fingerprintsIgnoreValues() throws Exception {
+        QueryStats stats = new QueryStats();
+        ListHandler<String> handler = new ListHandler<>(listable).queryStats(stats);
+
+        TestListHandler.list(handler, "filter", "age(30)", "sortBy", "name ASC, age DESC", "pageSize", "10");
+        TestListHandler.list(handler, "filter", "age(45)", "sortBy", "name ASC, age DESC", "pageSize", "12");
+        TestListHandler.list(handler, "filter", "name(\"bob\")");
+
+        List<QueryStats.Stats> top = stats.top(10);
+        assertEquals(2, top.size());
+        QueryStats.Stats age = top.stream().filter(s -> s.getCount() == 2).findFirst().orElseThrow();
+        assertEquals("filter=age(number) sortBy=+name,-age pageSize<=16", age.getQuery());
+        assertEquals(6, age.getItems());
+        assertTrue(age.getMaxNanos() > 0);
+        assertEquals(0, age.getError());
+    }
+
+    @Test
+    void streamedItems() throws Exception {
+        QueryStats stats = new QueryStats();
+        ListHandler<String> handler = new ListHandler<>(listable).streaming().queryStats(stats);
+
+        Context ctx = MockContexts.ctx("GET", "/", "filter", "age(30)");
+        handler.call(ctx, () -> {});
+        // Recorded once the serializer has read the stream
+        assertTrue(stats.top(10).isEmpty());
+
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(ctx.response()).body(body.capture());
+        ((StreamingCollectionPage<?>) body.getValue()).getItems().forEachRemaining(item -> {});
+        List<QueryStats.Stats> top = stats.top(10);
+        assertEquals(1, top.size());
+        assertEquals(1, top.get(0).getCount());
+        assertEquals(3, top.get(0).getItems());
+    }
+
+    @Test
+    void pageSizeBuckets() {
+        assertEquals(1, QueryFingerprint.bucket(1));
+        assertEquals(16, QueryFingerprint.bucket(10));
+        assertEquals(16, QueryFingerprint.bucket(16));
+        assertEquals(32, QueryFingerprint.bucket(17));
+        assertEquals(fingerprint("a(1)", 10), fingerprint("a(2)", 9));
+        assertNotEquals(fingerprint("a(1)", 10), fingerprint("a(\"x\")", 10));
+    }
+
+    @Test
+    void keepsHeavyHitters() {
+        QueryStats stats = new QueryStats(3);
+        QueryFingerprint heavy = fingerprint("heavy(1)", 10);
+
+        // Many cheap one-off queries interleaved with a costly recurring one
+        for(int i = 0; i < 1000; i++) {
+            stats.record(fingerprint("f" + i, 10), 10, 1);
+            if(i % 10 == 0) {
+                stats.record(heavy, 1000, 1);
+            }
+        }
+
+        List<QueryStats.Stats> top = stats.top(1);
+        assertEquals(heavy, top.get(0).getFingerprint());
+        assertTrue(top.get(0).getTotalNanos() >= 100 * 1000);
+        assertTrue(top.get(0).getTotalNanos() - top.get(0).getError() <= 100 * 1000);
+        assertEquals(3, stats.top(10).size());
+    }
+
+    @Test
+    void handler() throws Exception {
+        QueryStats stats = new QueryStats();
+        stats.record(fingerprint("a(1)", 10), 100, 1);
+        stats.record(fingerprint("b(1)", 10), 200, 1);
+
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(mock(Response.class));
+        when(request.queryParams()).thenReturn(Map.of("limit", "1"));
+
+        stats.handler().call(ctx, () -> {});
+
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(ctx.response()).body(body.capture());
+        List<?> top = (List<?>) body.getValue();
+        assertEquals(1, top.size());
+        assertEquals("filter=b(number) pageSize<=16", ((QueryStats.Stats) top.get(0)).getQuery());
+    }
+}
@@ -0,0 +1,197 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Middleware;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.NotFoundException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestResponseCache {
+
+    private final AtomicLong now = new AtomicLong();
+    private final ResponseCache cache = new ResponseCache(100, Duration.ofNanos(100), now::get);
+
+    private final AtomicInteger lists = new AtomicInteger();
+    private final AtomicInteger gets = new AtomicInteger();
+
+    private final Listable<String> listable = new Listable<String>() {
+        @Override
+        public ListResult<String> list(Context ctx, Paging page, Filtering filter, Sorting sort) {
+            return new ListResult<>(Stream.of("list" + lists.incrementAndGet()));
+        }
+
+        @Override
+        public boolean supportsPaging() {
+            return true;
+        }
+
+        @Override
+        public boolean supportsFiltering() {
+            return true;
+        }
+
+        @Override
+        public boolean supportsSorting() {
+            return true;
+        }
+    };
+
+    private final Middleware list = chain(cache, new ListHandler<>(listable));
+    private final Middleware get = chain(cache, new GetHandler<>(String.class, (ctx, id) -> id + gets.incrementAndGet()));
+
+    private static Middleware chain(Middleware first, Middleware second) {
+        return (ctx, next) -> first.call(ctx, () -> second.call(ctx, next));
+    }
+
+    // Runs a request, returning the body sent
+    private Object run(Middleware chain, String method, String id, String... params) {
+        Map<String, Object> attributes = new HashMap<>();
+        Map<String, String> query = new HashMap<>();
+        for(int i = 0; i < params.length; i += 2) {
+            query.put(params[i], params[i + 1]);
+        }
+        if(id != null) {
+            attributes.put(RestRouter.ITEM_ID, id);
+        }
+
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        Response response = mock(Response.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(response);
+        when(ctx.get(anyString(), anyString(), any())).thenAnswer(i ->
+                Optional.ofNullable(attributes.get(i.<String>getArgument(1))));
+        doAnswer(i -> attributes.put(i.getArgument(1), i.getArgument(2))).when(ctx).put(anyString(), anyString(), any());
+        when(request.method()).thenReturn(method);
+        when(request.queryParams()).thenReturn(query);
+
+        try {
+            chain.call(ctx, () -> {});
+            ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+            verify(response, atMost(1)).body(body.capture());
+            return body.getAllValues().isEmpty() ? null : body.getValue();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> items(Object page) {
+        return ((CollectionPage<String>) page).getItems();
+    }
+
+    @Test
+    void equivalentListsShareEntries() {
+        assertEquals(List.of("list1"), items(run(list, "GET", null, "filter", "age(30)", "sortBy", "name")));
+        assertEquals(List.of("list1"), items(run(list, "GET", null, "filter", "age( 30)", "sortBy", "name ASC")));
+        assertEquals(List.of("list2"), items(run(list, "GET", null, "filter", "age(31)")));
+        assertEquals(List.of("list3"), items(run(list, "GET", null, "filter", "age(30)", "page", "1")));
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void usesHandlersSpecCaches() {
+        SpecCache<Filtering> filters = new SpecCache<>(FilterParser::parseExpression);
+        cache.specCaches(filters, null);
+        Middleware own = chain(cache, new ListHandler<>(listable).specCaches(filters, null));
+
+        run(own, "GET", null, "filter", "age(32)");
+
+        // Parsed once by the cache, then found by the handler
+        assertEquals(1, filters.getMisses());
+        assertEquals(1, filters.getHits());
+    }
+
+    @Test
+    void writesInvalidate() {
+        run(list, "GET", null);
+        run(get, "GET", "1");
+        run(get, "GET", "2");
+
+        run(cache, "PUT", "1");
+
+        assertEquals(List.of("list2"), items(run(list, "GET", null)));
+        assertEquals("13", run(get, "GET", "1"));
+        assertEquals("22", run(get, "GET", "2"));
+    }
+
+    @Test
+    void bulkWritesInvalidateEachItem() {
+        run(get, "GET", "1");
+        run(get, "GET", "2");
+        run(get, "GET", "3");
+
+        BulkHandler<String> bulk = new BulkHandler<>(TestBulkHandler.StringOperation.class)
+                .updating(BatchUpdatable.each((ctx, id, item) -> item))
+                .deleting(BatchDeletable.each((ctx, id) -> true));
+        run(chain(cache, (ctx, next) -> {
+            try {
+                when(ctx.request().parseBody(TestBulkHandler.StringOperation[].class)).thenReturn(
+                        new TestBulkHandler.StringOperation[] {
+                                new TestBulkHandler.StringOperation("update", "1", "uno"),
+                                new TestBulkHandler.StringOperation("delete", "2", null)
+                        });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bulk.call(ctx, next);
+        }), "POST", RestRouter.BULK_PATH);
+
+        assertEquals("14", run(get, "GET", "1"));
+        assertEquals("25", run(get, "GET", "2"));
+        assertEquals("33", run(get, "GET", "3"));
+    }
+
+    @Test
+    void failedWritesDontInvalidate() {
+        run(list, "GET", null);
+
+        Middleware failing = chain(cache, (ctx, next) -> { throw new NotFoundException(); });
+        assertThrows(NotFoundException.class, () -> failing.call(mockWrite(), () -> {}));
+
+        assertEquals(List.of("list1"), items(run(list, "GET", null)));
+    }
+
+    private Context mockWrite() {
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(request.method()).thenReturn("DELETE");
+        return ctx;
+    }
+
+    @Test
+    void expires() {
+        run(get, "GET", "1");
+        now.set(100);
+        assertEquals("11", run(get, "GET", "1"));
+        now.set(101);
+        assertEquals("12", run(get, "GET", "1"));
+    }
+
+    @Test
+    void malformedSpecsBypass() {
+        Middleware chain = chain(cache, (ctx, next) -> {});
+        run(chain, "GET", null, "filter", "(");
+
+        assertEquals(0, cache.getMisses());
+    }
+}
@@ -0,0 +1,102 @@
+package ca.lavers.joa.rest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSingleFlight {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    // Blocks until released, so followers pile up behind the leader
+    private Supplier<String> blockingLoader(String result) {
+        return () -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        };
+    }
+
+    private List<Future<String>> runConcurrently(SingleFlight<String> flights, int n, Supplier<String> loader)
+            throws InterruptedException {
+        List<Future<String>> results = new ArrayList<>();
+        results.add(pool.submit(() -> flights.run("key", loader)));
+        while(flights.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+        for(int i = 1; i < n; i++) {
+            results.add(pool.submit(() -> flights.run("key", loader)));
+        }
+        Thread.sleep(50);
+        return results;
+    }
+
+    @Test
+    void followersShareResult() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(Duration.ofSeconds(10));
+        List<Future<String>> results = runConcurrently(flights, 5, blockingLoader("value"));
+
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    void followersRetryOnceWhenLeaderFails() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(Duration.ofSeconds(10));
+        AtomicInteger attempts = new AtomicInteger();
+        Supplier<String> failsFirst = () -> {
+            String value = blockingLoader("value").get();
+            if(attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("leader failed");
+            }
+            return value;
+        };
+        List<Future<String>> results = runConcurrently(flights, 4, failsFirst);
+
+        release.countDown();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals("leader failed", e.getCause().getMessage());
+        for (Future<String> result : results.subList(1, 4)) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void followersStopWaitingAfterTimeout() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(Duration.ofMillis(10));
+        List<Future<String>> results = runConcurrently(flights, 2, blockingLoader("value"));
+
+        // The follower gave up on the leader and is loading itself
+        assertEquals(2, loads.get());
+        release.countDown();
+        assertEquals("value", results.get(1).get(5, TimeUnit.SECONDS));
+    }
+}
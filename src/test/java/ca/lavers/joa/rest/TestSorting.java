@@ -0,0 +1,128 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSorting {
+
+    static class Person {
+        final String name;
+        final int age;
+
+        Person(String name, int age) {
+            this.name = name;
+            this.age = age;
+        }
+
+        @Override
+        public String toString() {
+            return name + age;
+        }
+    }
+
+    private static List<Person> people() {
+        return new ArrayList<>(List.of(
+                new Person("carol", 30),
+                new Person("alice", 30),
+                new Person("bob", 25),
+                new Person(null, 40)
+        ));
+    }
+
+    private static String names(List<Person> people) {
+        return people.stream().map(Person::toString).collect(Collectors.joining(","));
+    }
+
+    @Test
+    void fieldLookup() {
+        List<Person> people = people();
+        Sorting sorting = SortParser.parse("age DESC, name");
+
+        people.sort(sorting.toComparator(field -> switch(field) {
+            case "age" -> Comparator.comparingInt(p -> p.age);
+            case "name" -> Comparator.comparing(p -> p.name, Comparator.nullsFirst(Comparator.naturalOrder()));
+            default -> null;
+        }));
+
+        assertEquals("null40,alice30,carol30,bob25", names(people));
+    }
+
+    @Test
+    void unknownFieldsIgnoredByLookup() {
+        List<Person> people = people();
+        Sorting sorting = SortParser.parse("shoeSize, age");
+
+        people.sort(sorting.toComparator(field -> "age".equals(field) ? Comparator.comparingInt(p -> p.age) : null));
+
+        assertEquals("bob25,carol30,alice30,null40", names(people));
+    }
+
+    @Test
+    void sortKeys() {
+        List<Person> people = people();
+        SortKeys<Person> keys = new SortKeys<Person>()
+                .intKey("age", p -> p.age)
+                .key("name", p -> p.name);
+
+        people.sort(SortParser.parse("age, name DESC").toComparator(keys));
+
+        assertEquals("bob25,carol30,alice30,null40", names(people));
+    }
+
+    @Test
+    void compiledPerSortKeys() {
+        Sorting sorting = SortParser.parse("rank");
+        SortKeys<Person> byAge = new SortKeys<Person>().intKey("rank", p -> p.age);
+        SortKeys<Person> byName = new SortKeys<Person>().key("rank", p -> p.name);
+
+        // The same Sorting alternating between two collections' keys
+        for(int i = 0; i < 2; i++) {
+            List<Person> people = people();
+            people.sort(sorting.toComparator(byAge));
+            assertEquals("bob25,carol30,alice30,null40", names(people));
+
+            people.sort(sorting.toComparator(byName));
+            assertEquals("null40,alice30,bob25,carol30", names(people));
+        }
+        assertSame(sorting.toComparator(byAge), sorting.toComparator(byAge));
+
+        // Changing the keys recompiles
+        byAge.intKey("rank", p -> -p.age);
+        List<Person> people = people();
+        people.sort(sorting.toComparator(byAge));
+        assertEquals("null40,carol30,alice30,bob25", names(people));
+    }
+
+    @Test
+    void unknownSortKey() {
+        SortKeys<Person> keys = new SortKeys<Person>().intKey("age", p -> p.age);
+
+        assertThrows(BadRequestException.class, () -> SortParser.parse("height").toComparator(keys));
+    }
+
+    @Test
+    void precomputedKeysComputedOncePerItem() {
+        List<Person> people = people();
+        AtomicInteger computed = new AtomicInteger();
+        SortKeys<Person> keys = new SortKeys<Person>()
+                .intKey("age", p -> p.age)
+                .precomputedKey("name", p -> {
+                    computed.incrementAndGet();
+                    return p.name == null ? null : p.name.toUpperCase();
+                });
+
+        SortParser.parse("age DESC, name").sort(people, keys);
+
+        assertEquals("null40,alice30,carol30,bob25", names(people));
+        assertEquals(people.size(), computed.get());
+    }
+
+}
@@ -0,0 +1,78 @@
+package ca.lavers.joa.rest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSpecCache {
+
+    @Test
+    void cachesParsedValues() {
+        AtomicInteger parses = new AtomicInteger();
+        SpecCache<String> cache = new SpecCache<>(spec -> {
+            parses.incrementAndGet();
+            return spec.toUpperCase();
+        });
+
+        assertEquals("FOO", cache.get("foo"));
+        assertEquals("FOO", cache.get("foo"));
+
+        assertEquals(1, parses.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void cachesFailures() {
+        AtomicInteger parses = new AtomicInteger();
+        SpecCache<String> cache = new SpecCache<>(spec -> {
+            parses.incrementAndGet();
+            throw new SpecParseException("Bad spec");
+        });
+
+        SpecParseException e1 = assertThrows(SpecParseException.class, () -> cache.get("foo"));
+        SpecParseException e2 = assertThrows(SpecParseException.class, () -> cache.get("foo"));
+
+        assertEquals("Bad spec", e1.getMessage());
+        assertEquals("Bad spec", e2.getMessage());
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    void staysBounded() {
+        SpecCache<String> cache = new SpecCache<>(spec -> spec, 10);
+
+        for(int i = 0; i < 100; i++) {
+            cache.get("spec" + i);
+        }
+
+        assertTrue(cache.size() <= 10);
+        assertEquals(90, cache.getEvictions());
+    }
+
+    @Test
+    void prefersEvictingUnusedEntries() {
+        SpecCache<String> cache = new SpecCache<>(spec -> spec, 10);
+
+        for(int i = 0; i < 100; i++) {
+            cache.get("hot");
+            cache.get("spec" + i);
+        }
+        long misses = cache.getMisses();
+        cache.get("hot");
+
+        assertEquals(misses, cache.getMisses());
+    }
+
+    @Test
+    void doesNotCacheLongSpecs() {
+        SpecCache<String> cache = new SpecCache<>(spec -> spec);
+
+        cache.get("x".repeat(SpecCache.MAX_SPEC_LENGTH + 1));
+
+        assertEquals(0, cache.size());
+    }
+
+}
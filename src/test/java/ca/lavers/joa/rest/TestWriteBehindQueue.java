@@ -0,0 +1,189 @@
+package ca.lavers.joa.rest;
+
+import ca.lavers.joa.core.Context;
+import ca.lavers.joa.core.Request;
+import ca.lavers.joa.core.Response;
+import ca.lavers.joa.core.errors.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestWriteBehindQueue {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final BatchCreatable<String> creatable = (ctx, items) -> {
+        batches.add(new ArrayList<>(items));
+        return items.stream().map(item -> item.equals("bad") ? null : item.toUpperCase()).collect(Collectors.toList());
+    };
+
+    private final Context ctx = mock(Context.class);
+
+    private static void awaitState(WriteBehindQueue<String> queue, String id, WriteStatus.State state) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while(queue.status(id).getState() != state) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + state);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void fullBatch() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(creatable, 10)
+                .batchSize(3)
+                .maxDelay(Duration.ofMinutes(1));
+
+        String a = queue.offer(ctx, "a");
+        queue.offer(ctx, "b");
+        assertEquals(WriteStatus.State.PENDING, queue.status(a).getState());
+        String bad = queue.offer(ctx, "bad");
+
+        awaitState(queue, bad, WriteStatus.State.FAILED);
+        assertEquals(List.of(List.of("a", "b", "bad")), batches);
+        assertEquals(WriteStatus.State.CREATED, queue.status(a).getState());
+        assertEquals("A", queue.status(a).getItem());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void maxDelay() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(creatable, 10)
+                .maxDelay(Duration.ofMillis(10));
+
+        String a = queue.offer(ctx, "a");
+
+        awaitState(queue, a, WriteStatus.State.CREATED);
+        assertEquals(List.of(List.of("a")), batches);
+    }
+
+    @Test
+    void rejectsWhenFull() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(creatable, 2)
+                .maxDelay(Duration.ofMinutes(1));
+
+        assertNotNull(queue.offer(ctx, "a"));
+        assertNotNull(queue.offer(ctx, "b"));
+        assertNull(queue.offer(ctx, "c"));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    void closeDrains() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(creatable, 10)
+                .maxDelay(Duration.ofMinutes(1));
+        String a = queue.offer(ctx, "a");
+        String b = queue.offer(ctx, "b");
+
+        assertTrue(queue.close(Duration.ofSeconds(5)));
+
+        assertEquals(List.of(List.of("a", "b")), batches);
+        assertEquals(WriteStatus.State.CREATED, queue.status(a).getState());
+        assertEquals(WriteStatus.State.CREATED, queue.status(b).getState());
+        assertNull(queue.offer(ctx, "c"));
+    }
+
+    @Test
+    void failedBatch() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<String>((c, items) -> { throw new IllegalStateException(); }, 10)
+                .maxDelay(Duration.ofMillis(1));
+
+        String a = queue.offer(ctx, "a");
+
+        awaitState(queue, a, WriteStatus.State.FAILED);
+        assertEquals("Internal server error", queue.status(a).getError());
+    }
+
+    @Test
+    void eachFallback() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(BatchCreatable.<String>each((c, item) -> {
+            if(item.equals("a")) throw new BadRequestException("exists");
+            return item.toUpperCase();
+        }), 10).batchSize(2).maxDelay(Duration.ofMinutes(1));
+
+        String a = queue.offer(ctx, "a");
+        String b = queue.offer(ctx, "b");
+
+        awaitState(queue, b, WriteStatus.State.CREATED);
+        assertEquals(WriteStatus.State.FAILED, queue.status(a).getState());
+        assertEquals("exists", queue.status(a).getError());
+    }
+
+    @Test
+    void batchesByParent() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        WriteBehindQueue<String> queue = new WriteBehindQueue<String>((c, items) -> {
+            calls.add(RestRouter.getParentIds(c).get("userID") + ":" + String.join(",", items));
+            return items;
+        }, 10).batchSize(3).maxDelay(Duration.ofMinutes(1));
+
+        queue.offer(underUser("1"), "a");
+        String b = queue.offer(underUser("2"), "b");
+        String c = queue.offer(underUser("1"), "c");
+
+        awaitState(queue, c, WriteStatus.State.CREATED);
+        awaitState(queue, b, WriteStatus.State.CREATED);
+        assertEquals(List.of("1:a,c", "2:b"), calls);
+    }
+
+    private static Context underUser(String id) {
+        Context ctx = MockContexts.ctx("POST", "/");
+        ctx.put(RestRouter.NS, RestRouter.PARENT_IDS, Map.of("userID", id));
+        return ctx;
+    }
+
+    @Test
+    void survivesErrors() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<String>((c, items) -> {
+            if(items.contains("a")) throw new AssertionError("broken");
+            return items;
+        }, 10).maxDelay(Duration.ofMillis(1));
+
+        String a = queue.offer(ctx, "a");
+        awaitState(queue, a, WriteStatus.State.FAILED);
+        assertEquals("Internal server error", queue.status(a).getError());
+
+        String b = queue.offer(ctx, "b");
+        awaitState(queue, b, WriteStatus.State.CREATED);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createHandler() throws Exception {
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>(creatable, 1)
+                .maxDelay(Duration.ofMinutes(1))
+                .retryAfter(Duration.ofSeconds(5));
+        CreateHandler<String> handler = new CreateHandler<>(String.class, (c, item) -> fail("Created synchronously"))
+                .respondAccepted(queue);
+
+        Context accepted = createContext();
+        handler.call(accepted, () -> {});
+        verify(accepted.response()).status(202);
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(accepted.response()).body(body.capture());
+        String id = ((WriteStatus<String>) body.getValue()).getId();
+        assertEquals(WriteStatus.State.PENDING, queue.status(id).getState());
+
+        Context rejected = createContext();
+        handler.call(rejected, () -> {});
+        verify(rejected.response()).status(503);
+        verify(rejected.response()).header("Retry-After", "5");
+    }
+
+    private static Context createContext() throws Exception {
+        Context ctx = mock(Context.class);
+        Request request = mock(Request.class);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(mock(Response.class));
+        when(request.queryParams()).thenReturn(Map.of());
+        when(request.parseBody(String.class)).thenReturn("item");
+        return ctx;
+    }
+}